@@ -0,0 +1,642 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+import net.sourceforge.jeuclid.elements.JEuclidElementFactory;
+import net.sourceforge.jeuclid.elements.generic.DocumentElement;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Converts content MathML to presentation MathML while the tree is copied
+ * by the {@link DOMBuilder}.
+ * <p>
+ * This implements the commonly used templates of
+ * <code>content/mathmlc2p.xsl</code> and produces the same result for them.
+ * Whenever a construct is found which is not supported here, an
+ * {@link UnsupportedContentException} is thrown, and the caller has to fall
+ * back to the stylesheet for the whole document.
+ * <p>
+ * Instances are not thread safe and may be used for one document only.
+ *
+ * @version $Revision$
+ */
+final class ContentToPresentation {
+
+    /**
+     * Thrown if a document contains content markup which is only supported
+     * by the stylesheet.
+     */
+    static final class UnsupportedContentException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedContentException(final String construct) {
+            super(construct);
+        }
+    }
+
+    private static final String APPLY_FUNCTION = "\u2061";
+
+    private static final String INVISIBLE_TIMES = "\u2062";
+
+    private static final String EXPONENTIAL_E = "\u2147";
+
+    private static final String MINUS = "-";
+
+    private static final String APPLY = "apply";
+
+    private static final String MROW = "mrow";
+
+    private static final String MFENCED = "mfenced";
+
+    /**
+     * Elements for which the stylesheet has templates. All other elements
+     * are copied.
+     */
+    private static final Set<String> CONTENT_ELEMENTS = new HashSet<>(Arrays
+            .asList("annotation", "annotation-xml", ContentToPresentation.APPLY,
+                    "arccos", "arccosh", "arccot", "arccoth", "arccsc",
+                    "arccsch", "arcsec", "arcsech", "arcsin", "arcsinh",
+                    "arctan", "arctanh", "bvar", "ci", "cn", "complexes",
+                    "condition", "cos", "cosh", "cot", "coth", "csc", "csch",
+                    "csymbol", "declare", "degree", "domainofapplication",
+                    "emptyset", "eulergamma", "exp", "exponentiale", "false",
+                    "ident", "imaginaryi", "infinity", "integers", "interval",
+                    "lambda", "list", "ln", "log", "logbase", "lowlimit",
+                    "matrix", "matrixrow", "momentabout", "mtext",
+                    "naturalnumbers", "notanumber", "pi", "piecewise",
+                    "primes", "rationals", "reals", "reln", "sec", "sech",
+                    "semantics", "set", "sin", "sinh", "tan", "tanh", "true",
+                    "uplimit", "vector"));
+
+    /**
+     * Functions which are displayed by name.
+     */
+    private static final Set<String> TRIGONOMETRIC = new HashSet<>(Arrays
+            .asList("sin", "cos", "tan", "sec", "csc", "cot", "sinh", "cosh",
+                    "tanh", "sech", "csch", "coth", "arcsin", "arccos",
+                    "arctan", "arcsec", "arccsc", "arccot", "arcsinh",
+                    "arccosh", "arctanh", "arcsech", "arccsch", "arccoth"));
+
+    /**
+     * Relations which may be chained, and their operators.
+     */
+    private static final Map<String, String> RELATIONS = new HashMap<>();
+
+    /**
+     * Constants and symbols, and their identifiers.
+     */
+    private static final Map<String, String> CONSTANTS = new HashMap<>();
+
+    /**
+     * Types of cn and ci which are only supported by the stylesheet.
+     */
+    private static final Set<String> UNSUPPORTED_TYPES = new HashSet<>(Arrays
+            .asList("complex-cartesian", "complex", "complex-polar",
+                    "e-notation", "rational", "vector"));
+
+    private final DocumentElement document;
+
+    private final boolean addNamespace;
+
+    // CHECKSTYLE:OFF
+    static {
+        // CHECKSTYLE:ON
+        ContentToPresentation.RELATIONS.put("eq", "=");
+        ContentToPresentation.RELATIONS.put("gt", ">");
+        ContentToPresentation.RELATIONS.put("lt", "<");
+        ContentToPresentation.RELATIONS.put("geq", "\u2265");
+        ContentToPresentation.RELATIONS.put("leq", "\u2266");
+        ContentToPresentation.RELATIONS.put("equivalent", "\u2261");
+
+        ContentToPresentation.CONSTANTS.put("integers", "\u2124");
+        ContentToPresentation.CONSTANTS.put("reals", "\u211d");
+        ContentToPresentation.CONSTANTS.put("rationals", "\u211a");
+        ContentToPresentation.CONSTANTS.put("naturalnumbers", "\u2115");
+        ContentToPresentation.CONSTANTS.put("complexes", "\u2102");
+        ContentToPresentation.CONSTANTS.put("primes", "\u2119");
+        ContentToPresentation.CONSTANTS.put("exponentiale",
+                ContentToPresentation.EXPONENTIAL_E);
+        ContentToPresentation.CONSTANTS.put("imaginaryi", "\u2148");
+        ContentToPresentation.CONSTANTS.put("notanumber", "NaN");
+        ContentToPresentation.CONSTANTS.put("true", "true");
+        ContentToPresentation.CONSTANTS.put("false", "false");
+        ContentToPresentation.CONSTANTS.put("emptyset", "\u2205");
+        ContentToPresentation.CONSTANTS.put("pi", "\u03c0");
+        ContentToPresentation.CONSTANTS.put("eulergamma", "\u03b3");
+        ContentToPresentation.CONSTANTS.put("infinity", "\u221e");
+    }
+
+    /**
+     * Creates a new converter.
+     *
+     * @param doc
+     *            document to create the presentation elements in.
+     * @param addNS
+     *            if true, elements without a namespace are treated as MathML
+     *            elements, and all new elements use the same prefix as the
+     *            copied ones.
+     */
+    ContentToPresentation(final DocumentElement doc, final boolean addNS) {
+        this.document = doc;
+        this.addNamespace = addNS;
+    }
+
+    /**
+     * Checks if the given node has to be converted.
+     *
+     * @param node
+     *            a node of the source tree.
+     * @return true if the node is a content element.
+     */
+    boolean isContentElement(final Node node) {
+        return node.getNodeType() == Node.ELEMENT_NODE
+                && this.isMathML(node)
+                && ContentToPresentation.CONTENT_ELEMENTS.contains(DOMBuilder
+                        .localName(node));
+    }
+
+    /**
+     * Converts a content element and appends the result to the given parent.
+     *
+     * @param element
+     *            the content element.
+     * @param parent
+     *            node to append the presentation markup to.
+     */
+    void transform(final Element element, final Node parent) {
+        final String name = DOMBuilder.localName(element);
+        if ("cn".equals(name)) {
+            this.token(element, parent, "mn", true);
+        } else if ("ci".equals(name)) {
+            this.token(element, parent, "mi", false);
+        } else if ("csymbol".equals(name)) {
+            this.csymbol(element, parent);
+        } else if ("mtext".equals(name)) {
+            this.copy(element, parent);
+        } else if ("semantics".equals(name)) {
+            this.semantics(element, parent);
+        } else if ("annotation".equals(name)) {
+            // annotations are not rendered.
+            return;
+        } else if (ContentToPresentation.APPLY.equals(name)) {
+            this.apply(element, parent, true);
+        } else if ("reln".equals(name)) {
+            this.apply(element, parent, false);
+        } else {
+            final String constant = ContentToPresentation.CONSTANTS.get(name);
+            if (constant == null) {
+                throw new UnsupportedContentException(name);
+            }
+            parent.appendChild(this.create("mi", constant));
+        }
+    }
+
+    private void applyTemplates(final Element element, final Node parent) {
+        if (element == null) {
+            return;
+        }
+        if (this.isContentElement(element)) {
+            this.transform(element, parent);
+        } else {
+            DOMBuilder.copyInto(element, this.document, parent,
+                    this.addNamespace, this);
+        }
+    }
+
+    private void copy(final Element element, final Node parent) {
+        DOMBuilder.copyInto(element, this.document, parent, this.addNamespace,
+                null);
+    }
+
+    private void token(final Element element, final Node parent,
+            final String tokenName, final boolean isNumber) {
+        if (ContentToPresentation.UNSUPPORTED_TYPES.contains(element
+                .getAttribute("type"))) {
+            throw new UnsupportedContentException(element.getNodeName()
+                    + " type");
+        }
+        if (isNumber && element.hasAttribute("base")
+                && !ContentToPresentation.isTen(element.getAttribute("base"))) {
+            throw new UnsupportedContentException(element.getNodeName()
+                    + " base");
+        }
+        final List<Element> children = ContentToPresentation
+                .children(element);
+        if (children.isEmpty()) {
+            parent.appendChild(this.create(tokenName, element
+                    .getTextContent()));
+        } else {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            for (final Element child : children) {
+                this.copy(child, mrow);
+            }
+            parent.appendChild(mrow);
+        }
+    }
+
+    private static boolean isTen(final String base) {
+        try {
+            return Double.parseDouble(base.trim()) == 10.0;
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void csymbol(final Element element, final Node parent) {
+        boolean onlyText = true;
+        for (Node child = element.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            final short type = child.getNodeType();
+            if (type != Node.TEXT_NODE && type != Node.CDATA_SECTION_NODE) {
+                onlyText = false;
+            }
+        }
+        if (onlyText) {
+            parent.appendChild(this.create("mo", element.getTextContent()));
+        } else {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            for (final Element child : ContentToPresentation.children(element)) {
+                this.copy(child, mrow);
+            }
+            parent.appendChild(mrow);
+        }
+    }
+
+    private void semantics(final Element element, final Node parent) {
+        final List<Element> children = ContentToPresentation
+                .children(element);
+        for (final Element child : children) {
+            if (this.is(child, "annotation-xml")
+                    && child.hasAttribute("encoding")) {
+                if (child.getAttribute("encoding").contains(
+                        "MathML-Presentation")) {
+                    throw new UnsupportedContentException("annotation-xml");
+                }
+                break;
+            }
+        }
+        final Element mrow = this.create(ContentToPresentation.MROW);
+        if (!children.isEmpty()) {
+            this.applyTemplates(children.get(0), mrow);
+        }
+        parent.appendChild(mrow);
+    }
+
+    private void apply(final Element element, final Node parent,
+            final boolean isApply) {
+        final List<Element> args = ContentToPresentation.children(element);
+        final Element head = ContentToPresentation.get(args, 0);
+        if (head == null || !this.isMathML(head)) {
+            throw new UnsupportedContentException(element.getNodeName());
+        }
+        final String op = DOMBuilder.localName(head);
+        final String relation = ContentToPresentation.RELATIONS.get(op);
+        if (relation != null) {
+            this.relation(args, relation, parent);
+        } else if ("neq".equals(op)) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            this.applyTemplates(ContentToPresentation.get(args, 1), mrow);
+            mrow.appendChild(this.create("mo", "\u2260"));
+            this.applyTemplates(ContentToPresentation.get(args, 2), mrow);
+            parent.appendChild(mrow);
+        } else if (!isApply) {
+            throw new UnsupportedContentException("reln " + op);
+        } else if ("plus".equals(op)) {
+            this.plus(args, parent);
+        } else if ("minus".equals(op)) {
+            this.minus(args, parent);
+        } else if ("times".equals(op)) {
+            this.times(element, args, parent);
+        } else if ("divide".equals(op)) {
+            this.divide(element, args, parent);
+        } else if ("power".equals(op)) {
+            final Element msup = this.create("msup");
+            this.fencedIfApply(ContentToPresentation.get(args, 1), msup);
+            this.applyTemplates(ContentToPresentation.get(args, 2), msup);
+            parent.appendChild(msup);
+        } else if ("factorial".equals(op)) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            this.fencedIfApply(ContentToPresentation.get(args, 1), mrow);
+            mrow.appendChild(this.create("mo", "!"));
+            parent.appendChild(mrow);
+        } else if ("rem".equals(op)) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            this.fencedIfApply(ContentToPresentation.get(args, 1), mrow);
+            mrow.appendChild(this.create("mo", "mod"));
+            this.fencedIfApply(ContentToPresentation.get(args, 2), mrow);
+            parent.appendChild(mrow);
+        } else if ("abs".equals(op)) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            mrow.appendChild(this.create("mo", "|"));
+            this.applyTemplates(args.get(args.size() - 1), mrow);
+            mrow.appendChild(this.create("mo", "|"));
+            parent.appendChild(mrow);
+        } else if ("exp".equals(op)) {
+            final Element msup = this.create("msup");
+            msup.appendChild(this.create("mi",
+                    ContentToPresentation.EXPONENTIAL_E));
+            this.applyTemplates(ContentToPresentation.get(args, 1), msup);
+            parent.appendChild(msup);
+        } else if ("ln".equals(op)
+                || ContentToPresentation.TRIGONOMETRIC.contains(op)) {
+            this.function(op, args, parent);
+        } else if ("ci".equals(op) || "csymbol".equals(op)) {
+            this.userFunction(head, args, parent);
+        } else {
+            throw new UnsupportedContentException("apply " + op);
+        }
+    }
+
+    private void relation(final List<Element> args, final String operator,
+            final Node parent) {
+        final int count = args.size();
+        if (count >= 3) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            for (int i = 1; i < count - 1; i++) {
+                this.applyTemplates(args.get(i), mrow);
+                mrow.appendChild(this.create("mo", operator));
+            }
+            this.applyTemplates(args.get(count - 1), mrow);
+            parent.appendChild(mrow);
+        } else if (count == 2) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            mrow.appendChild(this.create("mo", operator));
+            this.applyTemplates(args.get(1), mrow);
+            parent.appendChild(mrow);
+        } else {
+            parent.appendChild(this.create("mo", operator));
+        }
+    }
+
+    private void plus(final List<Element> args, final Node parent) {
+        final int count = args.size();
+        if (count >= 3) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            for (int i = 1; i < count; i++) {
+                final Element arg = args.get(i);
+                if (i > 1) {
+                    mrow.appendChild(this.create("mo", "+"));
+                }
+                if (this.isNegative(arg)
+                        || (this.is(arg, ContentToPresentation.APPLY) && this
+                                .hasChild(arg, "minus"))) {
+                    this.fenced(arg, mrow);
+                } else {
+                    this.applyTemplates(arg, mrow);
+                }
+            }
+            parent.appendChild(mrow);
+        } else if (count == 2) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            mrow.appendChild(this.create("mo", "+"));
+            this.applyTemplates(args.get(1), mrow);
+            parent.appendChild(mrow);
+        } else {
+            parent.appendChild(this.create("mo", "+"));
+        }
+    }
+
+    private void minus(final List<Element> args, final Node parent) {
+        final Element mrow = this.create(ContentToPresentation.MROW);
+        if (args.size() == 3) {
+            this.applyTemplates(args.get(1), mrow);
+            mrow.appendChild(this.create("mo", ContentToPresentation.MINUS));
+            this.fencedIfNegativeOrApply(args.get(2), args.get(2), mrow);
+        } else {
+            mrow.appendChild(this.create("mo", ContentToPresentation.MINUS));
+            this.fencedIfNegativeOrApply(ContentToPresentation.get(args, 1),
+                    args.get(args.size() - 1), mrow);
+        }
+        parent.appendChild(mrow);
+    }
+
+    private void times(final Element apply, final List<Element> args,
+            final Node parent) {
+        final int count = args.size();
+        if (count >= 3) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            for (int i = 1; i < count; i++) {
+                final Element arg = args.get(i);
+                if (this.hasChild(arg, "plus") || this.hasChild(arg, "minus")
+                        || this.isNegative(arg)) {
+                    this.fenced(arg, mrow);
+                } else {
+                    this.applyTemplates(arg, mrow);
+                }
+                if (i < count - 1) {
+                    mrow.appendChild(this.create("mo",
+                            ContentToPresentation.INVISIBLE_TIMES));
+                }
+            }
+            parent.appendChild(mrow);
+        } else if (count == 2) {
+            final Element mrow = this.create(ContentToPresentation.MROW);
+            mrow.appendChild(this.create("mo",
+                    ContentToPresentation.INVISIBLE_TIMES));
+            final Element arg = args.get(1);
+            if (this.hasChild(apply, "plus") || this.hasChild(apply, "minus")
+                    || this.isNegative(arg)) {
+                this.fenced(arg, mrow);
+            } else {
+                this.applyTemplates(arg, mrow);
+            }
+            parent.appendChild(mrow);
+        } else {
+            parent.appendChild(this.create("mo",
+                    ContentToPresentation.INVISIBLE_TIMES));
+        }
+    }
+
+    private void divide(final Element apply, final List<Element> args,
+            final Node parent) {
+        final Element mrow = this.create(ContentToPresentation.MROW);
+        final Element mfrac = this.create("mfrac");
+        if (apply.getAttribute("other").contains("scriptstyle")) {
+            mfrac.setAttributeNS(null, "bevelled", "true");
+        }
+        for (int i = 1; i <= 2; i++) {
+            final Element part = this.create(ContentToPresentation.MROW);
+            this.applyTemplates(ContentToPresentation.get(args, i), part);
+            mfrac.appendChild(part);
+        }
+        mrow.appendChild(mfrac);
+        parent.appendChild(mrow);
+    }
+
+    private void function(final String name, final List<Element> args,
+            final Node parent) {
+        final Element mrow = this.create(ContentToPresentation.MROW);
+        mrow.appendChild(this.create("mi", name));
+        mrow.appendChild(this.create("mo",
+                ContentToPresentation.APPLY_FUNCTION));
+        final Element arg = ContentToPresentation.get(args, 1);
+        if (this.is(arg, ContentToPresentation.APPLY) || this.isNegative(arg)) {
+            this.fenced(arg, mrow);
+        } else if ("ln".equals(name)) {
+            this.applyTemplates(arg, mrow);
+        } else {
+            final Element argRow = this.create(ContentToPresentation.MROW);
+            this.applyTemplates(arg, argRow);
+            mrow.appendChild(argRow);
+        }
+        parent.appendChild(mrow);
+    }
+
+    private void userFunction(final Element head, final List<Element> args,
+            final Node parent) {
+        final Element mrow = this.create(ContentToPresentation.MROW);
+        this.transform(head, mrow);
+        final boolean isCi = "ci".equals(DOMBuilder.localName(head));
+        if (!isCi || args.size() > 1) {
+            if (isCi) {
+                mrow.appendChild(this.create("mo",
+                        ContentToPresentation.APPLY_FUNCTION));
+            }
+            final Element mfenced = this.create(ContentToPresentation.MFENCED);
+            for (int i = 1; i < args.size(); i++) {
+                this.applyTemplates(args.get(i), mfenced);
+            }
+            mrow.appendChild(mfenced);
+        }
+        parent.appendChild(mrow);
+    }
+
+    private void fenced(final Element element, final Node parent) {
+        final Element mfenced = this.create(ContentToPresentation.MFENCED);
+        mfenced.setAttributeNS(null, "separators", "");
+        this.applyTemplates(element, mfenced);
+        parent.appendChild(mfenced);
+    }
+
+    private void fencedIfApply(final Element element, final Node parent) {
+        if (this.is(element, ContentToPresentation.APPLY)) {
+            this.fenced(element, parent);
+        } else {
+            this.applyTemplates(element, parent);
+        }
+    }
+
+    private void fencedIfNegativeOrApply(final Element test,
+            final Element element, final Node parent) {
+        if (this.isNegative(test)
+                || this.is(test, ContentToPresentation.APPLY)) {
+            this.fenced(element, parent);
+        } else {
+            this.applyTemplates(element, parent);
+        }
+    }
+
+    /**
+     * Checks if the element is a ci or cn starting with a minus sign. Like
+     * the stylesheet, this only looks at the first text child.
+     */
+    private boolean isNegative(final Element element) {
+        return (this.is(element, "ci") || this.is(element, "cn"))
+                && ContentToPresentation.firstText(element).contains(
+                        ContentToPresentation.MINUS);
+    }
+
+    private static String firstText(final Element element) {
+        final StringBuilder text = new StringBuilder();
+        Node child = element.getFirstChild();
+        while (child != null && !ContentToPresentation.isText(child)) {
+            child = child.getNextSibling();
+        }
+        while (child != null && ContentToPresentation.isText(child)) {
+            text.append(child.getNodeValue());
+            child = child.getNextSibling();
+        }
+        return text.toString();
+    }
+
+    private static boolean isText(final Node node) {
+        final short type = node.getNodeType();
+        return type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE;
+    }
+
+    private boolean isMathML(final Node node) {
+        final String ns = node.getNamespaceURI();
+        if (ns == null || ns.isEmpty()) {
+            return this.addNamespace;
+        }
+        return AbstractJEuclidElement.URI.equals(ns);
+    }
+
+    private boolean is(final Element element, final String name) {
+        return element != null && this.isMathML(element)
+                && name.equals(DOMBuilder.localName(element));
+    }
+
+    private boolean hasChild(final Element element, final String name) {
+        for (final Element child : ContentToPresentation.children(element)) {
+            if (this.is(child, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Element> children(final Element element) {
+        final List<Element> children = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    private static Element get(final List<Element> list, final int index) {
+        if (index < list.size()) {
+            return list.get(index);
+        }
+        return null;
+    }
+
+    private Element create(final String name) {
+        final String qualifiedName;
+        if (this.addNamespace) {
+            qualifiedName = DOMBuilder.MML_PREFIX + name;
+        } else {
+            qualifiedName = name;
+        }
+        return JEuclidElementFactory.elementFromName(
+                AbstractJEuclidElement.URI, qualifiedName, this.document);
+    }
+
+    private Element create(final String name, final String text) {
+        final Element element = this.create(name);
+        if (text.length() > 0) {
+            element.appendChild(this.document.createTextNode(text));
+        }
+        return element;
+    }
+}
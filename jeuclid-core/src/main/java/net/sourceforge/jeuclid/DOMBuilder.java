@@ -18,8 +18,13 @@
 
 package net.sourceforge.jeuclid;
 
-import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -27,6 +32,8 @@ import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 
+import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+import net.sourceforge.jeuclid.elements.JEuclidElementFactory;
 import net.sourceforge.jeuclid.elements.generic.DocumentElement;
 
 import org.apache.commons.logging.Log;
@@ -35,7 +42,9 @@ import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
+import org.w3c.dom.Text;
 
 /**
  * Builds a MathML tree from a given DOM tree.
@@ -56,50 +65,34 @@ public final class DOMBuilder {
         }
     }
 
-    @GuardedBy("itself")
-    private final Transformer contentTransformer;
+    private static final String MML_PREFIX_NAME = "mml";
+
+    /**
+     * Prefix used for elements which are put into the MathML namespace.
+     */
+    static final String MML_PREFIX = DOMBuilder.MML_PREFIX_NAME + ':';
 
-    @GuardedBy("itself")
-    private final Transformer identityTransformer;
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
 
-    @GuardedBy("itself")
-    private final Transformer namespaceTransformer;
+    private final TransformerPool contentTransformer;
 
     /**
      * Default constructor.
      */
     protected DOMBuilder() {
-        this.identityTransformer = this.createIdentityTransformer();
-        this.contentTransformer = this.createTransformer(
-                "/net/sourceforge/jeuclid/content/mathmlc2p.xsl",
-                this.identityTransformer);
-        this.namespaceTransformer = this.createTransformer(
-                "/net/sourceforge/jeuclid/addMathMLNamespace.xsl",
-                this.identityTransformer);
-    }
-
-    private Transformer createIdentityTransformer() {
-        Transformer t;
-        try {
-            t = TransformerFactory.newInstance().newTransformer();
-        } catch (final TransformerException e) {
-            DOMBuilder.LOGGER.warn(e.getMessage());
-            t = null;
-            assert false;
-        }
-        return t;
+        this.contentTransformer = new TransformerPool(this
+                .createTemplates("/net/sourceforge/jeuclid/content/mathmlc2p.xsl"));
     }
 
-    private Transformer createTransformer(final String sourceFile,
-            final Transformer fallback) {
-        Transformer t;
+    private Templates createTemplates(final String sourceFile) {
+        Templates t;
         try {
             t = TransformerFactory.newInstance().newTemplates(
                     new StreamSource(DOMBuilder.class
-                            .getResourceAsStream(sourceFile))).newTransformer();
+                            .getResourceAsStream(sourceFile)));
         } catch (final TransformerException e) {
             DOMBuilder.LOGGER.warn(e.getMessage());
-            t = fallback;
+            t = null;
         }
         return t;
     }
@@ -175,7 +168,57 @@ public final class DOMBuilder {
      */
     public DocumentElement createJeuclidDom(final Node node,
             final boolean supportContent, final boolean addNamespace) {
-        Node documentElement;
+        final Node documentElement = DOMBuilder.getDocumentElement(node);
+        DocumentElement d;
+        try {
+            d = DOMBuilder.copyTree(documentElement, addNamespace,
+                    supportContent);
+        } catch (final ContentToPresentation.UnsupportedContentException e) {
+            DOMBuilder.LOGGER.debug("Falling back to stylesheet for "
+                    + e.getMessage());
+            d = this.transformContent(documentElement, addNamespace);
+        } catch (final DOMException e) {
+            d = null;
+            DOMBuilder.LOGGER.warn(e.getMessage());
+        }
+        return d;
+    }
+
+    /**
+     * Constructs a builder with content math support, but without the
+     * content to presentation stylesheet.
+     * <p>
+     * Content markup is only converted if all of it is supported by the
+     * built-in converter. This is mostly useful to check which documents
+     * {@link #createJeuclidDom(Node, boolean, boolean)} has to run through
+     * the stylesheet.
+     * 
+     * @param node
+     *            The MathML document. Can be an instance of Document, Element
+     *            or DocumentFragment with Element child
+     * @param addNamespace
+     *            if set to true, the MathML namespace will be added to all
+     *            elements.
+     * @return the parsed Document, or null if it contains content markup
+     *         which is only supported by the stylesheet.
+     */
+    public DocumentElement createJeuclidDomWithoutStylesheet(final Node node,
+            final boolean addNamespace) {
+        DocumentElement d;
+        try {
+            d = DOMBuilder.copyTree(DOMBuilder.getDocumentElement(node),
+                    addNamespace, true);
+        } catch (final ContentToPresentation.UnsupportedContentException e) {
+            d = null;
+        } catch (final DOMException e) {
+            d = null;
+            DOMBuilder.LOGGER.warn(e.getMessage());
+        }
+        return d;
+    }
+
+    private static Node getDocumentElement(final Node node) {
+        final Node documentElement;
         if (node instanceof Document) {
             documentElement = ((Document) node).getDocumentElement();
         } else if (node instanceof Element) {
@@ -191,40 +234,285 @@ public final class DOMBuilder {
             throw new IllegalArgumentException("Unsupported node: " + node
                     + ". Expected either Document, Element or DocumentFragment");
         }
+        return documentElement;
+    }
 
-        if (addNamespace) {
-            documentElement = this.applyTransform(documentElement,
-                    this.namespaceTransformer);
+    /**
+     * Converts content markup with the content to presentation stylesheet.
+     * This is only used for the few constructs which are not supported by
+     * {@link ContentToPresentation}.
+     */
+    private DocumentElement transformContent(final Node documentElement,
+            final boolean addNamespace) {
+        if (!addNamespace) {
+            return this.applyTransform(documentElement,
+                    this.contentTransformer);
         }
+        DocumentElement d;
+        try {
+            d = DOMBuilder.copyTree(documentElement, true, false);
+        } catch (final DOMException e) {
+            d = null;
+            DOMBuilder.LOGGER.warn(e.getMessage());
+        }
+        if (d != null) {
+            d = this.applyTransform(d, this.contentTransformer);
+        }
+        return d;
+    }
 
-        final DocumentElement d;
+    /**
+     * Copies the given tree into a new JEuclid DOM.
+     * <p>
+     * This does the same as an identity transformation, but is a lot faster,
+     * as it does not need to go through an intermediate result tree.
+     * 
+     * @param root
+     *            root element of the tree to copy.
+     * @param addNamespace
+     *            if true, elements without a namespace are put into the
+     *            MathML namespace.
+     * @param supportContent
+     *            if true, content elements are converted to presentation
+     *            markup while copying.
+     * @return a new DocumentElement containing a copy of the tree.
+     */
+    private static DocumentElement copyTree(final Node root,
+            final boolean addNamespace, final boolean supportContent) {
+        final DocumentElement d = new DocumentElement();
+        final ContentToPresentation content;
         if (supportContent) {
-            d = this.applyTransform(documentElement, this.contentTransformer);
+            content = new ContentToPresentation(d, addNamespace);
         } else {
-            d = this.applyTransform(documentElement, this.identityTransformer);
+            content = null;
         }
+        DOMBuilder.copyInto(root, d, d, addNamespace, content);
         return d;
     }
 
+    /**
+     * Copies the given tree and appends it to a parent node.
+     * <p>
+     * Elements are attached to their parent only once all their children
+     * have been copied, so that mutation events do not have to travel up the
+     * whole document for every node.
+     * <p>
+     * If a content converter is given, content elements are handed over to
+     * it instead of being copied, and comments and processing instructions
+     * are dropped, just as the content stylesheet does. Presentation
+     * elements are still copied only once.
+     * 
+     * @param root
+     *            root of the tree to copy.
+     * @param d
+     *            document to create the nodes in.
+     * @param parent
+     *            node to append the copy to.
+     * @param addNamespace
+     *            if true, elements without a namespace are put into the
+     *            MathML namespace.
+     * @param content
+     *            converter for content elements, may be null.
+     */
+    static void copyInto(final Node root, final DocumentElement d,
+            final Node parent, final boolean addNamespace,
+            final ContentToPresentation content) {
+        final Deque<Node> targets = new ArrayDeque<>();
+        Node target = parent;
+        Node current = root;
+        while (current != null) {
+            Node copy = null;
+            boolean descend = false;
+            if (content != null && content.isContentElement(current)) {
+                content.transform((Element) current, target);
+            } else {
+                copy = DOMBuilder.copyNode(current, d, target, addNamespace,
+                        content == null);
+                descend = current.getFirstChild() != null && (copy != null
+                        || current.getNodeType() == Node.ENTITY_REFERENCE_NODE);
+            }
+            if (descend) {
+                targets.push(target);
+                if (copy != null) {
+                    target = copy;
+                }
+                current = current.getFirstChild();
+            } else {
+                if (copy != null) {
+                    target.appendChild(copy);
+                }
+                while (current != root && current.getNextSibling() == null) {
+                    current = current.getParentNode();
+                    final Node finished = target;
+                    target = targets.pop();
+                    if (finished != target) {
+                        target.appendChild(finished);
+                    }
+                }
+                if (current == root) {
+                    current = null;
+                } else {
+                    current = current.getNextSibling();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of a single node without its children. Elements are
+     * returned to the caller, all other nodes are appended to the given
+     * parent.
+     * 
+     * @return the copied element, or null for other nodes.
+     */
+    private static Node copyNode(final Node node, final DocumentElement d,
+            final Node parent, final boolean addNamespace,
+            final boolean keepComments) {
+        Node copy = null;
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            copy = DOMBuilder.copyElement((Element) node, d, parent,
+                    addNamespace);
+            break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+            final Node last = parent.getLastChild();
+            if (last instanceof Text) {
+                // Merge adjacent text, as a transformation would.
+                ((Text) last).appendData(node.getNodeValue());
+            } else {
+                parent.appendChild(d.createTextNode(node.getNodeValue()));
+            }
+            break;
+        case Node.COMMENT_NODE:
+            if (keepComments) {
+                parent.appendChild(d.createComment(node.getNodeValue()));
+            }
+            break;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            if (keepComments) {
+                parent.appendChild(d.createProcessingInstruction(node
+                        .getNodeName(), node.getNodeValue()));
+            }
+            break;
+        default:
+            // Entity references are expanded, everything else is ignored.
+            break;
+        }
+        return copy;
+    }
+
+    private static Element copyElement(final Element source,
+            final DocumentElement d, final Node parent,
+            final boolean addNamespace) {
+        String ns = source.getNamespaceURI();
+        String name = source.getNodeName();
+        boolean declareNamespace = false;
+        if (ns == null || ns.isEmpty()) {
+            if (addNamespace) {
+                ns = AbstractJEuclidElement.URI;
+                name = DOMBuilder.MML_PREFIX + DOMBuilder.localName(source);
+                declareNamespace = !DOMBuilder.MML_PREFIX_NAME.equals(parent
+                        .getPrefix());
+            } else {
+                ns = null;
+            }
+        }
+        final Element copy = JEuclidElementFactory
+                .elementFromName(ns, name, d);
+        if (declareNamespace) {
+            copy.setAttributeNS(DOMBuilder.XMLNS_URI, "xmlns:"
+                    + DOMBuilder.MML_PREFIX_NAME, AbstractJEuclidElement.URI);
+        }
+        final NamedNodeMap attributes = source.getAttributes();
+        final int length = attributes.getLength();
+        for (int i = 0; i < length; i++) {
+            final Node attr = attributes.item(i);
+            String attrNs = attr.getNamespaceURI();
+            if (attrNs != null && attrNs.isEmpty()) {
+                attrNs = null;
+            }
+            copy.setAttributeNS(attrNs, attr.getNodeName(), attr
+                    .getNodeValue());
+        }
+        return copy;
+    }
+
+    /**
+     * @param node
+     *            a node.
+     * @return the local name of the node, even if it was created without
+     *         namespace support.
+     */
+    static String localName(final Node node) {
+        final String localName = node.getLocalName();
+        if (localName != null) {
+            return localName;
+        }
+        final String name = node.getNodeName();
+        return name.substring(name.indexOf(':') + 1);
+    }
+
     private DocumentElement applyTransform(final Node src,
-            final Transformer transformer) {
+            final TransformerPool pool) {
         DocumentElement d;
         try {
             final DOMSource source = new DOMSource(src);
             d = new DocumentElement();
             final DOMResult result = new DOMResult(d);
-            synchronized (transformer) {
+            final Transformer transformer = pool.acquire();
+            try {
                 transformer.transform(source, result);
+            } finally {
+                pool.release(transformer);
             }
         } catch (final TransformerException | DOMException e) {
             d = null;
             DOMBuilder.LOGGER.warn(e.getMessage());
-        } catch (final NullPointerException e) {
-            d = null;
-            // Happens if the stylesheet was not loaded correctly
-            DOMBuilder.LOGGER.warn(e.getMessage());
         }
         return d;
     }
 
+    /**
+     * Hands out Transformers created from a compiled stylesheet.
+     * <p>
+     * Transformers are not thread safe, so every concurrent caller gets its
+     * own instance. Instances are reused once they are released, so the pool
+     * never grows beyond the maximum number of concurrent callers.
+     */
+    @ThreadSafe
+    private static final class TransformerPool {
+        private final Templates templates;
+
+        private final Queue<Transformer> idle = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Creates a new pool.
+         * 
+         * @param compiledStylesheet
+         *            the stylesheet to use, or null for identity
+         *            transformers.
+         */
+        TransformerPool(final Templates compiledStylesheet) {
+            this.templates = compiledStylesheet;
+        }
+
+        Transformer acquire() throws TransformerException {
+            Transformer t = this.idle.poll();
+            if (t == null) {
+                if (this.templates == null) {
+                    t = TransformerFactory.newInstance().newTransformer();
+                } else {
+                    t = this.templates.newTransformer();
+                }
+            }
+            return t;
+        }
+
+        void release(final Transformer transformer) {
+            transformer.reset();
+            this.idle.offer(transformer);
+        }
+    }
+
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.concurrent.Immutable;
+import javax.xml.XMLConstants;
+
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Identifies a formula together with the context it is laid out in.
+ * <p>
+ * Two keys are equal if their formulas render the same. The formula is
+ * reduced to a canonical form: whitespace in text is collapsed and trimmed,
+ * whitespace between elements, comments and processing instructions are
+ * dropped, attributes are sorted, and elements without a namespace are
+ * treated as MathML. The layout context is compared as a
+ * {@link FrozenLayoutContext}.
+ *
+ * @version $Revision$
+ */
+@Immutable
+public final class FormulaKey {
+
+    private final String formula;
+
+    private final FrozenLayoutContext context;
+
+    private final int hash;
+
+    private FormulaKey(final String canonicalFormula,
+            final FrozenLayoutContext layoutContext) {
+        this.formula = canonicalFormula;
+        this.context = layoutContext;
+        this.hash = canonicalFormula.hashCode() * 31
+                + layoutContext.hashCode();
+    }
+
+    /**
+     * Creates the key for a formula.
+     *
+     * @param node
+     *            the formula. Can be a Document, Element or DocumentFragment.
+     * @param layoutContext
+     *            the context the formula is laid out in. When creating many
+     *            keys for the same context, pass a {@link FrozenLayoutContext}
+     *            to avoid copying it for every key.
+     * @return the key.
+     */
+    public static FormulaKey create(final Node node,
+            final LayoutContext layoutContext) {
+        final StringBuilder b = new StringBuilder();
+        final Node start;
+        if (node instanceof Document) {
+            start = ((Document) node).getDocumentElement();
+        } else {
+            start = node;
+        }
+        FormulaKey.appendNode(start, b);
+        return new FormulaKey(b.toString(), FrozenLayoutContext
+                .of(layoutContext));
+    }
+
+    private static void appendNode(final Node node, final StringBuilder b) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            FormulaKey.appendElement(node, b);
+            break;
+        case Node.DOCUMENT_FRAGMENT_NODE:
+        case Node.ENTITY_REFERENCE_NODE:
+            FormulaKey.appendChildren(node, b);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static void appendElement(final Node element,
+            final StringBuilder b) {
+        b.append('<');
+        FormulaKey.appendName(element, b);
+        final NamedNodeMap attributes = element.getAttributes();
+        final Map<String, String> sorted = new TreeMap<String, String>();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attr = (Attr) attributes.item(i);
+            if (!FormulaKey.isNamespaceDeclaration(attr)) {
+                final StringBuilder name = new StringBuilder();
+                FormulaKey.appendName(attr, name);
+                sorted.put(name.toString(), attr.getValue());
+            }
+        }
+        for (final Map.Entry<String, String> e : sorted.entrySet()) {
+            b.append(' ').append(e.getKey()).append("=\"");
+            FormulaKey.appendEscaped(e.getValue(), b);
+            b.append('"');
+        }
+        b.append('>');
+        FormulaKey.appendChildren(element, b);
+        b.append("</>");
+    }
+
+    private static boolean isNamespaceDeclaration(final Attr attr) {
+        if (attr.getNamespaceURI() == null) {
+            final String name = attr.getName();
+            return XMLConstants.XMLNS_ATTRIBUTE.equals(name)
+                    || name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":");
+        }
+        return XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr
+                .getNamespaceURI());
+    }
+
+    private static void appendChildren(final Node parent,
+            final StringBuilder b) {
+        final StringBuilder text = new StringBuilder();
+        for (Node child = parent.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            final short type = child.getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            } else if (type == Node.ELEMENT_NODE
+                    || type == Node.ENTITY_REFERENCE_NODE) {
+                FormulaKey.appendText(text, b);
+                FormulaKey.appendNode(child, b);
+            }
+        }
+        FormulaKey.appendText(text, b);
+    }
+
+    private static void appendText(final StringBuilder text,
+            final StringBuilder b) {
+        final int length = text.length();
+        boolean space = false;
+        boolean any = false;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                space = any;
+            } else {
+                if (space) {
+                    b.append(' ');
+                    space = false;
+                }
+                any = true;
+                FormulaKey.appendEscaped(c, b);
+            }
+        }
+        text.setLength(0);
+    }
+
+    private static void appendName(final Node node, final StringBuilder b) {
+        final String ns = node.getNamespaceURI();
+        final String localName = node.getLocalName();
+        if (localName == null) {
+            b.append(node.getNodeName());
+        } else {
+            if (ns != null && !AbstractJEuclidElement.URI.equals(ns)) {
+                b.append('{').append(ns).append('}');
+            }
+            b.append(localName);
+        }
+    }
+
+    private static void appendEscaped(final String s, final StringBuilder b) {
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                FormulaKey.appendEscaped(s.charAt(i), b);
+            }
+        }
+    }
+
+    private static void appendEscaped(final char c, final StringBuilder b) {
+        switch (c) {
+        case '<':
+            b.append("&lt;");
+            break;
+        case '"':
+            b.append("&quot;");
+            break;
+        case '&':
+            b.append("&amp;");
+            break;
+        default:
+            b.append(c);
+            break;
+        }
+    }
+
+    /**
+     * Returns the canonical form of the formula.
+     *
+     * @return the canonical form.
+     */
+    public String getCanonicalFormula() {
+        return this.formula;
+    }
+
+    /**
+     * Returns the layout context.
+     *
+     * @return the layout context.
+     */
+    public FrozenLayoutContext getContext() {
+        return this.context;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FormulaKey)) {
+            return false;
+        }
+        final FormulaKey other = (FormulaKey) obj;
+        return this.hash == other.hash && this.formula.equals(other.formula)
+                && this.context.equals(other.context);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return this.formula;
+    }
+}
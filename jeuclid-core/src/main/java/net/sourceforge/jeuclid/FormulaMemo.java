@@ -0,0 +1,171 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Remembers the result for each distinct formula during a single run, such
+ * as the processing of one document, so that repeated formulas are laid out
+ * and rendered only once.
+ * <p>
+ * An unbounded memo keeps every result until it is discarded at the end of
+ * the run. A bounded memo keeps only the most recently used results, so its
+ * memory use does not grow with the number of distinct formulas.
+ *
+ * @param <V>
+ *            type of the remembered results.
+ * @version $Revision$
+ */
+@ThreadSafe
+public final class FormulaMemo<V> {
+
+    private final Map<FormulaKey, V> results;
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong stored = new AtomicLong();
+
+    /**
+     * Default constructor, creates an unbounded memo.
+     */
+    public FormulaMemo() {
+        this.results = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates a memo which keeps at most the given number of results. If
+     * more are added, the least recently used result is forgotten.
+     *
+     * @param maxEntries
+     *            maximum number of results to keep, must be at least 1.
+     */
+    public FormulaMemo(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: "
+                    + maxEntries);
+        }
+        this.results = Collections
+                .synchronizedMap(new LinkedHashMap<FormulaKey, V>(16, 0.75f,
+                        true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<FormulaKey, V> eldest) {
+                        return this.size() > maxEntries;
+                    }
+                });
+    }
+
+    /**
+     * Looks up the result for a formula. Every call counts as one occurrence
+     * of the formula.
+     *
+     * @param key
+     *            the formula.
+     * @return the remembered result, or null if the formula was not seen
+     *         yet.
+     */
+    public V get(final FormulaKey key) {
+        this.lookups.incrementAndGet();
+        final V result = this.results.get(key);
+        if (result != null) {
+            this.hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Remembers the result for a formula.
+     *
+     * @param key
+     *            the formula.
+     * @param result
+     *            the result.
+     * @return the result remembered before, which should be used instead, or
+     *         the given result.
+     */
+    public V put(final FormulaKey key, final V result) {
+        final V previous = this.results.putIfAbsent(key, result);
+        if (previous == null) {
+            this.stored.incrementAndGet();
+            return result;
+        }
+        return previous;
+    }
+
+    /**
+     * @return the number of formulas looked up.
+     */
+    public long getLookupCount() {
+        return this.lookups.get();
+    }
+
+    /**
+     * @return the number of formulas which were found in the memo.
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of results currently remembered.
+     */
+    public int size() {
+        return this.results.size();
+    }
+
+    /**
+     * @return the number of results stored. This is the number of distinct
+     *         formulas, unless results were forgotten and stored again.
+     */
+    public long getStoredCount() {
+        return this.stored.get();
+    }
+
+    /**
+     * Returns the dedupe ratio, the number of formulas divided by the number
+     * of results stored.
+     *
+     * @return the dedupe ratio, 1 if nothing was deduplicated.
+     */
+    public float getDedupeRatio() {
+        final long distinct = this.getStoredCount();
+        if (distinct == 0) {
+            return 1.0f;
+        }
+        return (float) this.getLookupCount() / distinct;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return this.getLookupCount() + " formulas, " + this.getStoredCount()
+                + " rendered, dedupe ratio " + this.getDedupeRatio();
+    }
+}
@@ -22,7 +22,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
-import java.nio.file.Files;
 
 import javax.annotation.concurrent.ThreadSafe;
 import javax.xml.parsers.DocumentBuilder;
@@ -58,6 +57,10 @@ public final class MathMLParserSupport {
     /**
      * Creates a DocumentBuilder that can be used to parse MathML documents
      * into a standard DOM model.
+     * <p>
+     * Every call creates a new builder, which is not shared with the parse
+     * methods of this class. To parse many documents, use these methods
+     * instead, as they reuse pooled builders.
      * 
      * @return a DocumentBuilder instance that is configured for MathML
      * @throws ParserConfigurationException
@@ -66,7 +69,11 @@ public final class MathMLParserSupport {
     public static DocumentBuilder createDocumentBuilder()
             throws ParserConfigurationException {
         final DocumentBuilder builder = Parser.getInstance()
-                .getDocumentBuilder();
+                .newDocumentBuilder();
+        if (builder == null) {
+            throw new ParserConfigurationException(
+                    "Could not create DocumentBuilder");
+        }
         return builder;
     }
 
@@ -116,12 +123,12 @@ public final class MathMLParserSupport {
      * @throws SAXException
      *             if a parse error occurs.
      * @throws IOException
-     *             if a read I/O error occurs.
+     *             if a read I/O error occurs, or the file is an ODF package
+     *             without content.
      */
     public static Document parseFile(final File inFile) throws SAXException,
             IOException {
-        return Parser.getInstance().parseStreamSource(
-                new StreamSource(Files.newInputStream(inFile.toPath())));
+        return Parser.getInstance().parseFile(inFile);
     }
 
     /**
@@ -18,18 +18,25 @@
 
 package net.sourceforge.jeuclid;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.annotation.concurrent.ThreadSafe;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.XMLConstants;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /**
@@ -39,6 +46,9 @@ import org.w3c.dom.Node;
  * Tree. The functionality is not restricted to JEuclid, and can be used for
  * other DOM trees as well. In this case, you should set the addDoctype
  * parameter to false.
+ * <p>
+ * The DOM tree is written directly to the output, without going through a
+ * Transformer. Namespace declarations are added where the tree needs them.
  * 
  * @version $Revision$
  */
@@ -50,6 +60,12 @@ public final class MathMLSerializer {
      */
     private static final Log LOGGER = LogFactory.getLog(MathMLSerializer.class);
 
+    private static final String XML_DECL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    private static final String INDENT = "  ";
+
+    private static final String XMLNS_PREFIX = "ns";
+
     private MathMLSerializer() {
         // empty on purpose
     }
@@ -94,38 +110,395 @@ public final class MathMLSerializer {
             final boolean omitXMLDecl) {
         final StringWriter writer = new StringWriter();
         try {
-            final Transformer transformer = TransformerFactory.newInstance()
-                    .newTransformer();
-            final DOMSource source = new DOMSource(doc);
-            final StreamResult result = new StreamResult(writer);
-
-            if (addDoctype) {
-                transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC,
-                        ResourceEntityResolver.MML2_PUBLICID);
-                transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM,
-                        ResourceEntityResolver.MML2_SYSTEMID);
-                transformer.setOutputProperty(OutputKeys.MEDIA_TYPE,
-                        Constants.MATHML_MIMETYPE);
-            }
-            MathMLSerializer.boolToProperty(format, OutputKeys.INDENT,
-                    transformer);
-            MathMLSerializer.boolToProperty(omitXMLDecl,
-                    OutputKeys.OMIT_XML_DECLARATION, transformer);
-            transformer.transform(source, result);
-        } catch (final TransformerException e) {
+            MathMLSerializer.serialize(doc, writer, addDoctype, format,
+                    omitXMLDecl);
+        } catch (final IOException e) {
+            // Can not happen with a StringWriter.
             MathMLSerializer.LOGGER.warn(e.getMessage(), e);
         }
         return writer.toString();
+    }
+
+    /**
+     * Serialize a document to a Writer.
+     * <p>
+     * The XML declaration, if present, always states UTF-8 as encoding. The
+     * writer is flushed, but not closed.
+     * 
+     * @param doc
+     *            a DOM model of a document, or a node in a document.
+     * @param writer
+     *            where to write the document to.
+     * @param addDoctype
+     *            if true, a MathML DOCTYPE will be written. Use only with
+     *            MathML DOM trees.
+     * @param format
+     *            if true, elements which contain only other elements are
+     *            indented.
+     * @param omitXMLDecl
+     *            if true, there will be no XML declaration.
+     * @throws IOException
+     *             if the writer fails.
+     */
+    public static void serialize(final Node doc, final Writer writer,
+            final boolean addDoctype, final boolean format,
+            final boolean omitXMLDecl) throws IOException {
+        if (!omitXMLDecl) {
+            writer.write(MathMLSerializer.XML_DECL);
+            if (format) {
+                writer.write('\n');
+            }
+        }
+        if (addDoctype) {
+            final Node root;
+            if (doc instanceof Document) {
+                root = ((Document) doc).getDocumentElement();
+            } else {
+                root = doc;
+            }
+            if (root != null) {
+                writer.write("<!DOCTYPE ");
+                writer.write(root.getNodeName());
+                writer.write(" PUBLIC \"");
+                writer.write(ResourceEntityResolver.MML2_PUBLICID);
+                writer.write("\" \"");
+                writer.write(ResourceEntityResolver.MML2_SYSTEMID);
+                writer.write("\">");
+                if (format) {
+                    writer.write('\n');
+                }
+            }
+        }
+        final Map<String, String> namespaces = new HashMap<>();
+        namespaces.put(XMLConstants.DEFAULT_NS_PREFIX,
+                XMLConstants.NULL_NS_URI);
+        namespaces.put(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI);
+        MathMLSerializer.writeNode(doc, writer, namespaces, format ? 0 : -1);
+        writer.flush();
+    }
+
+    /**
+     * Serialize a document to an OutputStream in UTF-8 encoding.
+     * 
+     * @param doc
+     *            a DOM model of a document, or a node in a document.
+     * @param out
+     *            where to write the document to. The stream is flushed, but
+     *            not closed.
+     * @param addDoctype
+     *            if true, a MathML DOCTYPE will be written. Use only with
+     *            MathML DOM trees.
+     * @param format
+     *            if true, elements which contain only other elements are
+     *            indented.
+     * @param omitXMLDecl
+     *            if true, there will be no XML declaration.
+     * @throws IOException
+     *             if the stream fails.
+     * @see #serialize(Node, Writer, boolean, boolean, boolean)
+     */
+    public static void serialize(final Node doc, final OutputStream out,
+            final boolean addDoctype, final boolean format,
+            final boolean omitXMLDecl) throws IOException {
+        MathMLSerializer.serialize(doc, new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8)),
+                addDoctype, format, omitXMLDecl);
+    }
+
+    /**
+     * Writes a node and its children.
+     * 
+     * @param node
+     *            the node to write.
+     * @param writer
+     *            where to write to.
+     * @param namespaces
+     *            namespace bindings in scope, by prefix. Must not be
+     *            modified.
+     * @param depth
+     *            indentation depth, or -1 for no formatting.
+     * @throws IOException
+     *             if the writer fails.
+     */
+    private static void writeNode(final Node node, final Writer writer,
+            final Map<String, String> namespaces, final int depth)
+            throws IOException {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            MathMLSerializer.writeElement(node, writer, namespaces, depth);
+            break;
+        case Node.TEXT_NODE:
+            MathMLSerializer.writeEscaped(writer, node.getNodeValue(), false);
+            break;
+        case Node.CDATA_SECTION_NODE:
+            writer.write("<![CDATA[");
+            writer.write(node.getNodeValue().replace("]]>",
+                    "]]]]><![CDATA[>"));
+            writer.write("]]>");
+            break;
+        case Node.COMMENT_NODE:
+            writer.write("<!--");
+            writer.write(node.getNodeValue());
+            writer.write("-->");
+            break;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            writer.write("<?");
+            writer.write(node.getNodeName());
+            final String data = node.getNodeValue();
+            if (data != null && data.length() > 0) {
+                writer.write(' ');
+                writer.write(data);
+            }
+            writer.write("?>");
+            break;
+        case Node.DOCUMENT_NODE:
+        case Node.DOCUMENT_FRAGMENT_NODE:
+        case Node.ENTITY_REFERENCE_NODE:
+            for (Node child = node.getFirstChild(); child != null; child = child
+                    .getNextSibling()) {
+                MathMLSerializer.writeNode(child, writer, namespaces, depth);
+                if (depth == 0 && node.getNodeType() == Node.DOCUMENT_NODE
+                        && child.getNextSibling() != null) {
+                    writer.write('\n');
+                }
+            }
+            break;
+        default:
+            // DocumentType, Attr, Entity and Notation are not written.
+            break;
+        }
+    }
+
+    private static void writeElement(final Node element, final Writer writer,
+            final Map<String, String> namespaces, final int depth)
+            throws IOException {
+        Map<String, String> scope = namespaces;
+        final String name = element.getNodeName();
+        writer.write('<');
+        writer.write(name);
 
+        final NamedNodeMap attributes = element.getAttributes();
+        final int attrCount = attributes.getLength();
+        // Declarations present on the element come first, in a stable order.
+        Map<String, String> declarations = null;
+        for (int i = 0; i < attrCount; i++) {
+            final Attr attr = (Attr) attributes.item(i);
+            if (MathMLSerializer.isNamespaceDeclaration(attr)) {
+                if (declarations == null) {
+                    declarations = new TreeMap<>();
+                }
+                declarations.put(attr.getName(), attr.getValue());
+            }
+        }
+        if (declarations != null) {
+            for (final Map.Entry<String, String> decl : declarations
+                    .entrySet()) {
+                final String attrName = decl.getKey();
+                final String prefix;
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(attrName)) {
+                    prefix = XMLConstants.DEFAULT_NS_PREFIX;
+                } else {
+                    prefix = attrName.substring(attrName.indexOf(':') + 1);
+                }
+                scope = MathMLSerializer.bind(scope, namespaces, prefix, decl
+                        .getValue());
+                MathMLSerializer.writeAttribute(writer, attrName, decl
+                        .getValue());
+            }
+        }
+        scope = MathMLSerializer.declare(writer, scope, namespaces,
+                MathMLSerializer.prefixOf(name), element.getNamespaceURI());
+        for (int i = 0; i < attrCount; i++) {
+            final Attr attr = (Attr) attributes.item(i);
+            if (MathMLSerializer.isNamespaceDeclaration(attr)) {
+                continue;
+            }
+            final String attrName = attr.getName();
+            final String uri = attr.getNamespaceURI();
+            String qName = attrName;
+            if (uri != null && uri.length() > 0) {
+                String prefix = MathMLSerializer.prefixOf(attrName);
+                if (prefix.length() == 0) {
+                    // Attributes need a prefix to be in a namespace.
+                    int n = scope.size();
+                    while (scope.containsKey(MathMLSerializer.XMLNS_PREFIX
+                            + n)) {
+                        n++;
+                    }
+                    prefix = MathMLSerializer.XMLNS_PREFIX + n;
+                    qName = prefix + ':' + attr.getLocalName();
+                }
+                scope = MathMLSerializer.declare(writer, scope, namespaces,
+                        prefix, uri);
+            }
+            MathMLSerializer.writeAttribute(writer, qName, attr.getValue());
+        }
+
+        if (!element.hasChildNodes()) {
+            writer.write("/>");
+            return;
+        }
+        writer.write('>');
+        final boolean indent = depth >= 0
+                && MathMLSerializer.hasElementContentOnly(element);
+        for (Node child = element.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (indent) {
+                if (child.getNodeType() == Node.TEXT_NODE) {
+                    continue;
+                }
+                MathMLSerializer.newLine(writer, depth + 1);
+                MathMLSerializer.writeNode(child, writer, scope, depth + 1);
+            } else {
+                MathMLSerializer.writeNode(child, writer, scope, -1);
+            }
+        }
+        if (indent) {
+            MathMLSerializer.newLine(writer, depth);
+        }
+        writer.write("</");
+        writer.write(name);
+        writer.write('>');
+    }
+
+    /**
+     * Writes a namespace declaration if the binding is not yet in scope.
+     * 
+     * @return the new scope.
+     */
+    private static Map<String, String> declare(final Writer writer,
+            final Map<String, String> scope,
+            final Map<String, String> inherited, final String prefix,
+            final String uri) throws IOException {
+        // Like the identity Transformer, the default namespace is never
+        // undeclared. Documents without namespace get MathML elements in the
+        // MathML namespace, and this keeps their other elements with them.
+        if (uri == null || uri.length() == 0) {
+            return scope;
+        }
+        if (uri.equals(scope.get(prefix))) {
+            return scope;
+        }
+        if (prefix.length() == 0) {
+            MathMLSerializer.writeAttribute(writer,
+                    XMLConstants.XMLNS_ATTRIBUTE, uri);
+        } else {
+            MathMLSerializer.writeAttribute(writer,
+                    XMLConstants.XMLNS_ATTRIBUTE + ':' + prefix, uri);
+        }
+        return MathMLSerializer.bind(scope, inherited, prefix, uri);
     }
 
-    private static void boolToProperty(final boolean bool, final String key,
-            final Transformer transformer) {
-        if (bool) {
-            transformer.setOutputProperty(key, "yes");
+    /**
+     * Adds a binding, copying the scope if it is still the inherited one.
+     */
+    private static Map<String, String> bind(final Map<String, String> scope,
+            final Map<String, String> inherited, final String prefix,
+            final String uri) {
+        final Map<String, String> retVal;
+        if (scope == inherited) {
+            retVal = new HashMap<>(inherited);
         } else {
-            transformer.setOutputProperty(key, "no");
+            retVal = scope;
+        }
+        retVal.put(prefix, uri);
+        return retVal;
+    }
+
+    private static boolean isNamespaceDeclaration(final Attr attr) {
+        final String name = attr.getName();
+        return XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr
+                .getNamespaceURI())
+                || XMLConstants.XMLNS_ATTRIBUTE.equals(name)
+                || name.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ':');
+    }
+
+    private static String prefixOf(final String qName) {
+        final int colon = qName.indexOf(':');
+        if (colon < 0) {
+            return XMLConstants.DEFAULT_NS_PREFIX;
+        }
+        return qName.substring(0, colon);
+    }
+
+    private static boolean hasElementContentOnly(final Node element) {
+        boolean hasElement = false;
+        for (Node child = element.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            switch (child.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                hasElement = true;
+                break;
+            case Node.TEXT_NODE:
+                if (child.getNodeValue().trim().length() > 0) {
+                    return false;
+                }
+                break;
+            case Node.COMMENT_NODE:
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                break;
+            default:
+                return false;
+            }
+        }
+        return hasElement;
+    }
+
+    private static void newLine(final Writer writer, final int depth)
+            throws IOException {
+        writer.write('\n');
+        for (int i = 0; i < depth; i++) {
+            writer.write(MathMLSerializer.INDENT);
+        }
+    }
+
+    private static void writeAttribute(final Writer writer,
+            final String name, final String value) throws IOException {
+        writer.write(' ');
+        writer.write(name);
+        writer.write("=\"");
+        MathMLSerializer.writeEscaped(writer, value, true);
+        writer.write('"');
+    }
+
+    private static void writeEscaped(final Writer writer, final String text,
+            final boolean attribute) throws IOException {
+        final int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final String replacement;
+            switch (text.charAt(i)) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '\r':
+                replacement = "&#13;";
+                break;
+            case '"':
+                replacement = attribute ? "&quot;" : null;
+                break;
+            case '\n':
+                replacement = attribute ? "&#10;" : null;
+                break;
+            case '\t':
+                replacement = attribute ? "&#9;" : null;
+                break;
+            default:
+                replacement = null;
+            }
+            if (replacement != null) {
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
         }
+        writer.write(text, start, length - start);
     }
 
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.context;
+
+import java.awt.Color;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import net.sourceforge.jeuclid.LayoutContext;
+
+/**
+ * Immutable layout context, for use as a cache key or to share between
+ * threads.
+ * <p>
+ * The values are kept in an array indexed by parameter, so copies are
+ * cheap. Two frozen contexts are equal if all their values are equal. Each
+ * context carries a 64 bit fingerprint, which is the same for equal contexts
+ * in every JVM, so it may also be stored outside of the running program.
+ * Changed copies are created with {@link #with(Parameter, Object)}, which
+ * updates the fingerprint instead of computing it again.
+ *
+ * @version $Revision$
+ */
+@Immutable
+public final class FrozenLayoutContext implements LayoutContext, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Parameter[] PARAMETERS = Parameter.values();
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final long NULL_HASH = 0x9e3779b97f4a7c15L;
+
+    private static final class SingletonHolder {
+        private static final FrozenLayoutContext INSTANCE = FrozenLayoutContext
+                .of(LayoutContextImpl.getDefaultLayoutContext());
+
+        private SingletonHolder() {
+        }
+    }
+
+    private final Object[] values;
+
+    private final long fingerprint;
+
+    private FrozenLayoutContext(final Object[] frozenValues,
+            final long valuesFingerprint) {
+        this.values = frozenValues;
+        this.fingerprint = valuesFingerprint;
+    }
+
+    /**
+     * Retrieve the default layout context, frozen.
+     *
+     * @return the default layout context.
+     */
+    public static FrozenLayoutContext getDefault() {
+        return FrozenLayoutContext.SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a frozen copy of the given context.
+     *
+     * @param context
+     *            the context to copy. If it is already frozen, it is
+     *            returned.
+     * @return a frozen context with the same values.
+     */
+    public static FrozenLayoutContext of(final LayoutContext context) {
+        if (context instanceof FrozenLayoutContext) {
+            return (FrozenLayoutContext) context;
+        }
+        final Object[] values = new Object[FrozenLayoutContext.PARAMETERS.length];
+        long fingerprint = 0;
+        for (final Parameter p : FrozenLayoutContext.PARAMETERS) {
+            final Object value = FrozenLayoutContext.freezeValue(context
+                    .getParameter(p));
+            values[p.ordinal()] = value;
+            fingerprint += FrozenLayoutContext.hash(p, value);
+        }
+        return new FrozenLayoutContext(values, fingerprint);
+    }
+
+    /**
+     * Creates a copy of this context with one parameter changed.
+     *
+     * @param which
+     *            the parameter to change.
+     * @param newValue
+     *            the new value. Strings are converted to the type of the
+     *            parameter, as with
+     *            {@link net.sourceforge.jeuclid.MutableLayoutContext#setParameter(Parameter, Object)}
+     *            .
+     * @return the changed copy, or this context if the value did not
+     *         change.
+     */
+    public FrozenLayoutContext with(final Parameter which,
+            final Object newValue) {
+        final Object value;
+        if (which.valid(newValue)) {
+            value = FrozenLayoutContext.freezeValue(newValue);
+        } else {
+            value = FrozenLayoutContext.freezeValue(which.fromString(newValue
+                    .toString()));
+        }
+        final int index = which.ordinal();
+        final Object oldValue = this.values[index];
+        if (oldValue == null ? value == null : oldValue.equals(value)) {
+            return this;
+        }
+        final Object[] newValues = this.values.clone();
+        newValues[index] = value;
+        return new FrozenLayoutContext(newValues, this.fingerprint
+                - FrozenLayoutContext.hash(which, oldValue)
+                + FrozenLayoutContext.hash(which, value));
+    }
+
+    private static Object freezeValue(final Object value) {
+        if (value instanceof List<?>) {
+            return Collections.unmodifiableList(new ArrayList<Object>(
+                    (List<?>) value));
+        }
+        return value;
+    }
+
+    private static long hash(final Parameter p, final Object value) {
+        long h = FrozenLayoutContext.hashString(
+                FrozenLayoutContext.FNV_OFFSET, p.name());
+        h = FrozenLayoutContext.hashValue(h, value);
+        // Mix, so that the sum over all parameters does not cancel out.
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static long hashValue(final long start, final Object value) {
+        long h = start * FrozenLayoutContext.FNV_PRIME;
+        if (value == null) {
+            h ^= FrozenLayoutContext.NULL_HASH;
+        } else if (value instanceof Color) {
+            h ^= ((Color) value).getRGB();
+        } else if (value instanceof List<?>) {
+            for (final Object o : (List<?>) value) {
+                h = FrozenLayoutContext.hashValue(h, o);
+            }
+        } else if (value instanceof Enum<?>) {
+            h = FrozenLayoutContext.hashString(h, ((Enum<?>) value).name());
+        } else {
+            h = FrozenLayoutContext.hashString(h, value.toString());
+        }
+        return h;
+    }
+
+    private static long hashString(final long start, final String s) {
+        long h = start;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FrozenLayoutContext.FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** {@inheritDoc} */
+    public Object getParameter(final Parameter which) {
+        return this.values[which.ordinal()];
+    }
+
+    /**
+     * Returns the fingerprint of this context. Equal contexts have the same
+     * fingerprint, in every JVM.
+     *
+     * @return the fingerprint.
+     */
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return (int) (this.fingerprint ^ (this.fingerprint >>> 32));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FrozenLayoutContext)) {
+            return false;
+        }
+        final FrozenLayoutContext other = (FrozenLayoutContext) obj;
+        return this.fingerprint == other.fingerprint
+                && Arrays.equals(this.values, other.values);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        final StringBuilder b = new StringBuilder("FrozenLayoutContext[");
+        for (final Parameter p : FrozenLayoutContext.PARAMETERS) {
+            if (p.ordinal() > 0) {
+                b.append(", ");
+            }
+            b.append(p.getOptionName()).append('=').append(
+                    p.toString(this.values[p.ordinal()]));
+        }
+        return b.append(']').toString();
+    }
+}
@@ -22,13 +22,14 @@ import java.awt.Color;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import net.sourceforge.jeuclid.Constants;
 import net.sourceforge.jeuclid.LayoutContext;
 import net.sourceforge.jeuclid.MutableLayoutContext;
+import net.sourceforge.jeuclid.parser.ParserProfile;
 
 /**
  * @version $Revision$
@@ -54,7 +55,7 @@ public class LayoutContextImpl implements MutableLayoutContext, Serializable {
      * Default constructor.
      */
     protected LayoutContextImpl() {
-        this.context = new TreeMap<>();
+        this.context = new EnumMap<>(Parameter.class);
         this.context.put(Parameter.MATHSIZE, Constants.DEFAULT_FONTSIZE);
         this.context.put(Parameter.SCRIPTMINSIZE, 8f);
         this.context.put(Parameter.ANTIALIAS_MINSIZE, 10f);
@@ -154,6 +155,8 @@ public class LayoutContextImpl implements MutableLayoutContext, Serializable {
                 .unmodifiableList(fontsDoublestruck));
 
         this.context.put(Parameter.MFRAC_KEEP_SCRIPTLEVEL, Boolean.FALSE);
+        this.context.put(Parameter.PARSER_PROFILE, ParserProfile.DEFAULT);
+        this.context.put(Parameter.REUSE_SUBTREE_LAYOUT, Boolean.FALSE);
         // CHECKSTYLE:ON
     }
 
@@ -164,13 +167,14 @@ public class LayoutContextImpl implements MutableLayoutContext, Serializable {
      *            LayoutContext to use for initialization of values
      */
     public LayoutContextImpl(final LayoutContext copyFromContext) {
-
         if (copyFromContext instanceof LayoutContextImpl) {
-            this.context = new TreeMap<>(
-                    ((LayoutContextImpl) copyFromContext).getParameters());
+            this.context = new EnumMap<>(
+                    ((LayoutContextImpl) copyFromContext).context);
         } else {
-            throw new UnsupportedOperationException("LayoutContextImpl("
-                    + copyFromContext.getClass() + ") not supported.");
+            this.context = new EnumMap<>(Parameter.class);
+            for (final Parameter p : Parameter.values()) {
+                this.context.put(p, copyFromContext.getParameter(p));
+            }
         }
     }
 
@@ -200,12 +204,12 @@ public class LayoutContextImpl implements MutableLayoutContext, Serializable {
     }
 
     /**
-     * Retrieve all parameters set for this LayoutContext. Please note: The
-     * returned map should be treated as read-only.
+     * Creates an immutable copy of this context, for use as a cache key or to
+     * share between threads.
      * 
-     * @return all Parameters in this context.
+     * @return a frozen copy of this context.
      */
-    private Map<Parameter, Object> getParameters() {
-        return Collections.unmodifiableMap(this.context);
+    public FrozenLayoutContext freeze() {
+        return FrozenLayoutContext.of(this);
     }
 }
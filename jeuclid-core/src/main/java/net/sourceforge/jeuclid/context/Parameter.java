@@ -24,6 +24,7 @@ import net.sourceforge.jeuclid.context.typewrapper.EnumTypeWrapper;
 import net.sourceforge.jeuclid.context.typewrapper.NumberTypeWrapper;
 import net.sourceforge.jeuclid.context.typewrapper.TLIListTypeWrapper;
 import net.sourceforge.jeuclid.context.typewrapper.TypeWrapper;
+import net.sourceforge.jeuclid.parser.ParserProfile;
 
 /**
  * Possible parameters for the LayoutContext.
@@ -147,7 +148,24 @@ public enum Parameter {
             BooleanTypeWrapper.getInstance(),
             false,
             "mfracKeepScriptLevel",
-            "if true, <mfrac> element will NEVER increase children's scriptlevel (in violation of the spec)");
+            "if true, <mfrac> element will NEVER increase children's scriptlevel (in violation of the spec)"),
+
+    /**
+     * Configuration of the XML parser for documents which are parsed with
+     * this context. Values are of type {@link ParserProfile}.
+     */
+    PARSER_PROFILE(EnumTypeWrapper.getInstance(ParserProfile.class), false,
+            "parserProfile",
+            "parser configuration: DEFAULT, FAST (no XInclude and DTD loading) or STRICT (for untrusted input)"),
+
+    /**
+     * If true (Boolean), the layout of a subtree is copied from an identical
+     * subtree laid out in the same context before, instead of being
+     * calculated again. Subtrees containing operators are always laid out.
+     */
+    REUSE_SUBTREE_LAYOUT(BooleanTypeWrapper.getInstance(), false,
+            "reuseSubtreeLayout",
+            "if true, identical subtrees are laid out only once");
 
     private final TypeWrapper typeWrapper;
 
@@ -44,7 +44,7 @@ import org.w3c.dom.Node;
  * 
  * @version $Revision$
  */
-public class BatikConverter implements ConverterPlugin {
+public class BatikConverter implements ViewConverterPlugin {
 
     /**
      * Logger for this class
@@ -60,7 +60,21 @@ public class BatikConverter implements ConverterPlugin {
     /** {@inheritDoc} */
     public Dimension convert(final Node doc, final LayoutContext context,
             final OutputStream outStream) throws IOException {
-        final DocumentWithDimension svgDocDim = this.convert(doc, context);
+        return this.write(this.convert(doc, context), outStream);
+    }
+
+    /** {@inheritDoc} */
+    public Dimension convert(final JEuclidView view, final float scale,
+            final OutputStream outStream) throws IOException {
+        final SVGGraphics2D svgGenerator = this.createGenerator();
+        if (svgGenerator == null) {
+            return null;
+        }
+        return this.write(this.draw(view, svgGenerator, scale), outStream);
+    }
+
+    private Dimension write(final DocumentWithDimension svgDocDim,
+            final OutputStream outStream) {
         if (svgDocDim != null) {
             try {
                 final Transformer transformer = TransformerFactory
@@ -80,30 +94,42 @@ public class BatikConverter implements ConverterPlugin {
     /** {@inheritDoc} */
     public DocumentWithDimension convert(final Node doc,
             final LayoutContext context) {
+        final SVGGraphics2D svgGenerator = this.createGenerator();
+        if (svgGenerator == null) {
+            return null;
+        }
+        final JEuclidView view = new JEuclidView(doc, context, svgGenerator);
+        return this.draw(view, svgGenerator, 1.0f);
+    }
 
-        Document document = null;
+    private SVGGraphics2D createGenerator() {
         final String svgNS = "http://www.w3.org/2000/svg";
-        document = this.domImplementation.createDocument(svgNS, "svg", null);
-        if (document != null) {
-            final SVGGeneratorContext svgContext = SVGGeneratorContext
-                    .createDefault(document);
-            svgContext.setComment("Converted from MathML using JEuclid");
-            final SVGGraphics2D svgGenerator = new SVGGraphics2D(svgContext,
-                    true);
-            final JEuclidView view = new JEuclidView(doc, context,
-                    svgGenerator);
-            final int ascent = (int) Math.ceil(view.getAscentHeight());
-            final int descent = (int) Math.ceil(view.getDescentHeight());
-            final int height = ascent + descent;
-            final int width = (int) Math.ceil(view.getWidth());
-            final Dimension size = new Dimension(width, height);
-            svgGenerator.setSVGCanvasSize(size);
-            view.draw(svgGenerator, 0, ascent);
-            document.replaceChild(svgGenerator.getRoot(), document
-                    .getFirstChild());
-            return new DocumentWithDimension(document, new Dimension(width,
-                    height), descent);
+        final Document document = this.domImplementation.createDocument(
+                svgNS, "svg", null);
+        if (document == null) {
+            return null;
         }
-        return null;
+        final SVGGeneratorContext svgContext = SVGGeneratorContext
+                .createDefault(document);
+        svgContext.setComment("Converted from MathML using JEuclid");
+        return new SVGGraphics2D(svgContext, true);
+    }
+
+    private DocumentWithDimension draw(final JEuclidView view,
+            final SVGGraphics2D svgGenerator, final float scale) {
+        final Document document = svgGenerator.getDOMFactory();
+        final int ascent = (int) Math.ceil(view.getAscentHeight());
+        final int descent = (int) Math.ceil(view.getDescentHeight());
+        final int height = (int) Math.ceil((ascent + descent) * scale);
+        final int width = (int) Math.ceil(Math.ceil(view.getWidth()) * scale);
+        final Dimension size = new Dimension(width, height);
+        svgGenerator.setSVGCanvasSize(size);
+        if (scale != 1.0f) {
+            svgGenerator.scale(scale, scale);
+        }
+        view.draw(svgGenerator, 0, ascent);
+        document.replaceChild(svgGenerator.getRoot(), document
+                .getFirstChild());
+        return new DocumentWithDimension(document, size, descent * scale);
     }
 }
@@ -36,6 +36,8 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Generic converter which uses the registry to do its conversions.
@@ -54,6 +56,16 @@ public final class Converter {
      */
     public static final String EXTENSION_SVG = "svg";
 
+    /**
+     * Mime type for the metrics sidecar, see {@link MetricsConverter}.
+     */
+    public static final String TYPE_METRICS = "text/x-jeuclid-metrics";
+
+    /**
+     * File extension for the metrics sidecar.
+     */
+    public static final String EXTENSION_METRICS = "metrics";
+
     private static final String UNSUPPORTED_OUTPUT_TYPE = "Unsupported output type: ";
 
     private static final int MAX_RGB_VALUE = 255;
@@ -253,6 +265,44 @@ public final class Converter {
         return result;
     }
 
+    /**
+     * Converts several MathML documents into a single multi-page output,
+     * such as PDF or PostScript. Each document becomes one page.
+     * 
+     * @param docs
+     *            input documents. See {@link DOMBuilder#getInstance()} for
+     *            the list of valid node types.
+     * @param outStream
+     *            output stream.
+     * @param outFileType
+     *            mimetype for the output file. Must support multiple pages.
+     * @param params
+     *            parameter set to use for conversion.
+     * @return Dimensions of all pages upon success, null otherwise
+     * @throws IOException
+     *             if an I/O error occurred during read or write.
+     */
+    public List<Dimension> convert(final List<? extends Node> docs,
+            final OutputStream outStream, final String outFileType,
+            final LayoutContext params) throws IOException {
+        final ConverterPlugin plugin = ConverterRegistry.getInstance()
+                .getConverter(outFileType);
+        List<Dimension> result = null;
+        if (plugin instanceof MultiPageConverterPlugin) {
+            try {
+                result = ((MultiPageConverterPlugin) plugin).convert(docs,
+                        params, outStream);
+            } catch (final IOException ex) {
+                Converter.LOGGER.fatal("Failed to process: " + ex.getMessage(),
+                        ex);
+            }
+        } else {
+            Converter.LOGGER.fatal("Multiple pages are not supported for "
+                    + outFileType);
+        }
+        return result;
+    }
+
     /**
      * Converts an XML string from MathML to the given XML based type and writes
      * it to the provided output stream.
@@ -321,15 +371,34 @@ public final class Converter {
      */
     public BufferedImage render(final Node node, final LayoutContext context,
             final int imageType) throws IOException {
-        final Image tempimage = new BufferedImage(1, 1, imageType);
-        final Graphics2D tempg = (Graphics2D) tempimage.getGraphics();
-
-        final JEuclidView view = new JEuclidView(node, context, tempg);
+        final JEuclidView view = JEuclidView.createHeadlessView(node,
+                context, null, false);
+        return this.render(view, imageType, 1.0f);
+    }
 
-        final int width = Math.max(1, (int) Math.ceil(view.getWidth()));
+    /**
+     * Renders an existing view into an image.
+     * <p>
+     * The layout of the view is reused, the output is only scaled by
+     * transforming the Graphics context. This allows rendering the same
+     * layout in several resolutions.
+     * 
+     * @param view
+     *            View to render.
+     * @param imageType
+     *            ImageType as defined by {@link BufferedImage}
+     * @param scale
+     *            Scale factor, 1.0f for the natural size.
+     * @return the rendered image
+     */
+    public BufferedImage render(final JEuclidView view, final int imageType,
+            final float scale) {
         final int ascent = (int) Math.ceil(view.getAscentHeight());
-        final int height = Math.max(1, (int) Math.ceil(view.getDescentHeight())
-                + ascent);
+        final int descent = (int) Math.ceil(view.getDescentHeight());
+        final int width = Math.max(1,
+                (int) Math.ceil(Math.ceil(view.getWidth()) * scale));
+        final int height = Math.max(1,
+                (int) Math.ceil((ascent + descent) * scale));
 
         final BufferedImage image = new BufferedImage(width, height, imageType);
         final Graphics2D g = image.createGraphics();
@@ -345,7 +414,90 @@ public final class Converter {
         g.fillRect(0, 0, width, height);
         g.setColor(Color.black);
 
+        if (scale != 1.0f) {
+            g.scale(scale, scale);
+        }
         view.draw(g, 0, ascent);
+        g.dispose();
         return image;
     }
+
+    /**
+     * Converts a document once into several outputs.
+     * <p>
+     * The document is parsed and layouted only once, and the resulting
+     * layout is shared by all outputs.
+     * 
+     * @param doc
+     *            input document. See {@link DOMBuilder#getInstance()} for the
+     *            list of valid node types.
+     * @param params
+     *            parameter set to use for conversion.
+     * @param requests
+     *            the outputs to produce.
+     * @return a list of results, in the order of the requests.
+     * @see #convert(JEuclidView, List)
+     */
+    public List<OutputResult> convert(final Node doc,
+            final LayoutContext params, final List<OutputRequest> requests) {
+        return this.convert(new JEuclidView(doc, params, null), requests);
+    }
+
+    /**
+     * Writes an existing view into several outputs.
+     * <p>
+     * The view is layouted only once. Plugins implementing
+     * {@link ViewConverterPlugin} reuse this layout, other plugins are given
+     * the views document and will do their own layout. Outputs which could
+     * not be written have a result without dimension.
+     * 
+     * @param view
+     *            the view to write.
+     * @param requests
+     *            the outputs to produce.
+     * @return a list of results, in the order of the requests.
+     */
+    public List<OutputResult> convert(final JEuclidView view,
+            final List<OutputRequest> requests) {
+        final long layoutStart = System.nanoTime();
+        view.getWidth();
+        if (Converter.LOGGER.isDebugEnabled()) {
+            Converter.LOGGER.debug("Layout took "
+                    + (System.nanoTime() - layoutStart) / 1000 + "us");
+        }
+
+        final List<OutputResult> results = new ArrayList<>(requests.size());
+        for (final OutputRequest request : requests) {
+            final long start = System.nanoTime();
+            Dimension dim = null;
+            final ConverterPlugin plugin = ConverterRegistry.getInstance()
+                    .getConverter(request.getMimeType());
+            try {
+                if (plugin instanceof ViewConverterPlugin) {
+                    dim = ((ViewConverterPlugin) plugin).convert(view, request
+                            .getScale(), request.getOutputStream());
+                } else if (plugin == null) {
+                    Converter.LOGGER.fatal(Converter.UNSUPPORTED_OUTPUT_TYPE
+                            + request.getMimeType());
+                } else if (request.getScale() == 1.0f) {
+                    dim = plugin.convert((Node) view.getDocument(), view
+                            .getLayoutContext(), request.getOutputStream());
+                } else {
+                    Converter.LOGGER.fatal("Scaling is not supported for "
+                            + request.getMimeType());
+                }
+            } catch (final IOException ex) {
+                Converter.LOGGER.fatal(
+                        "Failed to process: " + ex.getMessage(), ex);
+            }
+            final OutputResult result = new OutputResult(request, dim, System
+                    .nanoTime()
+                    - start);
+            if (Converter.LOGGER.isDebugEnabled()) {
+                Converter.LOGGER.debug(result);
+            }
+            results.add(result);
+        }
+        return results;
+    }
 }
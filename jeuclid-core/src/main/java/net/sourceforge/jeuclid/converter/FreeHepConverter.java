@@ -19,11 +19,12 @@
 package net.sourceforge.jeuclid.converter;
 
 import java.awt.Dimension;
-import java.io.ByteArrayOutputStream;
+import java.awt.font.FontRenderContext;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
 import net.sourceforge.jeuclid.LayoutContext;
 import net.sourceforge.jeuclid.layout.JEuclidView;
@@ -36,51 +37,102 @@ import org.w3c.dom.Node;
  * 
  * @version $Revision$
  */
-public class FreeHepConverter implements ConverterPlugin {
+public class FreeHepConverter implements ViewConverterPlugin {
 
-    private final Constructor<VectorGraphics> streamConst;
+    /**
+     * FontRenderContext used for layout. This is the same as the one
+     * returned by all FreeHEP vector graphics, so no Graphics context has to
+     * be created just for measuring.
+     */
+    protected static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(
+            null, true, true);
 
-    @SuppressWarnings("unchecked")
-    FreeHepConverter(final Class<?> converterClass)
-            throws NoSuchMethodException {
+    private final MethodHandle streamConst;
 
-        this.streamConst = ((Class<VectorGraphics>) converterClass)
-                .getConstructor(OutputStream.class, Dimension.class);
+    FreeHepConverter(final Class<?> converterClass)
+            throws NoSuchMethodException, IllegalAccessException {
+        this.streamConst = MethodHandles.publicLookup().findConstructor(
+                converterClass,
+                MethodType.methodType(void.class, OutputStream.class,
+                        Dimension.class)).asType(
+                MethodType.methodType(VectorGraphics.class,
+                        OutputStream.class, Dimension.class));
     }
 
     /** {@inheritDoc} */
     public Dimension convert(final Node doc, final LayoutContext context,
             final OutputStream outStream) throws IOException {
-        final VectorGraphics tempg = this.createGraphics(
-                new ByteArrayOutputStream(), new Dimension(1, 1));
-        final JEuclidView view = new JEuclidView(doc, context, tempg);
+        final JEuclidView view = JEuclidView.createHeadlessView(doc, context,
+                FreeHepConverter.FONT_RENDER_CONTEXT, false);
+        return this.convert(view, 1.0f, outStream);
+    }
+
+    /** {@inheritDoc} */
+    public Dimension convert(final JEuclidView view, final float scale,
+            final OutputStream outStream) throws IOException {
         final int ascent = (int) Math.ceil(view.getAscentHeight());
-        final Dimension size = new Dimension(
-                (int) Math.ceil(view.getWidth()), (int) Math.ceil(view
-                        .getDescentHeight())
-                        + ascent);
+        final Dimension size = FreeHepConverter.getSize(view, scale);
 
         final VectorGraphics g = this.createGraphics(outStream, size);
         g.setCreator("JEuclid (from MathML)");
         g.startExport();
+        if (scale != 1.0f) {
+            g.scale(scale, scale);
+        }
         view.draw(g, 0, ascent);
         g.endExport();
 
         return size;
     }
 
+    /**
+     * Calculates the output size of a view.
+     * 
+     * @param view
+     *            the view.
+     * @param scale
+     *            scale factor.
+     * @return the size of the output.
+     */
+    protected static Dimension getSize(final JEuclidView view,
+            final float scale) {
+        final int ascent = (int) Math.ceil(view.getAscentHeight());
+        final int descent = (int) Math.ceil(view.getDescentHeight());
+        final int width = (int) Math.ceil(view.getWidth());
+        return new Dimension((int) Math.ceil(width * scale), (int) Math
+                .ceil((ascent + descent) * scale));
+    }
+
     /** {@inheritDoc} */
     public DocumentWithDimension convert(final Node doc,
             final LayoutContext context) {
         return null;
     }
 
-    private VectorGraphics createGraphics(final OutputStream os,
+    /**
+     * Creates a new Graphics context for this format.
+     * 
+     * @param os
+     *            stream to write to.
+     * @param d
+     *            size of the graphics.
+     * @return a new VectorGraphics.
+     * @throws IOException
+     *             if the graphics could not be created.
+     */
+    protected VectorGraphics createGraphics(final OutputStream os,
             final Dimension d) throws IOException {
         try {
-            return this.streamConst.newInstance(os, d);
-        } catch (final InvocationTargetException | IllegalArgumentException | InstantiationException |
-                       IllegalAccessException e) {
+            return (VectorGraphics) this.streamConst.invokeExact(os, d);
+            // CHECKSTYLE:OFF
+            // invokeExact may throw anything the constructor throws.
+        } catch (final Throwable e) {
+            // CHECKSTYLE:ON
+            if (e instanceof Error) {
+                throw (Error) e;
+            } else if (e instanceof IOException) {
+                throw (IOException) e;
+            }
             throw new IOException(e.toString());
         }
     }
@@ -22,6 +22,7 @@ import net.sourceforge.jeuclid.elements.support.ClassLoaderSupport;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.freehep.graphicsbase.util.export.ExportFileType;
+import org.freehep.graphicsio.MultiPageDocument;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
@@ -79,9 +80,13 @@ public final class FreeHepInternalDetector {
 
     private static void actuallyRegister(final ConverterRegistry registry,
             final ExportFileType fileType, final Class<?> graphicsClass)
-            throws NoSuchMethodException {
-        final ConverterPlugin freeHepConverter = new FreeHepConverter(
-                graphicsClass);
+            throws NoSuchMethodException, IllegalAccessException {
+        final ConverterPlugin freeHepConverter;
+        if (MultiPageDocument.class.isAssignableFrom(graphicsClass)) {
+            freeHepConverter = new FreeHepMultiPageConverter(graphicsClass);
+        } else {
+            freeHepConverter = new FreeHepConverter(graphicsClass);
+        }
         for (final String mimeType : fileType.getMIMETypes()) {
             for (final String suffix : fileType.getExtensions()) {
                 registry.registerMimeTypeAndSuffix(mimeType, suffix, false);
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2007 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.layout.JEuclidView;
+
+import org.freehep.graphics2d.VectorGraphics;
+import org.freehep.graphicsio.MultiPageDocument;
+import org.w3c.dom.Node;
+
+/**
+ * Converter for FreeHEP formats which support multiple pages per document.
+ * 
+ * @version $Revision$
+ */
+public class FreeHepMultiPageConverter extends FreeHepConverter implements
+        MultiPageConverterPlugin {
+
+    FreeHepMultiPageConverter(final Class<?> converterClass)
+            throws NoSuchMethodException, IllegalAccessException {
+        super(converterClass);
+    }
+
+    /** {@inheritDoc} */
+    public List<Dimension> convert(final List<? extends Node> docs,
+            final LayoutContext context, final OutputStream outStream)
+            throws IOException {
+        final List<JEuclidView> views = new ArrayList<>(docs.size());
+        final List<Dimension> sizes = new ArrayList<>(docs.size());
+        int maxWidth = 1;
+        int maxHeight = 1;
+        for (final Node doc : docs) {
+            final JEuclidView view = JEuclidView.createHeadlessView(doc,
+                    context, FreeHepConverter.FONT_RENDER_CONTEXT, false);
+            final Dimension size = FreeHepConverter.getSize(view, 1.0f);
+            maxWidth = Math.max(maxWidth, size.width);
+            maxHeight = Math.max(maxHeight, size.height);
+            views.add(view);
+            sizes.add(size);
+        }
+
+        final VectorGraphics g = this.createGraphics(outStream, new Dimension(
+                maxWidth, maxHeight));
+        final MultiPageDocument multiPage = (MultiPageDocument) g;
+        multiPage.setMultiPage(true);
+        g.setCreator("JEuclid (from MathML)");
+        g.startExport();
+        int page = 1;
+        for (final JEuclidView view : views) {
+            multiPage.openPage(sizes.get(page - 1), "Formula " + page);
+            view.draw(g, 0, (float) Math.ceil(view.getAscentHeight()));
+            multiPage.closePage();
+            page++;
+        }
+        g.endExport();
+        return sizes;
+    }
+}
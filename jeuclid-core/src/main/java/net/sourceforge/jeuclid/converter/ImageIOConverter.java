@@ -28,6 +28,7 @@ import javax.imageio.stream.ImageOutputStream;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.layout.JEuclidView;
 
 import org.w3c.dom.Node;
 
@@ -36,7 +37,7 @@ import org.w3c.dom.Node;
  * 
  * @version $Revision$
  */
-public class ImageIOConverter implements ConverterPlugin {
+public class ImageIOConverter implements ViewConverterPlugin {
 
     private final ImageWriter writer;
 
@@ -62,10 +63,23 @@ public class ImageIOConverter implements ConverterPlugin {
     /** {@inheritDoc} */
     public Dimension convert(final Node doc, final LayoutContext context,
             final OutputStream outStream) throws IOException {
-        final ImageOutputStream ios = new MemoryCacheImageOutputStream(
-                outStream);
         final BufferedImage image = Converter.getInstance().render(doc,
                 context, this.colorModel);
+        return this.write(image, outStream);
+    }
+
+    /** {@inheritDoc} */
+    public Dimension convert(final JEuclidView view, final float scale,
+            final OutputStream outStream) throws IOException {
+        final BufferedImage image = Converter.getInstance().render(view,
+                this.colorModel, scale);
+        return this.write(image, outStream);
+    }
+
+    private Dimension write(final BufferedImage image,
+            final OutputStream outStream) throws IOException {
+        final ImageOutputStream ios = new MemoryCacheImageOutputStream(
+                outStream);
         synchronized (this.writer) {
             this.writer.setOutput(ios);
             this.writer.write(image);
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Result;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+
+import net.sourceforge.jeuclid.FormulaMemo;
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.converter.ConverterPlugin.DocumentWithDimension;
+import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+import net.sourceforge.jeuclid.elements.generic.MathImpl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler which passes a document through to a {@link Result}, and
+ * replaces MathML by SVG on the way.
+ * <p>
+ * Only the math islands are buffered: every fo:instream-foreign-object and
+ * every math element outside of one is collected into a small DOM, processed
+ * by {@link Processor}, and written out in place. Everything else is written
+ * out as it is parsed.
+ * <p>
+ * Like the DOM based processing, DOCTYPE declarations and entity boundaries
+ * are not passed through.
+ *
+ * @version $Revision$
+ */
+final class MathIslandFilter extends DefaultHandler implements LexicalHandler {
+
+    /**
+     * Logger for this class
+     */
+    private static final Log LOGGER = LogFactory.getLog(MathIslandFilter.class);
+
+    private static final String FO_NS = "http://www.w3.org/1999/XSL/Format";
+
+    private static final String INSTREAM_FOREIGN_OBJECT = "instream-foreign-object";
+
+    /**
+     * Passes events on to the output, without document events.
+     */
+    private static final class Forwarder extends DefaultHandler implements
+            LexicalHandler {
+        private final TransformerHandler target;
+
+        Forwarder(final TransformerHandler out) {
+            this.target = out;
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri)
+                throws SAXException {
+            this.target.startPrefixMapping(prefix, uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix) throws SAXException {
+            this.target.endPrefixMapping(prefix);
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName,
+                final String qName, final Attributes attributes)
+                throws SAXException {
+            this.target.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName,
+                final String qName) throws SAXException {
+            this.target.endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start,
+                final int length) throws SAXException {
+            this.target.characters(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(final char[] ch, final int start,
+                final int length) throws SAXException {
+            this.target.ignorableWhitespace(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(final String target,
+                final String data) throws SAXException {
+            this.target.processingInstruction(target, data);
+        }
+
+        public void comment(final char[] ch, final int start, final int length)
+                throws SAXException {
+            this.target.comment(ch, start, length);
+        }
+
+        public void startCDATA() throws SAXException {
+            this.target.startCDATA();
+        }
+
+        public void endCDATA() throws SAXException {
+            this.target.endCDATA();
+        }
+
+        public void startDTD(final String name, final String publicId,
+                final String systemId) {
+            // Not passed through.
+        }
+
+        public void endDTD() {
+            // Not passed through.
+        }
+
+        public void startEntity(final String name) {
+            // Not passed through.
+        }
+
+        public void endEntity(final String name) {
+            // Not passed through.
+        }
+    }
+
+    private final Processor processor;
+
+    private final LayoutContext context;
+
+    private final FormulaMemo<DocumentWithDimension> memo = new FormulaMemo<DocumentWithDimension>(
+            Processor.STREAMING_MEMO_SIZE);
+
+    private final SAXTransformerFactory factory;
+
+    private final Document islandOwner;
+
+    private final Transformer replay;
+
+    private final TransformerHandler out;
+
+    private final Forwarder forwarder;
+
+    private final List<String> pendingPrefixes = new ArrayList<String>();
+
+    private TransformerHandler island;
+
+    private DocumentFragment islandRoot;
+
+    private int islandDepth;
+
+    private int islandPrefixes;
+
+    private int swallowEndPrefixes;
+
+    private boolean inDtd;
+
+    /**
+     * Creates a new filter.
+     *
+     * @param proc
+     *            the processor used for the math islands.
+     * @param result
+     *            where to write the processed document to.
+     * @param layoutContext
+     *            the context for rendering.
+     * @throws TransformerConfigurationException
+     *             if no identity transformer is available.
+     * @throws ParserConfigurationException
+     *             if no DOM is available.
+     */
+    MathIslandFilter(final Processor proc, final Result result,
+            final LayoutContext layoutContext)
+            throws TransformerConfigurationException,
+            ParserConfigurationException {
+        this.processor = proc;
+        this.context = FrozenLayoutContext.of(layoutContext);
+        this.factory = (SAXTransformerFactory) TransformerFactory
+                .newInstance();
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory
+                .newInstance();
+        dbf.setNamespaceAware(true);
+        this.islandOwner = dbf.newDocumentBuilder().newDocument();
+        this.replay = this.factory.newTransformer();
+        this.out = this.factory.newTransformerHandler();
+        this.out.setResult(result);
+        this.forwarder = new Forwarder(this.out);
+    }
+
+    private static boolean isIslandStart(final String uri,
+            final String localName) {
+        return MathIslandFilter.FO_NS.equals(uri)
+                && MathIslandFilter.INSTREAM_FOREIGN_OBJECT.equals(localName)
+                || AbstractJEuclidElement.URI.equals(uri)
+                && MathImpl.ELEMENT.equals(localName);
+    }
+
+    private ContentHandler target() {
+        if (this.island != null) {
+            return this.island;
+        }
+        return this.out;
+    }
+
+    private LexicalHandler lexicalTarget() {
+        if (this.island != null) {
+            return this.island;
+        }
+        return this.out;
+    }
+
+    private void flushPrefixes(final ContentHandler handler)
+            throws SAXException {
+        for (int i = 0; i < this.pendingPrefixes.size(); i += 2) {
+            handler.startPrefixMapping(this.pendingPrefixes.get(i),
+                    this.pendingPrefixes.get(i + 1));
+        }
+        this.pendingPrefixes.clear();
+    }
+
+    private void finishIsland() throws SAXException {
+        this.island.endDocument();
+        this.island = null;
+        final DocumentFragment fragment = this.islandRoot;
+        this.islandRoot = null;
+        this.processor.processSubtree(fragment, this.context, this.memo);
+        try {
+            for (Node child = fragment.getFirstChild(); child != null; child = child
+                    .getNextSibling()) {
+                final SAXResult result = new SAXResult(this.forwarder);
+                result.setLexicalHandler(this.forwarder);
+                this.replay.transform(new DOMSource(child), result);
+            }
+        } catch (final TransformerException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setDocumentLocator(final Locator locator) {
+        this.out.setDocumentLocator(locator);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startDocument() throws SAXException {
+        this.out.startDocument();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endDocument() throws SAXException {
+        this.out.endDocument();
+        MathIslandFilter.LOGGER.info(this.memo);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri)
+            throws SAXException {
+        if (this.island != null) {
+            this.island.startPrefixMapping(prefix, uri);
+        } else {
+            this.pendingPrefixes.add(prefix);
+            this.pendingPrefixes.add(uri);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endPrefixMapping(final String prefix) throws SAXException {
+        if (this.island != null) {
+            this.island.endPrefixMapping(prefix);
+        } else if (this.swallowEndPrefixes > 0) {
+            // Belongs to the island which was just written out.
+            this.swallowEndPrefixes--;
+        } else {
+            this.out.endPrefixMapping(prefix);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(final String uri, final String localName,
+            final String qName, final Attributes attributes)
+            throws SAXException {
+        if (this.island != null) {
+            this.islandDepth++;
+        } else if (MathIslandFilter.isIslandStart(uri, localName)) {
+            try {
+                this.island = this.factory.newTransformerHandler();
+            } catch (final TransformerConfigurationException e) {
+                throw new SAXException(e);
+            }
+            this.islandRoot = this.islandOwner.createDocumentFragment();
+            this.island.setResult(new DOMResult(this.islandRoot));
+            this.island.startDocument();
+            this.islandPrefixes = this.pendingPrefixes.size() / 2;
+            this.islandDepth = 1;
+        }
+        this.flushPrefixes(this.target());
+        this.target().startElement(uri, localName, qName, attributes);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(final String uri, final String localName,
+            final String qName) throws SAXException {
+        if (this.island != null) {
+            this.island.endElement(uri, localName, qName);
+            this.islandDepth--;
+            if (this.islandDepth == 0) {
+                this.finishIsland();
+                // The parser reports the end of the island's own prefix
+                // mappings next.
+                this.swallowEndPrefixes = this.islandPrefixes;
+            }
+        } else {
+            this.out.endElement(uri, localName, qName);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void characters(final char[] ch, final int start, final int length)
+            throws SAXException {
+        this.target().characters(ch, start, length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void ignorableWhitespace(final char[] ch, final int start,
+            final int length) throws SAXException {
+        this.target().ignorableWhitespace(ch, start, length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void processingInstruction(final String target, final String data)
+            throws SAXException {
+        this.target().processingInstruction(target, data);
+    }
+
+    /** {@inheritDoc} */
+    public void comment(final char[] ch, final int start, final int length)
+            throws SAXException {
+        if (!this.inDtd) {
+            this.lexicalTarget().comment(ch, start, length);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void startCDATA() throws SAXException {
+        this.lexicalTarget().startCDATA();
+    }
+
+    /** {@inheritDoc} */
+    public void endCDATA() throws SAXException {
+        this.lexicalTarget().endCDATA();
+    }
+
+    /** {@inheritDoc} */
+    public void startDTD(final String name, final String publicId,
+            final String systemId) {
+        this.inDtd = true;
+    }
+
+    /** {@inheritDoc} */
+    public void endDTD() {
+        this.inDtd = false;
+    }
+
+    /** {@inheritDoc} */
+    public void startEntity(final String name) {
+        // Not passed through.
+    }
+
+    /** {@inheritDoc} */
+    public void endEntity(final String name) {
+        // Not passed through.
+    }
+}
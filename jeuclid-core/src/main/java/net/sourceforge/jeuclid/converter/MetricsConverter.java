@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.layout.JEuclidView;
+
+import org.w3c.dom.Node;
+
+/**
+ * Writes the metrics of a layout as a sidecar to the rendered images.
+ * <p>
+ * The output consists of <code>key=value</code> lines in US-ASCII, which
+ * can be read with {@link java.util.Properties#load(java.io.InputStream)}.
+ * The keys are <code>width</code>, <code>height</code>, <code>ascent</code>,
+ * <code>descent</code> and <code>baseline</code>. Values are given in pixels
+ * at the requested scale, so they match raster outputs of the same scale.
+ * The baseline is measured from the bottom, as in
+ * {@link ConverterPlugin.DocumentWithDimension#getBaseline()}.
+ *
+ * @version $Revision$
+ */
+public class MetricsConverter implements ViewConverterPlugin {
+
+    /**
+     * Default constructor.
+     */
+    MetricsConverter() {
+        // Empty on purpose
+    }
+
+    /** {@inheritDoc} */
+    public Dimension convert(final Node doc, final LayoutContext context,
+            final OutputStream outStream) throws IOException {
+        return this.convert(new JEuclidView(doc, context, null, true), 1.0f,
+                outStream);
+    }
+
+    /** {@inheritDoc} */
+    public Dimension convert(final JEuclidView view, final float scale,
+            final OutputStream outStream) throws IOException {
+        final float ascent = view.getAscentHeight() * scale;
+        final float descent = view.getDescentHeight() * scale;
+        final float width = view.getWidth() * scale;
+        final Writer w = new OutputStreamWriter(outStream,
+                StandardCharsets.US_ASCII);
+        MetricsConverter.writeValue(w, "width", width);
+        MetricsConverter.writeValue(w, "height", ascent + descent);
+        MetricsConverter.writeValue(w, "ascent", ascent);
+        MetricsConverter.writeValue(w, "descent", descent);
+        MetricsConverter.writeValue(w, "baseline", descent);
+        w.flush();
+        return new Dimension((int) Math.ceil(width), (int) Math.ceil(ascent
+                + descent));
+    }
+
+    private static void writeValue(final Writer w, final String key,
+            final float value) throws IOException {
+        w.write(key);
+        w.write('=');
+        w.write(Float.toString(value));
+        w.write('\n');
+    }
+
+    /** {@inheritDoc} */
+    public DocumentWithDimension convert(final Node doc,
+            final LayoutContext context) {
+        return null;
+    }
+
+}
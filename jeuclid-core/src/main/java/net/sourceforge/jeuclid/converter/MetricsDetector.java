@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+/**
+ * Registers the {@link MetricsConverter}.
+ *
+ * @version $Revision$
+ */
+public final class MetricsDetector implements ConverterDetector {
+
+    /**
+     * Default constructor.
+     */
+    public MetricsDetector() {
+        // Empty on purpose
+    }
+
+    /** {@inheritDoc} */
+    public void detectConversionPlugins(final ConverterRegistry registry) {
+        registry.registerMimeTypeAndSuffix(Converter.TYPE_METRICS,
+                Converter.EXTENSION_METRICS, true);
+        registry.registerConverter(Converter.TYPE_METRICS,
+                new MetricsConverter(), true);
+    }
+}
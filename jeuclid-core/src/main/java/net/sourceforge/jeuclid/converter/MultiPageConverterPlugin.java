@@ -0,0 +1,55 @@
+/*
+ * Copyright 2007 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import net.sourceforge.jeuclid.LayoutContext;
+
+import org.w3c.dom.Node;
+
+/**
+ * Describes an Image converter for a format which can hold several pages,
+ * such as PDF or PostScript.
+ *
+ * @version $Revision$
+ */
+public interface MultiPageConverterPlugin extends ConverterPlugin {
+
+    /**
+     * Write the given documents into a single output stream, one page per
+     * document.
+     *
+     * @param docs
+     *            the documents to write.
+     * @param context
+     *            LayoutContext to use for all documents.
+     * @param outStream
+     *            Target output stream.
+     * @return Dimensions of all pages, in the order of the documents.
+     * @throws IOException
+     *             if an I/O error occurred during write.
+     */
+    List<Dimension> convert(List<? extends Node> docs, LayoutContext context,
+            OutputStream outStream) throws IOException;
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2007 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.io.OutputStream;
+
+/**
+ * Describes a single output to be produced from a shared layout.
+ *
+ * @see Converter#convert(net.sourceforge.jeuclid.layout.JEuclidView,
+ *      java.util.List)
+ * @version $Revision$
+ */
+public final class OutputRequest {
+
+    private final String mimeType;
+
+    private final float scale;
+
+    private final OutputStream outStream;
+
+    /**
+     * Default constructor.
+     *
+     * @param outFileType
+     *            mimetype for the output.
+     * @param scaleFactor
+     *            scale factor, 1.0f for the natural size.
+     * @param target
+     *            output stream to write to. Will not be closed.
+     */
+    public OutputRequest(final String outFileType, final float scaleFactor,
+            final OutputStream target) {
+        assert outFileType != null : "Mime type must not be null";
+        assert target != null : "OutputStream must not be null";
+        this.mimeType = outFileType;
+        this.scale = scaleFactor;
+        this.outStream = target;
+    }
+
+    /**
+     * Creates a request in natural size.
+     *
+     * @param outFileType
+     *            mimetype for the output.
+     * @param target
+     *            output stream to write to. Will not be closed.
+     */
+    public OutputRequest(final String outFileType, final OutputStream target) {
+        this(outFileType, 1.0f, target);
+    }
+
+    /**
+     * @return the mime type of this output.
+     */
+    public String getMimeType() {
+        return this.mimeType;
+    }
+
+    /**
+     * @return the scale factor of this output.
+     */
+    public float getScale() {
+        return this.scale;
+    }
+
+    /**
+     * @return the output stream to write to.
+     */
+    public OutputStream getOutputStream() {
+        return this.outStream;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return this.mimeType + '@' + this.scale + 'x';
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2007 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.awt.Dimension;
+
+/**
+ * Result of a single {@link OutputRequest}.
+ *
+ * @version $Revision$
+ */
+public final class OutputResult {
+
+    private final OutputRequest request;
+
+    private final Dimension dimension;
+
+    private final long elapsedNanos;
+
+    /**
+     * Default constructor.
+     *
+     * @param req
+     *            the request this result belongs to.
+     * @param dim
+     *            dimension of the output, or null if the output failed.
+     * @param nanos
+     *            time spent producing this output, in nanoseconds.
+     */
+    public OutputResult(final OutputRequest req, final Dimension dim,
+            final long nanos) {
+        this.request = req;
+        this.dimension = dim;
+        this.elapsedNanos = nanos;
+    }
+
+    /**
+     * @return the request this result belongs to.
+     */
+    public OutputRequest getRequest() {
+        return this.request;
+    }
+
+    /**
+     * @return Dimension of the output upon success, null otherwise.
+     */
+    public Dimension getDimension() {
+        return this.dimension;
+    }
+
+    /**
+     * @return true if the output was written successfully.
+     */
+    public boolean isSuccess() {
+        return this.dimension != null;
+    }
+
+    /**
+     * @return time spent encoding this output in nanoseconds. Does not
+     *         include the time for the shared layout.
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return this.request + " " + this.dimension + " in "
+                + this.elapsedNanos / 1000 + "us";
+    }
+}
@@ -19,7 +19,17 @@
 package net.sourceforge.jeuclid.converter;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -27,20 +37,29 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 
+import net.sourceforge.jeuclid.DOMBuilder;
+import net.sourceforge.jeuclid.FormulaKey;
+import net.sourceforge.jeuclid.FormulaMemo;
 import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
 import net.sourceforge.jeuclid.context.LayoutContextImpl;
+import net.sourceforge.jeuclid.context.Parameter;
 import net.sourceforge.jeuclid.converter.ConverterPlugin.DocumentWithDimension;
 import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
 import net.sourceforge.jeuclid.elements.generic.MathImpl;
 import net.sourceforge.jeuclid.parser.Parser;
+import net.sourceforge.jeuclid.parser.ParserProfile;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Contains the actual processing routines.
@@ -72,6 +91,40 @@ public final class Processor {
     // private static final String NAMESPACE_HTML =
     // "http://www.w3.org/1999/xhtml";
 
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    /**
+     * Default number of math islands which may be rendered or waiting to be
+     * written back at any time in parallel processing.
+     */
+    private static final int DEFAULT_MAX_PENDING = Runtime.getRuntime()
+            .availableProcessors() * 2;
+
+    /**
+     * Number of rendered formulas kept for reuse in streaming processing.
+     */
+    static final int STREAMING_MEMO_SIZE = 32;
+
+    /**
+     * Renders one math island on a worker thread.
+     */
+    private static final class IslandTask implements
+            Callable<DocumentWithDimension> {
+        private final Node copy;
+
+        private final LayoutContext context;
+
+        IslandTask(final Node jeuclidCopy, final LayoutContext layoutContext) {
+            this.copy = jeuclidCopy;
+            this.context = layoutContext;
+        }
+
+        public DocumentWithDimension call() {
+            return Converter.getInstance().convert(this.copy,
+                    Converter.TYPE_SVG, this.context);
+        }
+    }
+
     private final Transformer transformer;
 
     /**
@@ -128,8 +181,12 @@ public final class Processor {
         Processor.LOGGER.info("Processing " + inputSource.getSystemId()
                 + " to " + result.getSystemId());
         try {
-            final Node doc = Parser.getInstance().parse(inputSource);
-            this.processSubtree(doc, context);
+            final Node doc = Parser.getInstance().parse(inputSource,
+                    (ParserProfile) context
+                            .getParameter(Parameter.PARSER_PROFILE));
+            final FormulaMemo<DocumentWithDimension> memo = new FormulaMemo<DocumentWithDimension>();
+            this.processSubtree(doc, FrozenLayoutContext.of(context), memo);
+            Processor.LOGGER.info(memo);
             final DOMSource source = new DOMSource(doc);
             this.transformer.transform(source, result);
         } catch (final IOException e) {
@@ -155,32 +212,177 @@ public final class Processor {
                 .getDefaultLayoutContext());
     }
 
-    private void processSubtree(final Node node, final LayoutContext context) {
-        if (AbstractJEuclidElement.URI.equals(node.getNamespaceURI())
-                && MathImpl.ELEMENT.equals(node.getLocalName())) {
+    /**
+     * Pre-process a .fo file, rendering the formulas in parallel.
+     * <p>
+     * The result is the same as with
+     * {@link #process(Source, Result, LayoutContext)}. The formulas are
+     * rendered on the given executor, and written back into the document in
+     * document order on the calling thread. At most maxPending formulas are
+     * rendered or waiting to be written back at any time. Repeated formulas
+     * are rendered once, but only the results of the last maxPending
+     * distinct formulas are kept for reuse. So at most 2 * maxPending
+     * rendered formulas are held in memory, however many formulas the
+     * document has.
+     * 
+     * @param inputSource
+     *            Input File
+     * @param result
+     *            Output File
+     * @param context
+     *            LayoutContext.
+     * @param executor
+     *            executor to render the formulas on.
+     * @param maxPending
+     *            maximum number of formulas rendered at the same time, must
+     *            be at least 1.
+     * @throws TransformerException
+     *             an error occurred during the processing.
+     */
+    public void process(final Source inputSource, final Result result,
+            final LayoutContext context, final Executor executor,
+            final int maxPending) throws TransformerException {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be positive: "
+                    + maxPending);
+        }
+        Processor.LOGGER.info("Processing " + inputSource.getSystemId()
+                + " to " + result.getSystemId());
+        try {
+            final Node doc = Parser.getInstance().parse(inputSource,
+                    (ParserProfile) context
+                            .getParameter(Parameter.PARSER_PROFILE));
+            this.processSubtreeParallel(doc, context, executor, maxPending);
+            final DOMSource source = new DOMSource(doc);
+            this.transformer.transform(source, result);
+        } catch (final IOException e) {
+            throw new TransformerException("IOException", e);
+        } catch (final SAXException e) {
+            throw new TransformerException("SAXException", e);
+        }
+    }
+
+    /**
+     * Pre-process a .fo file, rendering the formulas in parallel.
+     * 
+     * @param inputSource
+     *            Input File
+     * @param result
+     *            Output File
+     * @param context
+     *            LayoutContext.
+     * @param executor
+     *            executor to render the formulas on.
+     * @throws TransformerException
+     *             an error occurred during the processing.
+     * @see #process(Source, Result, LayoutContext, Executor, int) for the
+     *      memory used.
+     */
+    public void process(final Source inputSource, final Result result,
+            final LayoutContext context, final Executor executor)
+            throws TransformerException {
+        this.process(inputSource, result, context, executor,
+                Processor.DEFAULT_MAX_PENDING);
+    }
 
-            final DocumentWithDimension svgdocdim = Converter
-                    .getInstance()
-                    .convert(
-                            node,
-                            net.sourceforge.jeuclid.converter.Converter.TYPE_SVG,
-                            context);
+    /**
+     * Pre-process a .fo or XHTML file without loading it into memory.
+     * <p>
+     * The result is the same as with
+     * {@link #process(Source, Result, LayoutContext)}, but the document is
+     * streamed from the source to the result. Only each
+     * fo:instream-foreign-object, and each math element outside of one, is
+     * held in memory while it is converted. Repeated formulas are rendered
+     * once, but only a fixed number of recently used rendered formulas are
+     * kept for reuse, so memory use does not grow with the number of
+     * formulas in the document. Sources which can not be read as
+     * a stream, such as a DOMSource, are processed in memory.
+     * 
+     * @param inputSource
+     *            Input File
+     * @param result
+     *            Output File
+     * @param context
+     *            LayoutContext.
+     * @throws TransformerException
+     *             an error occurred during the processing.
+     */
+    public void processStreaming(final Source inputSource,
+            final Result result, final LayoutContext context)
+            throws TransformerException {
+        final InputSource input = SAXSource.sourceToInputSource(inputSource);
+        if (input == null) {
+            this.process(inputSource, result, context);
+            return;
+        }
+        Processor.LOGGER.info("Processing " + inputSource.getSystemId()
+                + " to " + result.getSystemId());
+        final ParserProfile profile = (ParserProfile) context
+                .getParameter(Parameter.PARSER_PROFILE);
+        final XMLReader reader = Parser.getInstance().getXMLReader(profile);
+        try {
+            final MathIslandFilter filter = new MathIslandFilter(this, result,
+                    context);
+            reader.setContentHandler(filter);
+            reader.setProperty(Processor.LEXICAL_HANDLER, filter);
+            reader.parse(input);
+        } catch (final ParserConfigurationException e) {
+            throw new TransformerException("ParserConfigurationException", e);
+        } catch (final IOException e) {
+            throw new TransformerException("IOException", e);
+        } catch (final SAXException e) {
+            throw new TransformerException("SAXException", e);
+        } finally {
+            Parser.getInstance().returnXMLReader(reader, profile);
+        }
+    }
 
-            final float baselinePercent = -(svgdocdim.getBaseline() / (float) svgdocdim
-                    .getDimension().getHeight()) * 100f;
+    /**
+     * Pre-process a .fo or XHTML file without loading it into memory.
+     * 
+     * @param inputSource
+     *            Input File
+     * @param result
+     *            Output File
+     * @throws TransformerException
+     *             an error occurred during the processing.
+     * @see #processStreaming(Source, Result, LayoutContext)
+     */
+    public void processStreaming(final Source inputSource, final Result result)
+            throws TransformerException {
+        this.processStreaming(inputSource, result, LayoutContextImpl
+                .getDefaultLayoutContext());
+    }
 
-            final Node parent = node.getParentNode();
-            if ("http://www.w3.org/1999/XSL/Format".equals(parent
-                    .getNamespaceURI())
-                    && "instream-foreign-object".equals(parent.getLocalName())) {
-                final Element pElement = (Element) parent;
-                pElement
-                        .setAttribute("alignment-adjust", baselinePercent + "%");
+    /**
+     * Replaces all math elements in the given subtree by SVG.
+     * 
+     * @param node
+     *            the subtree to process.
+     * @param context
+     *            LayoutContext.
+     * @param memo
+     *            formulas already rendered in this run.
+     */
+    void processSubtree(final Node node, final LayoutContext context,
+            final FormulaMemo<DocumentWithDimension> memo) {
+        if (Processor.isMath(node)) {
+            final FormulaKey key = FormulaKey.create(node, context);
+            DocumentWithDimension svgdocdim = memo.get(key);
+            if (svgdocdim == null) {
+                svgdocdim = Converter
+                        .getInstance()
+                        .convert(
+                                node,
+                                net.sourceforge.jeuclid.converter.Converter.TYPE_SVG,
+                                context);
+                if (svgdocdim != null) {
+                    memo.put(key, svgdocdim);
+                }
             }
-            this.safeReplaceChild(parent, node, svgdocdim.getDocument()
-                    .getFirstChild());
+            this.replaceMath(node, svgdocdim);
         } else {
-            this.processChildren(node, context);
+            this.processChildren(node, context, memo);
             // TODO: This is an IE-Fix, but does not work yet.
             // final Node parent = node.getParentNode();
             // if ((parent != null)
@@ -205,6 +407,89 @@ public final class Processor {
         }
     }
 
+    private static boolean isMath(final Node node) {
+        return AbstractJEuclidElement.URI.equals(node.getNamespaceURI())
+                && MathImpl.ELEMENT.equals(node.getLocalName());
+    }
+
+    private void replaceMath(final Node node,
+            final DocumentWithDimension svgdocdim) {
+        final float baselinePercent = -(svgdocdim.getBaseline() / (float) svgdocdim
+                .getDimension().getHeight()) * 100f;
+
+        final Node parent = node.getParentNode();
+        if ("http://www.w3.org/1999/XSL/Format".equals(parent
+                .getNamespaceURI())
+                && "instream-foreign-object".equals(parent.getLocalName())) {
+            final Element pElement = (Element) parent;
+            pElement.setAttribute("alignment-adjust", baselinePercent + "%");
+        }
+        this.safeReplaceChild(parent, node, svgdocdim.getDocument()
+                .getFirstChild());
+    }
+
+    private static void collectMath(final Node node, final List<Node> islands) {
+        if (Processor.isMath(node)) {
+            islands.add(node);
+        } else {
+            for (Node child = node.getFirstChild(); child != null; child = child
+                    .getNextSibling()) {
+                Processor.collectMath(child, islands);
+            }
+        }
+    }
+
+    private void processSubtreeParallel(final Node node,
+            final LayoutContext context, final Executor executor,
+            final int maxPending) throws TransformerException {
+        final List<Node> islands = new ArrayList<Node>();
+        Processor.collectMath(node, islands);
+        final FrozenLayoutContext frozen = FrozenLayoutContext.of(context);
+        // Completed tasks hold their result, so the memo is bounded, too.
+        final FormulaMemo<Future<DocumentWithDimension>> memo = new FormulaMemo<Future<DocumentWithDimension>>(
+                maxPending);
+        final Deque<Node> pendingNodes = new ArrayDeque<Node>(maxPending);
+        final Deque<Future<DocumentWithDimension>> pending = new ArrayDeque<Future<DocumentWithDimension>>(
+                maxPending);
+        try {
+            for (final Node island : islands) {
+                if (pending.size() >= maxPending) {
+                    this.replaceMath(pendingNodes.removeFirst(), pending
+                            .removeFirst().get());
+                }
+                final FormulaKey key = FormulaKey.create(island, frozen);
+                Future<DocumentWithDimension> rendered = memo.get(key);
+                if (rendered == null) {
+                    // The DOM may not be read from several threads, so every
+                    // task gets its own copy.
+                    final FutureTask<DocumentWithDimension> task = new FutureTask<DocumentWithDimension>(
+                            new IslandTask(DOMBuilder.getInstance()
+                                    .createJeuclidDom(island, true, true),
+                                    frozen));
+                    executor.execute(task);
+                    memo.put(key, task);
+                    rendered = task;
+                }
+                pendingNodes.addLast(island);
+                pending.addLast(rendered);
+            }
+            Processor.LOGGER.info(memo);
+            while (!pending.isEmpty()) {
+                this.replaceMath(pendingNodes.removeFirst(), pending
+                        .removeFirst().get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransformerException("Interrupted", e);
+        } catch (final ExecutionException e) {
+            throw new TransformerException("Rendering failed", e.getCause());
+        } finally {
+            for (final Future<DocumentWithDimension> f : pending) {
+                f.cancel(true);
+            }
+        }
+    }
+
     private void safeReplaceChild(final Node parent, final Node oldChild,
             final Node newChild) {
         try {
@@ -218,12 +503,13 @@ public final class Processor {
         parent.removeChild(oldChild);
     }
 
-    private void processChildren(final Node node, final LayoutContext context) {
+    private void processChildren(final Node node, final LayoutContext context,
+            final FormulaMemo<DocumentWithDimension> memo) {
         final NodeList childList = node.getChildNodes();
         if (childList != null) {
             for (int i = 0; i < childList.getLength(); i++) {
                 final Node child = childList.item(i);
-                this.processSubtree(child, context);
+                this.processSubtree(child, context, memo);
             }
         }
     }
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.sourceforge.jeuclid.FormulaKey;
+import net.sourceforge.jeuclid.LayoutContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Node;
+
+/**
+ * Caches the output of
+ * {@link Converter#convert(Node, OutputStream, String, LayoutContext)}.
+ * <p>
+ * Results are addressed by a SHA-256 hash of the canonical formula (see
+ * {@link FormulaKey}), the output type and the fingerprint of the layout
+ * context. They are kept
+ * in memory up to the given number of bytes, least recently used first out.
+ * If a directory is given, results are also stored there, one file per
+ * hash, so that they survive a restart. Files are written to a temporary
+ * file first and then renamed, so other processes sharing the directory
+ * never see partial files. Files which cannot be read or are damaged are
+ * treated as misses and deleted.
+ * <p>
+ * Concurrent requests for the same result are coalesced: one thread loads or
+ * renders it, and the others wait for it and share the result. A cache with
+ * a memory size of 0 and no directory only coalesces requests.
+ *
+ * @version $Revision$
+ */
+@ThreadSafe
+public final class RenderCache {
+
+    /**
+     * Logger for this class
+     */
+    private static final Log LOGGER = LogFactory.getLog(RenderCache.class);
+
+    private static final String DIGEST = "SHA-256";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Size of width, height and content length in each file and entry. */
+    private static final int HEADER_SIZE = 12;
+
+    /** "JERC". */
+    private static final int MAGIC = 0x4A455243;
+
+    private static final int VERSION = 1;
+
+    /** Size of magic number and version in each file. */
+    private static final int FILE_HEADER_SIZE = 8;
+
+    /**
+     * A rendered result.
+     */
+    private static final class Entry {
+        private final Dimension dimension;
+
+        private final byte[] content;
+
+        Entry(final Dimension dim, final byte[] data) {
+            this.dimension = dim;
+            this.content = data;
+        }
+
+        long weight() {
+            return this.content.length + RenderCache.HEADER_SIZE;
+        }
+    }
+
+    private final long maxMemoryBytes;
+
+    private final File directory;
+
+    @GuardedBy("this")
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(
+            16, 0.75f, true);
+
+    @GuardedBy("this")
+    private long memoryBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+
+    private final AtomicLong diskHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final ConcurrentMap<String, FutureTask<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    /**
+     * Creates a cache which keeps results in memory only.
+     *
+     * @param maxBytes
+     *            maximum number of bytes kept in memory.
+     */
+    public RenderCache(final long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Creates a cache which keeps results in memory and on disk.
+     *
+     * @param maxBytes
+     *            maximum number of bytes kept in memory.
+     * @param dir
+     *            directory for the results on disk, or null to keep results
+     *            in memory only. It is created if necessary.
+     */
+    public RenderCache(final long maxBytes, final File dir) {
+        this.maxMemoryBytes = maxBytes;
+        this.directory = dir;
+    }
+
+    /**
+     * Converts a formula, or copies the cached result of an earlier
+     * conversion.
+     *
+     * @param doc
+     *            input document. See
+     *            {@link net.sourceforge.jeuclid.DOMBuilder#getInstance()}
+     *            for the list of valid node types.
+     * @param outStream
+     *            output stream.
+     * @param outFileType
+     *            mimetype for the output file.
+     * @param params
+     *            parameter set to use for conversion.
+     * @return Dimension of converted image upon success, null otherwise
+     * @throws IOException
+     *             if an I/O error occurred during read or write.
+     * @see Converter#convert(Node, OutputStream, String, LayoutContext)
+     */
+    public Dimension convert(final Node doc, final OutputStream outStream,
+            final String outFileType, final LayoutContext params)
+            throws IOException {
+        final String hash = RenderCache.hash(FormulaKey.create(doc, params),
+                outFileType);
+        Entry entry = this.getFromMemory(hash);
+        if (entry != null) {
+            this.memoryHits.incrementAndGet();
+        } else {
+            entry = this.loadOrRender(hash, doc, outFileType, params);
+            if (entry == null) {
+                return null;
+            }
+        }
+        outStream.write(entry.content);
+        return new Dimension(entry.dimension);
+    }
+
+    private Entry loadOrRender(final String hash, final Node doc,
+            final String outFileType, final LayoutContext params)
+            throws IOException {
+        final FutureTask<Entry> task = new FutureTask<Entry>(
+                new Callable<Entry>() {
+                    public Entry call() throws IOException {
+                        return RenderCache.this.load(hash, doc, outFileType,
+                                params);
+                    }
+                });
+        final FutureTask<Entry> running = this.inFlight.putIfAbsent(hash,
+                task);
+        final FutureTask<Entry> result;
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                this.inFlight.remove(hash, task);
+            }
+            result = task;
+        } else {
+            this.coalesced.incrementAndGet();
+            result = running;
+        }
+        try {
+            return result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private Entry load(final String hash, final Node doc,
+            final String outFileType, final LayoutContext params)
+            throws IOException {
+        // Another thread may have finished this result since the first look.
+        Entry entry = this.getFromMemory(hash);
+        if (entry != null) {
+            this.memoryHits.incrementAndGet();
+            return entry;
+        }
+        entry = this.readFromDisk(hash);
+        if (entry != null) {
+            this.diskHits.incrementAndGet();
+            this.putInMemory(hash, entry);
+            return entry;
+        }
+        this.misses.incrementAndGet();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final Dimension dim = Converter.getInstance().convert(doc, buffer,
+                outFileType, params);
+        if (dim == null) {
+            return null;
+        }
+        entry = new Entry(dim, buffer.toByteArray());
+        this.putInMemory(hash, entry);
+        this.writeToDisk(hash, entry);
+        return entry;
+    }
+
+    private static String hash(final FormulaKey key, final String outFileType) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(RenderCache.DIGEST);
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+        for (final String s : new String[] { key.getCanonicalFormula(),
+                outFileType,
+                Long.toHexString(key.getContext().getFingerprint()), }) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) (bytes.length >>> 24));
+            digest.update((byte) (bytes.length >>> 16));
+            digest.update((byte) (bytes.length >>> 8));
+            digest.update((byte) bytes.length);
+            digest.update(bytes);
+        }
+        final byte[] bytes = digest.digest();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = RenderCache.HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = RenderCache.HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private synchronized Entry getFromMemory(final String hash) {
+        return this.memory.get(hash);
+    }
+
+    private synchronized void putInMemory(final String hash, final Entry entry) {
+        if (entry.weight() > this.maxMemoryBytes) {
+            return;
+        }
+        final Entry previous = this.memory.put(hash, entry);
+        if (previous != null) {
+            this.memoryBytes -= previous.weight();
+        }
+        this.memoryBytes += entry.weight();
+        final Iterator<Map.Entry<String, Entry>> it = this.memory.entrySet()
+                .iterator();
+        while (this.memoryBytes > this.maxMemoryBytes) {
+            final Entry eldest = it.next().getValue();
+            it.remove();
+            this.memoryBytes -= eldest.weight();
+            this.evictions.incrementAndGet();
+            this.evictedBytes.addAndGet(eldest.weight());
+        }
+    }
+
+    private Path getFile(final String hash) {
+        return new File(new File(this.directory, hash.substring(0, 2)), hash)
+                .toPath();
+    }
+
+    private Entry readFromDisk(final String hash) {
+        if (this.directory == null) {
+            return null;
+        }
+        final Path file = this.getFile(hash);
+        try {
+            final FileChannel channel = FileChannel.open(file);
+            try {
+                return RenderCache.readEntry(new DataInputStream(Channels
+                        .newInputStream(channel)), channel.size());
+            } finally {
+                channel.close();
+            }
+        } catch (final NoSuchFileException e) {
+            return null;
+        } catch (final IOException e) {
+            RenderCache.LOGGER.warn("Failed to read cached result " + hash
+                    + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException e2) {
+                RenderCache.LOGGER.debug(e2);
+            }
+            return null;
+        }
+    }
+
+    private static Entry readEntry(final DataInputStream data, final long size)
+            throws IOException {
+        if (size < RenderCache.FILE_HEADER_SIZE + RenderCache.HEADER_SIZE
+                || data.readInt() != RenderCache.MAGIC
+                || data.readInt() != RenderCache.VERSION) {
+            throw new IOException("Not a cached result");
+        }
+        final int width = data.readInt();
+        final int height = data.readInt();
+        final int length = data.readInt();
+        if (width < 0 || height < 0 || length < 0
+                || length != size - RenderCache.FILE_HEADER_SIZE
+                        - RenderCache.HEADER_SIZE) {
+            throw new IOException("Corrupt cached result");
+        }
+        final byte[] content = new byte[length];
+        data.readFully(content);
+        return new Entry(new Dimension(width, height), content);
+    }
+
+    private void writeToDisk(final String hash, final Entry entry) {
+        if (this.directory == null) {
+            return;
+        }
+        final Path file = this.getFile(hash);
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), hash, ".tmp");
+            final OutputStream out = Files.newOutputStream(temp);
+            try {
+                final DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(RenderCache.MAGIC);
+                data.writeInt(RenderCache.VERSION);
+                data.writeInt(entry.dimension.width);
+                data.writeInt(entry.dimension.height);
+                data.writeInt(entry.content.length);
+                data.write(entry.content);
+                data.flush();
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (final IOException e) {
+            RenderCache.LOGGER.warn("Failed to store cached result " + hash
+                    + ": " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (final IOException e) {
+                    RenderCache.LOGGER.debug(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all results from memory. Results on disk are kept.
+     */
+    public synchronized void clearMemory() {
+        this.memory.clear();
+        this.memoryBytes = 0;
+    }
+
+    /**
+     * @return the number of results found in memory.
+     */
+    public long getMemoryHitCount() {
+        return this.memoryHits.get();
+    }
+
+    /**
+     * @return the number of results found on disk, but not in memory.
+     */
+    public long getDiskHitCount() {
+        return this.diskHits.get();
+    }
+
+    /**
+     * @return the number of results which had to be rendered.
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of requests which waited for the same result being
+     *         loaded or rendered by another thread.
+     */
+    public long getCoalescedCount() {
+        return this.coalesced.get();
+    }
+
+    /**
+     * @return the number of results removed from memory to make room for
+     *         others.
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return the total size of the results removed from memory to make room
+     *         for others.
+     */
+    public long getEvictedBytes() {
+        return this.evictedBytes.get();
+    }
+
+    /**
+     * @return the number of results in memory.
+     */
+    public synchronized int getMemoryEntryCount() {
+        return this.memory.size();
+    }
+
+    /**
+     * @return the size of the results in memory, in bytes.
+     */
+    public synchronized long getMemoryBytes() {
+        return this.memoryBytes;
+    }
+
+    /**
+     * @return the maximum size of the results in memory, in bytes.
+     */
+    public long getMaxMemoryBytes() {
+        return this.maxMemoryBytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "RenderCache: " + this.getMemoryHitCount() + " memory hits, "
+                + this.getDiskHitCount() + " disk hits, "
+                + this.getMissCount() + " misses, "
+                + this.getCoalescedCount() + " coalesced, "
+                + this.getEvictionCount()
+                + " evictions (" + this.getEvictedBytes() + " bytes), "
+                + this.getMemoryEntryCount() + " entries ("
+                + this.getMemoryBytes() + " bytes) in memory";
+    }
+}
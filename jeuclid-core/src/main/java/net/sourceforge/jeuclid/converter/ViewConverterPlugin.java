@@ -0,0 +1,56 @@
+/*
+ * Copyright 2007 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.converter;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.sourceforge.jeuclid.layout.JEuclidView;
+
+/**
+ * Describes an Image converter which is able to write an already layouted
+ * {@link JEuclidView}.
+ * <p>
+ * This allows the same layout to be written in several formats and scales
+ * without parsing and layouting the document again.
+ *
+ * @version $Revision$
+ */
+public interface ViewConverterPlugin extends ConverterPlugin {
+
+    /**
+     * Write the given view into the given output stream.
+     *
+     * @param view
+     *            the view to write. Will be layouted if this has not happened
+     *            yet.
+     * @param scale
+     *            scale factor to apply to the output, 1.0f for the natural
+     *            size.
+     * @param outStream
+     *            Target output stream.
+     * @return Rendering's dimension after scaling.
+     * @throws IOException
+     *             if an I/O error occurred during write.
+     */
+    Dimension convert(JEuclidView view, float scale, OutputStream outStream)
+            throws IOException;
+
+}
@@ -477,6 +477,20 @@ public abstract class AbstractJEuclidElement extends
         return g.getFontMetrics(this.getFont(context));
     }
 
+    /**
+     * Gets the font metrics of the used font.
+     * 
+     * @return Font metrics.
+     * @param context
+     *            LayoutContext to use.
+     * @param view
+     *            LayoutView to use.
+     */
+    public FontMetrics getFontMetrics(final LayoutView view,
+            final LayoutContext context) {
+        return view.getFontMetrics(this.getFont(context));
+    }
+
     /**
      * Sets value of math color attribute.
      * 
@@ -639,6 +653,21 @@ public abstract class AbstractJEuclidElement extends
                 * AbstractJEuclidElement.MIDDLE_SHIFT;
     }
 
+    /**
+     * Returns the distance of the baseline and the middleline.
+     * 
+     * @return Distance baseline - middleline.
+     * @param context
+     *            Layout Context to use
+     * @param view
+     *            LayoutView to use.
+     */
+    public float getMiddleShift(final LayoutView view,
+            final LayoutContext context) {
+        return this.getFontMetrics(view, context).getAscent()
+                * AbstractJEuclidElement.MIDDLE_SHIFT;
+    }
+
     /** {@inheritDoc} */
     public String getClassName() {
         return this.getAttribute(AbstractJEuclidElement.ATTR_CLASS);
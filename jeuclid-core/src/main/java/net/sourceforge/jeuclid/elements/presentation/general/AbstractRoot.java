@@ -20,7 +20,6 @@ package net.sourceforge.jeuclid.elements.presentation.general;
 
 import java.awt.Color;
 import java.awt.FontMetrics;
-import java.awt.Graphics2D;
 import java.awt.geom.Path2D;
 import java.util.List;
 
@@ -82,9 +81,8 @@ public abstract class AbstractRoot extends AbstractJEuclidElement implements Mat
         // CHECKSTYLE:ON
 
         // Basic Calculations
-        final Graphics2D g = view.getGraphics();
         final LayoutContext now = this.applyLocalAttributesToContext(context);
-        final float middleShift = this.getMiddleShift(g, context);
+        final float middleShift = this.getMiddleShift(view, context);
         final float linethickness = GraphicsSupport.lineWidth(now);
         final float extraSpace = AttributesHelper.convertSizeToPt(AbstractRoot.EXTRA_SPACE, now,
                 "");
@@ -110,9 +108,12 @@ public abstract class AbstractRoot extends AbstractJEuclidElement implements Mat
                             stage);
             indexInfo.moveTo(xPos, -indexPos, stage);
             xPos += indexInfo.getWidth(stage);
-            graphicObjects.add(
-                    new LineObject(linethickness, -middleShift, xPos, -middleShift, linethickness,
-                            color));
+            if (info.isGraphicsWanted())
+            {
+                graphicObjects.add(
+                        new LineObject(linethickness, -middleShift, xPos, -middleShift,
+                                linethickness, color));
+            }
             indexAscent = indexPos + indexInfo.getAscentHeight(stage);
         }
 
@@ -121,7 +122,7 @@ public abstract class AbstractRoot extends AbstractJEuclidElement implements Mat
 
         // Draw Content below Root
         final float contentStartX = xPos;
-        final FontMetrics metrics = this.getFontMetrics(view.getGraphics(), now);
+        final FontMetrics metrics = this.getFontMetrics(view, now);
         float maxAscent = metrics.getAscent();
         float maxDescent = metrics.getDescent();
         for (final LayoutableNode child : this.getContent())
@@ -144,6 +145,10 @@ public abstract class AbstractRoot extends AbstractJEuclidElement implements Mat
         info.setStretchDescent(maxDescent);
 
         // Add Root Glyph
+        if (!info.isGraphicsWanted())
+        {
+            return;
+        }
         if (USE_PATH)
         {
             Path2D path2d = new Path2D.Float();
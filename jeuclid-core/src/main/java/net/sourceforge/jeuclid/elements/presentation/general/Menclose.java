@@ -109,7 +109,10 @@ public final class Menclose extends AbstractElementWithDelegates implements
             }
             ElementListSupport.fillInfoFromChildren(view, info, this, stage,
                     borderLeftTop, this.getBorderRightBottom(now));
-            this.enclHook(info, stage, this.applyLocalAttributesToContext(now));
+            if (info.isGraphicsWanted()) {
+                this.enclHook(info, stage, this
+                        .applyLocalAttributesToContext(now));
+            }
         }
 
         /**
@@ -141,6 +141,15 @@ public final class Mfrac extends AbstractJEuclidElement implements
      */
     public float getLinethickness(final Graphics2D g,
             final LayoutContext context) {
+        return this.getLinethickness(context);
+    }
+
+    /**
+     * @return thickness of the fraction line
+     * @param context
+     *            LayoutContext to use
+     */
+    public float getLinethickness(final LayoutContext context) {
         final String sThickness = this.getLinethickness();
         float thickness;
         try {
@@ -231,11 +240,9 @@ public final class Mfrac extends AbstractJEuclidElement implements
     protected void layoutStageInvariant(final LayoutView view,
             final LayoutInfo info, final LayoutStage stage,
             final LayoutContext context) {
-        final Graphics2D g = view.getGraphics();
-
-        final float middleShift = this.getMiddleShift(g, context);
+        final float middleShift = this.getMiddleShift(view, context);
         final boolean beveled = Boolean.parseBoolean(this.getBevelled());
-        final float linethickness = this.getLinethickness(g, context);
+        final float linethickness = this.getLinethickness(context);
         final float extraSpace = AttributesHelper.convertSizeToPt(
                 Mfrac.EXTRA_SPACE_AROUND, this
                         .applyLocalAttributesToContext(context), "");
@@ -287,7 +294,8 @@ public final class Mfrac extends AbstractJEuclidElement implements
                 + linethickness / 2.0f + extraSpace
                 + denominator.getAscentHeight(stage), stage);
 
-        if (linethickness > Mfrac.NOLINE_THRESHHOLD) {
+        if ((linethickness > Mfrac.NOLINE_THRESHHOLD)
+                && info.isGraphicsWanted()) {
             final GraphicsObject line = new LineObject(extraSpace,
                     -middleShift, extraSpace + width, -middleShift,
                     linethickness, (Color) this.applyLocalAttributesToContext(
@@ -320,7 +328,8 @@ public final class Mfrac extends AbstractJEuclidElement implements
 
         numerator.moveTo(extraSpace, numPosY, stage);
         float posX = numerator.getWidth(stage) + extraSpace;
-        if (linethickness > Mfrac.NOLINE_THRESHHOLD) {
+        if ((linethickness > Mfrac.NOLINE_THRESHHOLD)
+                && info.isGraphicsWanted()) {
             final GraphicsObject line = new LineObject(posX, totalDescent,
                     lineWidth + posX, totalDescent - totalHeight,
                     linethickness, (Color) this.applyLocalAttributesToContext(
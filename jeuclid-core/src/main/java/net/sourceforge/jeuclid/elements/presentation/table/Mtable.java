@@ -19,7 +19,6 @@
 package net.sourceforge.jeuclid.elements.presentation.table;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.geom.Dimension2D;
 import java.util.ArrayList;
 import java.util.List;
@@ -666,7 +665,6 @@ public final class Mtable extends AbstractTableElement implements
             final LayoutInfo info, final LayoutStage stage,
             final LayoutContext context) {
         // CHECKSTYLE:ON
-        final Graphics2D g = view.getGraphics();
         final LayoutContext now = this.applyLocalAttributesToContext(context);
         final List<LayoutableNode> children = this.getChildrenToLayout();
         final LayoutInfo[] rowInfos = new LayoutInfo[children.size()];
@@ -692,7 +690,7 @@ public final class Mtable extends AbstractTableElement implements
         height += vFrameSpacing;
 
         final float verticalShift = this.shiftTableVertically(stage, context,
-                g, rowInfos, rows, height);
+                view, rowInfos, rows, height);
 
         final List<LayoutableNode>[] mtdChildren = this
                 .createListOfMtdChildren(rowChild, rows);
@@ -708,9 +706,11 @@ public final class Mtable extends AbstractTableElement implements
 
         this.setRowWidth(stage, rowInfos, rows, totalWidth);
 
-        this.addRowLines(info, rowInfos, rows, totalWidth, stage, now);
-        this.addColumnLines(info, columnwidth, verticalShift, height, now);
-        this.addFrame(info, totalWidth, verticalShift, height, now);
+        if (info.isGraphicsWanted()) {
+            this.addRowLines(info, rowInfos, rows, totalWidth, stage, now);
+            this.addColumnLines(info, columnwidth, verticalShift, height, now);
+            this.addFrame(info, totalWidth, verticalShift, height, now);
+        }
 
         final float hFrameSpacing = this.getFramespacingh(now);
         final Dimension2D borderLeftTop = new Dimension2DImpl(hFrameSpacing,
@@ -834,7 +834,7 @@ public final class Mtable extends AbstractTableElement implements
     }
 
     private float shiftTableVertically(final LayoutStage stage,
-            final LayoutContext context, final Graphics2D g,
+            final LayoutContext context, final LayoutView view,
             final LayoutInfo[] rowInfos, final int rows, final float height) {
         // Shift table by given vertical alignment
         // final String alignStr = this.getAlign();
@@ -842,7 +842,7 @@ public final class Mtable extends AbstractTableElement implements
         // Mtable.AlignmentType.parseAlignmentType(alignStr);
         // TODO: Proper vertical alignment;
         // This is "axis" alignment.
-        final float verticalShift = -this.getMiddleShift(g, context) - height
+        final float verticalShift = -this.getMiddleShift(view, context) - height
                 / 2.0f;
 
         for (int i = 0; i < rows; i++) {
@@ -19,7 +19,7 @@
 package net.sourceforge.jeuclid.elements.presentation.token;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
@@ -67,8 +67,8 @@ public abstract class AbstractTokenWithTextLayout extends
     public void layoutStageInvariant(final LayoutView view,
             final LayoutInfo info, final LayoutStage stage,
             final LayoutContext context) {
-        final Graphics2D g = view.getGraphics();
-        final TextLayout t = this.produceTextLayout(g, context);
+        final TextLayout t = this.produceTextLayout(view
+                .getFontRenderContext(), context);
         if (t != null) {
             final StringUtil.TextLayoutInfo tli = StringUtil.getTextLayoutInfo(
                     t, false);
@@ -77,13 +77,15 @@ public abstract class AbstractTokenWithTextLayout extends
             final float width = tli.getWidth();
             info.setHorizontalCenterOffset(width / 2.0f, stage);
             info.setWidth(width, stage);
-            info.setGraphicsObject(new TextObject(t, tli.getOffset(),
-                    (Color) this.applyLocalAttributesToContext(context)
-                            .getParameter(Parameter.MATHCOLOR)));
+            if (info.isGraphicsWanted()) {
+                info.setGraphicsObject(new TextObject(t, tli.getOffset(),
+                        (Color) this.applyLocalAttributesToContext(context)
+                                .getParameter(Parameter.MATHCOLOR)));
+            }
         }
     }
 
-    private TextLayout produceTextLayout(final Graphics2D g2d,
+    private TextLayout produceTextLayout(final FontRenderContext frc,
             final LayoutContext context) {
         TextLayout layout;
         final LayoutContext now = this.applyLocalAttributesToContext(context);
@@ -94,7 +96,7 @@ public abstract class AbstractTokenWithTextLayout extends
         if (aci.getBeginIndex() == aci.getEndIndex()) {
             return null;
         } else {
-            layout = StringUtil.createTextLayoutFromAttributedString(g2d,
+            layout = StringUtil.createTextLayoutFromAttributedString(frc,
                     new AttributedString(aci), now);
             return layout;
         }
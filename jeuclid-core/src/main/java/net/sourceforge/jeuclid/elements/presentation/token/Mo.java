@@ -47,6 +47,7 @@ import org.w3c.dom.mathml.MathMLScriptElement;
 import org.w3c.dom.mathml.MathMLUnderOverElement;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.text.AttributedString;
@@ -271,9 +272,9 @@ public final class Mo extends AbstractJEuclidElement implements
         return this.getMathAttribute(Mo.ATTR_MINSIZE);
     }
 
-    private TextLayout produceUnstrechtedLayout(final Graphics2D g,
+    private TextLayout produceUnstrechtedLayout(final FontRenderContext frc,
             final LayoutContext now) {
-        assert g != null : "Graphics2d is null in produceUnstrechtedLayout";
+        assert frc != null : "FontRenderContext is null in produceUnstrechtedLayout";
         float fontSizeInPoint = GraphicsSupport.getFontsizeInPoint(now);
         if (Boolean.parseBoolean(this.getLargeop())) {
             fontSizeInPoint *= this.getLargeOpCorrector(now);
@@ -284,7 +285,7 @@ public final class Mo extends AbstractJEuclidElement implements
                 .convertStringtoAttributedString(theText, this
                         .getMathvariantAsVariant(), fontSizeInPoint, now);
         final TextLayout theLayout = StringUtil
-                .createTextLayoutFromAttributedString(g, aString, now);
+                .createTextLayoutFromAttributedString(frc, aString, now);
         return theLayout;
     }
 
@@ -532,8 +533,8 @@ public final class Mo extends AbstractJEuclidElement implements
     public void layoutStage1(final LayoutView view, final LayoutInfo info,
             final LayoutStage childMinStage, final LayoutContext context) {
         final LayoutContext now = this.applyLocalAttributesToContext(context);
-        final Graphics2D g = view.getGraphics();
-        final TextLayout t = this.produceUnstrechtedLayout(g, now);
+        final TextLayout t = this.produceUnstrechtedLayout(view
+                .getFontRenderContext(), now);
 
         final StringUtil.TextLayoutInfo tli = StringUtil.getTextLayoutInfo(t,
                 true);
@@ -565,8 +566,11 @@ public final class Mo extends AbstractJEuclidElement implements
             info.setStretchAscent(0.0f);
             info.setStretchDescent(0.0f);
         } else {
-            info.setGraphicsObject(new TextObject(t, lspace + tli.getOffset(),
-                    0, null, (Color) now.getParameter(Parameter.MATHCOLOR)));
+            if (info.isGraphicsWanted()) {
+                info.setGraphicsObject(new TextObject(t, lspace
+                        + tli.getOffset(), 0, null, (Color) now
+                        .getParameter(Parameter.MATHCOLOR)));
+            }
             info.setLayoutStage(LayoutStage.STAGE2);
         }
     }
@@ -577,8 +581,8 @@ public final class Mo extends AbstractJEuclidElement implements
             final LayoutContext context) {
         final LayoutContext now = this.applyLocalAttributesToContext(context);
 
-        final Graphics2D g = view.getGraphics();
-        final TextLayout t = this.produceUnstrechtedLayout(g, now);
+        final TextLayout t = this.produceUnstrechtedLayout(view
+                .getFontRenderContext(), now);
 
         final float calcScaleY;
         final float calcScaleX;
@@ -632,7 +636,7 @@ public final class Mo extends AbstractJEuclidElement implements
         } else {
             if (stretchVertically) {
                 final float[] yf = this.calcYScaleFactorAndBaselineShift(info,
-                        parentInfo, textLayoutInfo, now, g);
+                        parentInfo, textLayoutInfo, now, view);
                 calcScaleY = yf[0];
                 calcBaselineShift = yf[1];
             } else {
@@ -646,10 +650,14 @@ public final class Mo extends AbstractJEuclidElement implements
                 calcScaleX = 1.0f;
             }
         }
-        info.setGraphicsObject(new TextObject(t, this.getLspaceAsFloat(now)
-                + textLayoutInfo.getOffset() * calcScaleX, calcBaselineShift,
-                AffineTransform.getScaleInstance(calcScaleX, calcScaleY),
-                (Color) now.getParameter(Parameter.MATHCOLOR)));
+        if (info.isGraphicsWanted()) {
+            info.setGraphicsObject(new TextObject(t, this
+                    .getLspaceAsFloat(now)
+                    + textLayoutInfo.getOffset() * calcScaleX,
+                    calcBaselineShift, AffineTransform.getScaleInstance(
+                            calcScaleX, calcScaleY), (Color) now
+                            .getParameter(Parameter.MATHCOLOR)));
+        }
         info.setLayoutStage(LayoutStage.STAGE2);
     }
 
@@ -676,7 +684,7 @@ public final class Mo extends AbstractJEuclidElement implements
 
     private float[] calcYScaleFactorAndBaselineShift(final LayoutInfo info,
             final LayoutInfo parentInfo, final TextLayoutInfo textLayoutInfo,
-            final LayoutContext now, final Graphics2D g2d) {
+            final LayoutContext now, final LayoutView view) {
         final float calcScaleY;
         final float calcBaselineShift;
         final float realDescent = textLayoutInfo.getDescent();
@@ -694,7 +702,7 @@ public final class Mo extends AbstractJEuclidElement implements
                     realDescent);
         }
         if (this.isSymmetric()) {
-            final float middle = this.getMiddleShift(g2d, now);
+            final float middle = this.getMiddleShift(view, now);
             final float ascentAboveMiddle = targetNAscent - middle;
             final float descentBelowMiddle = targetNDescent + middle;
             final float halfHeight = Math.max(ascentAboveMiddle,
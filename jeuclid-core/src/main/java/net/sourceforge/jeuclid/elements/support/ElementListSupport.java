@@ -180,7 +180,7 @@ public final class ElementListSupport {
      */
     public static void addBackground(final Color backgroundColor,
             final LayoutInfo info, final boolean useCeil) {
-        if (backgroundColor != null) {
+        if ((backgroundColor != null) && info.isGraphicsWanted()) {
             final GraphicsObject fillObject;
             if (useCeil) {
                 fillObject = new FillRectObject(backgroundColor, (float) Math
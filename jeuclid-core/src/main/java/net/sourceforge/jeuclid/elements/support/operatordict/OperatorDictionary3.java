@@ -28,6 +28,7 @@ import java.util.Map;
 
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -235,9 +236,13 @@ public final class OperatorDictionary3 extends AbstractOperatorDictionary
     private Document loadDocument() throws SAXException, IOException {
         final InputStream is = OperatorDictionary3.class
                 .getResourceAsStream(OperatorDictionary3.DICTIONARY_FILE);
-        final Document doc = Parser.getInstance().getDocumentBuilder().parse(
-                is);
-        return doc;
+        final Parser parser = Parser.getInstance();
+        final DocumentBuilder builder = parser.getDocumentBuilder();
+        try {
+            return builder.parse(is);
+        } finally {
+            parser.returnDocumentBuilder(builder);
+        }
     }
 
     /**
@@ -238,10 +238,28 @@ public final class StringUtil {
     public static TextLayout createTextLayoutFromAttributedString(
             final Graphics2D g, final AttributedString aString,
             final LayoutContext context) {
+        return StringUtil.createTextLayoutFromAttributedString(g
+                .getFontRenderContext(), aString, context);
+    }
+
+    /**
+     * Safely creates a Text Layout from an attributed string. Unlike the
+     * TextLayout constructor, the String here may actually be empty.
+     *
+     * @param suggestedFontRenderContext
+     *            FontRenderContext to use. Only its transformation is used,
+     *            anti-aliasing is determined by the context.
+     * @param aString
+     *            an Attributed String
+     * @param context
+     *            Layout Context to use.
+     * @return a TextLayout
+     */
+    public static TextLayout createTextLayoutFromAttributedString(
+            final FontRenderContext suggestedFontRenderContext,
+            final AttributedString aString, final LayoutContext context) {
         final AttributedCharacterIterator charIter = aString.getIterator();
         final boolean empty = charIter.first() == CharacterIterator.DONE;
-        final FontRenderContext suggestedFontRenderContext = g
-                .getFontRenderContext();
         boolean antialiasing = (Boolean) context
                 .getParameter(Parameter.ANTIALIAS);
         if (!empty) {
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A graphics object which leaves setting up the Graphics state to its
+ * painter.
+ * <p>
+ * {@link BatchingPainter} sets the color and stroke of such objects only
+ * when they change from one object to the next, and uses the bounds to find
+ * objects which may be painted in a different order.
+ *
+ * @version $Revision$
+ */
+interface BatchableObject extends GraphicsObject {
+
+    /**
+     * @return the color to paint with, or null to keep the current color.
+     */
+    Color getColor();
+
+    /**
+     * @return the stroke to draw with, or null if nothing is stroked.
+     */
+    Stroke getStroke();
+
+    /**
+     * Retrieves the area painted by this object.
+     *
+     * @return the bounds relative to the painting position.
+     */
+    Rectangle2D getBounds();
+
+    /**
+     * Paints the object, assuming color and stroke are already set. The
+     * Graphics state must be left unchanged.
+     *
+     * @param x
+     *            X-offset of surrounding element.
+     * @param y
+     *            Y-Offset of baseline of surrounding element.
+     * @param g
+     *            Graphics Context.
+     */
+    void paintContent(float x, float y, Graphics2D g);
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Stroke;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Paints graphics objects, and changes the Graphics state only when needed.
+ * <p>
+ * Vector backends such as SVG generators write out every change of color,
+ * stroke or transformation. A {@link BatchableObject} is therefore painted
+ * with the color and stroke of the previous object if they match, and
+ * without touching the transformation where possible.
+ *
+ * @version $Revision$
+ */
+@NotThreadSafe
+final class BatchingPainter {
+
+    /**
+     * Space around the bounds of an object which may still be touched by
+     * antialiasing or hinting.
+     */
+    private static final double MARGIN = 1.0;
+
+    private final Graphics2D g;
+
+    private final Stroke originalStroke;
+
+    private Color color;
+
+    private Stroke stroke;
+
+    /**
+     * Creates a painter for the given Graphics context.
+     *
+     * @param graphics
+     *            Graphics context for painting.
+     */
+    BatchingPainter(final Graphics2D graphics) {
+        this.g = graphics;
+        this.originalStroke = graphics.getStroke();
+        this.readState();
+    }
+
+    private void readState() {
+        final Paint paint = this.g.getPaint();
+        if (paint instanceof Color) {
+            this.color = (Color) paint;
+        } else {
+            this.color = null;
+        }
+        this.stroke = this.g.getStroke();
+    }
+
+    /**
+     * Paints an object.
+     *
+     * @param object
+     *            the object.
+     * @param x
+     *            X-offset of surrounding element.
+     * @param y
+     *            Y-Offset of baseline of surrounding element.
+     */
+    void paint(final GraphicsObject object, final float x, final float y) {
+        if (object instanceof BatchableObject) {
+            final BatchableObject batchable = (BatchableObject) object;
+            final Color newColor = batchable.getColor();
+            if ((newColor != null) && !newColor.equals(this.color)) {
+                this.g.setColor(newColor);
+                this.color = newColor;
+            }
+            final Stroke newStroke = batchable.getStroke();
+            if ((newStroke != null) && !newStroke.equals(this.stroke)) {
+                this.g.setStroke(newStroke);
+                this.stroke = newStroke;
+            }
+            batchable.paintContent(x, y, this.g);
+        } else {
+            object.paint(x, y, this.g);
+            this.readState();
+        }
+    }
+
+    /**
+     * Restores the stroke the Graphics context had before painting.
+     */
+    void finish() {
+        if (this.stroke != this.originalStroke) {
+            this.g.setStroke(this.originalStroke);
+        }
+    }
+
+    /**
+     * Finds an order in which objects of the same color follow each other.
+     * <p>
+     * An object is moved back to the last run of objects with its color,
+     * unless it overlaps something painted in between. Objects of the same
+     * color may be painted in any order, so the result looks the same.
+     * Objects without color or bounds are never moved, and nothing is moved
+     * across them.
+     *
+     * @param objects
+     *            the objects in painting order.
+     * @param xs
+     *            x position of every object.
+     * @param ys
+     *            y position of every object.
+     * @return the indices of the objects in the new order.
+     */
+    static int[] group(final GraphicsObject[] objects, final float[] xs,
+            final float[] ys) {
+        final List<Color> colors = new ArrayList<>();
+        final List<Rectangle2D> areas = new ArrayList<>();
+        final List<List<Integer>> runs = new ArrayList<>();
+        for (int i = 0; i < objects.length; i++) {
+            final Rectangle2D area = BatchingPainter.getArea(objects[i],
+                    xs[i], ys[i]);
+            Color objectColor = null;
+            int target = -1;
+            if (area != null) {
+                objectColor = ((BatchableObject) objects[i]).getColor();
+                for (int run = runs.size() - 1; run >= 0; run--) {
+                    if (objectColor.equals(colors.get(run))) {
+                        target = run;
+                        break;
+                    }
+                    final Rectangle2D runArea = areas.get(run);
+                    if ((runArea == null) || runArea.intersects(area)) {
+                        break;
+                    }
+                }
+            }
+            if (target < 0) {
+                colors.add(objectColor);
+                areas.add(area);
+                runs.add(new ArrayList<Integer>());
+                target = runs.size() - 1;
+            } else {
+                areas.get(target).add(area);
+            }
+            runs.get(target).add(i);
+        }
+        final int[] order = new int[objects.length];
+        int pos = 0;
+        for (final List<Integer> run : runs) {
+            for (final int i : run) {
+                order[pos] = i;
+                pos++;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Retrieves the area an object may touch when painted.
+     *
+     * @param object
+     *            the object.
+     * @param x
+     *            x position of the object.
+     * @param y
+     *            y position of the object.
+     * @return the area, or null if it is not known.
+     */
+    static Rectangle2D getArea(final GraphicsObject object, final float x,
+            final float y) {
+        if (!(object instanceof BatchableObject)
+                || ((BatchableObject) object).getColor() == null) {
+            return null;
+        }
+        final Rectangle2D bounds = ((BatchableObject) object).getBounds();
+        if (bounds == null) {
+            return null;
+        }
+        return new Rectangle2D.Double(bounds.getX() + x
+                - BatchingPainter.MARGIN, bounds.getY() + y
+                - BatchingPainter.MARGIN, bounds.getWidth() + 2
+                * BatchingPainter.MARGIN, bounds.getHeight() + 2
+                * BatchingPainter.MARGIN);
+    }
+}
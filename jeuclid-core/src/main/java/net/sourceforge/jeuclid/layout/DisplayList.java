@@ -0,0 +1,310 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A laid out formula, flattened into a list of graphics objects with
+ * absolute positions.
+ * <p>
+ * Painting a display list does not access the DOM or the layout of the
+ * formula, it just paints every object in turn. Objects of the same color
+ * are moved next to each other where this does not change the result, and
+ * are painted by a {@link BatchingPainter}, which sets up the Graphics state
+ * only when it changes.
+ * <p>
+ * The bounds of every object, of every block of {@link #BLOCK_SIZE} objects,
+ * of every block of such blocks and so on are computed once, so painting
+ * skips whole blocks outside of the clip. Consecutive objects mostly belong
+ * to the same part of the formula, so painting a small part of a large
+ * formula takes time in proportion to that part.
+ * <p>
+ * A display list never changes, so it can be painted onto several Graphics
+ * contexts at the same time.
+ *
+ * @version $Revision$
+ */
+@ThreadSafe
+public final class DisplayList {
+
+    /**
+     * Number of objects or blocks which form a block of the next level.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    private final GraphicsObject[] objects;
+
+    private final float[] xs;
+
+    private final float[] ys;
+
+    private final float width;
+
+    private final float ascent;
+
+    private final float descent;
+
+    private final boolean antialias;
+
+    /**
+     * Bounds of the objects, and of the blocks of every level, as minimum x,
+     * minimum y, maximum x and maximum y. The last level is a single block
+     * containing everything.
+     */
+    private final float[][] bounds;
+
+    /**
+     * Creates a display list of objects which are painted at (0, 0).
+     *
+     * @param graphics
+     *            the objects.
+     * @param w
+     *            width of the formula.
+     * @param a
+     *            ascent of the formula.
+     * @param d
+     *            descent of the formula.
+     * @param antialiased
+     *            if true, antialiasing is turned on for painting.
+     */
+    DisplayList(final List<GraphicsObject> graphics, final float w,
+            final float a, final float d, final boolean antialiased) {
+        this(graphics.toArray(new GraphicsObject[graphics.size()]),
+                new float[graphics.size()], new float[graphics.size()], w, a,
+                d, antialiased);
+    }
+
+    private DisplayList(final GraphicsObject[] graphics, final float[] x,
+            final float[] y, final float w, final float a, final float d,
+            final boolean antialiased) {
+        final int[] order = BatchingPainter.group(graphics, x, y);
+        this.objects = new GraphicsObject[graphics.length];
+        this.xs = new float[graphics.length];
+        this.ys = new float[graphics.length];
+        for (int i = 0; i < order.length; i++) {
+            this.objects[i] = graphics[order[i]];
+            this.xs[i] = x[order[i]];
+            this.ys[i] = y[order[i]];
+        }
+        this.width = w;
+        this.ascent = a;
+        this.descent = d;
+        this.antialias = antialiased;
+        this.bounds = this.computeBounds();
+    }
+
+    private float[][] computeBounds() {
+        final List<float[]> levels = new ArrayList<>();
+        float[] level = new float[this.objects.length * 4];
+        for (int i = 0; i < this.objects.length; i++) {
+            final Rectangle2D area = BatchingPainter.getArea(this.objects[i],
+                    this.xs[i], this.ys[i]);
+            if (area == null) {
+                level[i * 4] = Float.NEGATIVE_INFINITY;
+                level[i * 4 + 1] = Float.NEGATIVE_INFINITY;
+                level[i * 4 + 2] = Float.POSITIVE_INFINITY;
+                level[i * 4 + 3] = Float.POSITIVE_INFINITY;
+            } else {
+                level[i * 4] = (float) area.getMinX();
+                level[i * 4 + 1] = (float) area.getMinY();
+                level[i * 4 + 2] = (float) area.getMaxX();
+                level[i * 4 + 3] = (float) area.getMaxY();
+            }
+        }
+        levels.add(level);
+        while (level.length > 4) {
+            final int count = level.length / 4;
+            final float[] blocks = new float[(count
+                    + DisplayList.BLOCK_SIZE - 1)
+                    / DisplayList.BLOCK_SIZE * 4];
+            for (int i = 0; i < count; i++) {
+                final int block = i / DisplayList.BLOCK_SIZE * 4;
+                if (i % DisplayList.BLOCK_SIZE == 0) {
+                    System.arraycopy(level, i * 4, blocks, block, 4);
+                } else {
+                    blocks[block] = Math.min(blocks[block], level[i * 4]);
+                    blocks[block + 1] = Math.min(blocks[block + 1],
+                            level[i * 4 + 1]);
+                    blocks[block + 2] = Math.max(blocks[block + 2],
+                            level[i * 4 + 2]);
+                    blocks[block + 3] = Math.max(blocks[block + 3],
+                            level[i * 4 + 3]);
+                }
+            }
+            level = blocks;
+            levels.add(level);
+        }
+        return levels.toArray(new float[levels.size()][]);
+    }
+
+    /**
+     * Flattens a completely laid out view.
+     *
+     * @param view
+     *            the view.
+     * @param antialiased
+     *            if true, antialiasing is turned on for painting.
+     * @param debug
+     *            if true, the boxes and baselines of all nodes are added.
+     * @return a new display list.
+     */
+    static DisplayList compile(final JEuclidView view,
+            final boolean antialiased, final boolean debug) {
+        final List<GraphicsObject> graphics = new ArrayList<>();
+        final List<float[]> positions = new ArrayList<>();
+        DisplayList.collect(view, view.getRoot(), 0, 0, debug, graphics,
+                positions);
+        final float[] x = new float[graphics.size()];
+        final float[] y = new float[graphics.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = positions.get(i)[0];
+            y[i] = positions.get(i)[1];
+        }
+        final LayoutInfo info = view.getInfo(view.getRoot());
+        return new DisplayList(graphics.toArray(new GraphicsObject[graphics
+                .size()]), x, y, info.getWidth(LayoutStage.STAGE2), info
+                .getAscentHeight(LayoutStage.STAGE2), info
+                .getDescentHeight(LayoutStage.STAGE2), antialiased);
+    }
+
+    private static void collect(final JEuclidView view,
+            final LayoutableNode node, final float x, final float y,
+            final boolean debug, final List<GraphicsObject> graphics,
+            final List<float[]> positions) {
+        final LayoutInfo info = view.getInfo(node);
+        if (debug) {
+            final float x2 = info.getWidth(LayoutStage.STAGE2);
+            final float y1 = -info.getAscentHeight(LayoutStage.STAGE2);
+            final float y2 = info.getDescentHeight(LayoutStage.STAGE2);
+            graphics.add(new LineObject(0, y1, x2, y1, 1, Color.BLUE));
+            graphics.add(new LineObject(0, y1, 0, y2, 1, Color.BLUE));
+            graphics.add(new LineObject(x2, y1, x2, y2, 1, Color.BLUE));
+            graphics.add(new LineObject(0, y2, x2, y2, 1, Color.BLUE));
+            graphics.add(new LineObject(0, 0, x2, 0, 1, Color.RED));
+            for (int i = 0; i < 5; i++) {
+                positions.add(new float[] { x, y });
+            }
+        }
+        for (final GraphicsObject go : info.getGraphicObjects()) {
+            graphics.add(go);
+            positions.add(new float[] { x, y });
+        }
+        for (final LayoutableNode child : node.getChildrenToDraw()) {
+            final LayoutInfo childInfo = view.getInfo(child);
+            DisplayList.collect(view, child, x
+                    + childInfo.getPosX(LayoutStage.STAGE2), y
+                    + childInfo.getPosY(LayoutStage.STAGE2), debug, graphics,
+                    positions);
+        }
+    }
+
+    /**
+     * Paints this display list onto a Graphics context. Only objects which
+     * may touch the clip of the context are painted.
+     *
+     * @param g
+     *            Graphics context for painting.
+     * @param x
+     *            x-offset for left edge
+     * @param y
+     *            y-offset for baseline
+     */
+    public void paint(final Graphics2D g, final float x, final float y) {
+        JEuclidView.setRenderingHints(g, this.antialias);
+        final BatchingPainter painter = new BatchingPainter(g);
+        final Rectangle clip = g.getClipBounds();
+        final double scale = Math.sqrt(Math.abs(g.getTransform()
+                .getDeterminant()));
+        if ((clip == null) || (scale == 0)) {
+            for (int i = 0; i < this.objects.length; i++) {
+                painter.paint(this.objects[i], x + this.xs[i], y
+                        + this.ys[i]);
+            }
+        } else if (this.objects.length > 0) {
+            // The clip in list coordinates, grown by one device pixel.
+            final double pixel = 1.0 / scale;
+            final float[] area = new float[] {
+                    (float) (clip.getMinX() - x - pixel),
+                    (float) (clip.getMinY() - y - pixel),
+                    (float) (clip.getMaxX() - x + pixel),
+                    (float) (clip.getMaxY() - y + pixel), };
+            this.paintBlock(painter, this.bounds.length - 1, 0, x, y, area);
+        }
+        painter.finish();
+    }
+
+    private void paintBlock(final BatchingPainter painter, final int level,
+            final int index, final float x, final float y, final float[] clip) {
+        final float[] levelBounds = this.bounds[level];
+        final int b = index * 4;
+        // Written so that NaN bounds count as visible.
+        if ((levelBounds[b] > clip[2]) || (levelBounds[b + 1] > clip[3])
+                || (levelBounds[b + 2] < clip[0])
+                || (levelBounds[b + 3] < clip[1])) {
+            return;
+        }
+        if (level == 0) {
+            painter.paint(this.objects[index], x + this.xs[index], y
+                    + this.ys[index]);
+        } else {
+            final int first = index * DisplayList.BLOCK_SIZE;
+            final int last = Math.min(first + DisplayList.BLOCK_SIZE,
+                    this.bounds[level - 1].length / 4);
+            for (int child = first; child < last; child++) {
+                this.paintBlock(painter, level - 1, child, x, y, clip);
+            }
+        }
+    }
+
+    /**
+     * @return number of objects in this display list.
+     */
+    public int size() {
+        return this.objects.length;
+    }
+
+    /**
+     * @return width of the formula.
+     */
+    public float getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return ascent height.
+     */
+    public float getAscentHeight() {
+        return this.ascent;
+    }
+
+    /**
+     * @return descent height.
+     */
+    public float getDescentHeight() {
+        return this.descent;
+    }
+}
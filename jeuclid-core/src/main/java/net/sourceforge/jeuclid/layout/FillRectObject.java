@@ -20,12 +20,13 @@ package net.sourceforge.jeuclid.layout;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Stroke;
 import java.awt.geom.Rectangle2D;
 
 /**
  * @version $Revision$
  */
-public class FillRectObject implements GraphicsObject {
+public class FillRectObject implements BatchableObject {
 
     private final Color c;
 
@@ -58,6 +59,26 @@ public class FillRectObject implements GraphicsObject {
     /** {@inheritDoc} */
     public void paint(final float x, final float y, final Graphics2D g) {
         g.setColor(this.c);
+        this.paintContent(x, y, g);
+    }
+
+    /** {@inheritDoc} */
+    public void paintContent(final float x, final float y, final Graphics2D g) {
         g.fill(new Rectangle2D.Float(x, y - this.a, this.w, this.a + this.d));
     }
+
+    /** {@inheritDoc} */
+    public Color getColor() {
+        return this.c;
+    }
+
+    /** {@inheritDoc} */
+    public Stroke getStroke() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public Rectangle2D getBounds() {
+        return new Rectangle2D.Float(0, -this.a, this.w, this.a + this.d);
+    }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+
+/**
+ * FontMetrics which are calculated from a {@link FontRenderContext} only,
+ * without the need for a Graphics context.
+ * <p>
+ * Integer values are rounded the same way as the default font metrics of
+ * the JDK, so that layout results do not differ from a layout done with a
+ * Graphics context using the same FontRenderContext.
+ *
+ * @version $Revision$
+ */
+final class FontRenderContextMetrics extends FontMetrics {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Rounding used by the JDK to convert the real metrics into ints.
+     */
+    private static final float ROUNDING_UP_VALUE = 0.95f;
+
+    private final transient FontRenderContext frc;
+
+    private final float ascent;
+
+    private final float descent;
+
+    private final float leading;
+
+    /**
+     * Default constructor.
+     *
+     * @param theFont
+     *            the Font.
+     * @param fontRenderContext
+     *            the FontRenderContext to measure in.
+     */
+    FontRenderContextMetrics(final Font theFont,
+            final FontRenderContext fontRenderContext) {
+        super(theFont);
+        this.frc = fontRenderContext;
+        final LineMetrics lm = theFont.getLineMetrics("", fontRenderContext);
+        this.ascent = lm.getAscent();
+        this.descent = lm.getDescent();
+        this.leading = lm.getLeading();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return this.frc;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getAscent() {
+        return (int) (FontRenderContextMetrics.ROUNDING_UP_VALUE + this.ascent);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getDescent() {
+        return (int) (FontRenderContextMetrics.ROUNDING_UP_VALUE + this.descent);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLeading() {
+        return (int) (FontRenderContextMetrics.ROUNDING_UP_VALUE
+                + this.descent + this.leading)
+                - (int) (FontRenderContextMetrics.ROUNDING_UP_VALUE + this.descent);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int charWidth(final char ch) {
+        return (int) (0.5 + this.font.getStringBounds(String.valueOf(ch),
+                this.frc).getWidth());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int stringWidth(final String str) {
+        return (int) (0.5 + this.font.getStringBounds(str, this.frc)
+                .getWidth());
+    }
+}
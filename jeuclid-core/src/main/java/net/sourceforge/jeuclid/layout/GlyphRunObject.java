@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A run of already positioned glyphs in a single font.
+ * <p>
+ * Unlike {@link TextObject}, painting a glyph run does not involve any text
+ * shaping.
+ *
+ * @version $Revision$
+ */
+final class GlyphRunObject implements BatchableObject {
+
+    private final GlyphVector glyphs;
+
+    private final Color color;
+
+    private final AffineTransform trans;
+
+    /**
+     * Default Constructor.
+     *
+     * @param glyphVector
+     *            the glyphs, must not be modified afterwards.
+     * @param textColor
+     *            text color.
+     * @param transform
+     *            Transformation to apply before drawing.
+     */
+    GlyphRunObject(final GlyphVector glyphVector, final Color textColor,
+            final AffineTransform transform) {
+        this.glyphs = glyphVector;
+        this.color = textColor;
+        this.trans = transform;
+    }
+
+    /**
+     * @return the glyphs.
+     */
+    GlyphVector getGlyphs() {
+        return this.glyphs;
+    }
+
+    /** {@inheritDoc} */
+    public Color getColor() {
+        return this.color;
+    }
+
+    /** {@inheritDoc} */
+    public Stroke getStroke() {
+        return null;
+    }
+
+    /**
+     * @return the transformation applied before drawing.
+     */
+    AffineTransform getTransform() {
+        return this.trans;
+    }
+
+    /** {@inheritDoc} */
+    public Rectangle2D getBounds() {
+        return this.trans.createTransformedShape(
+                this.glyphs.getVisualBounds()).getBounds2D();
+    }
+
+    /** {@inheritDoc} */
+    public void paint(final float x, final float y, final Graphics2D g) {
+        g.setColor(this.color);
+        this.paintContent(x, y, g);
+    }
+
+    /** {@inheritDoc} */
+    public void paintContent(final float x, final float y, final Graphics2D g) {
+        if ((this.trans.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            g.drawGlyphVector(this.glyphs, x
+                    + (float) this.trans.getTranslateX(), y
+                    + (float) this.trans.getTranslateY());
+        } else {
+            final AffineTransform oldTrans = g.getTransform();
+            g.translate(x, y);
+            g.transform(this.trans);
+            g.drawGlyphVector(this.glyphs, 0, 0);
+            g.setTransform(oldTrans);
+        }
+    }
+}
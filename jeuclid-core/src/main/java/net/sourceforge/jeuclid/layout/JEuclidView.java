@@ -18,12 +18,12 @@
 
 package net.sourceforge.jeuclid.layout;
 
-import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.geom.Line2D;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
@@ -55,13 +55,33 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
 
     private static final Log LOGGER = LogFactory.getLog(JEuclidView.class);
 
+    /**
+     * FontRenderContext used if neither a Graphics context nor a
+     * FontRenderContext is given. This is the same as the one of a default
+     * image Graphics context.
+     */
+    private static final FontRenderContext DEFAULT_FRC = new FontRenderContext(
+            null, false, false);
+
     private final LayoutableDocument document;
 
     private final Map<Node, LayoutInfo> layoutMap;
 
     private final LayoutContext context;
 
-    private final Graphics2D graphics;
+    private Graphics2D graphics;
+
+    private final FontRenderContext fontRenderContext;
+
+    private final Map<Font, FontMetrics> fontMetrics;
+
+    private boolean metricsOnly;
+
+    private SubtreeReuse subtreeReuse;
+
+    private int reusedSubtrees;
+
+    private DisplayList displayList;
 
     /**
      * Default Constructor.
@@ -71,13 +91,44 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
      * @param layoutGraphics
      *            Graphics context to use for layout calculations. This should
      *            be compatible to the context used for painting, but does not
-     *            have to be the same. If it is null, a default Graphics context
-     *            is created.
+     *            have to be the same. If it is null, the layout is done with
+     *            a default FontRenderContext and no Graphics context.
      * @param layoutContext
      *            layoutContext to use.
      */
     public JEuclidView(final Node node, final LayoutContext layoutContext,
             final Graphics2D layoutGraphics) {
+        this(node, layoutContext, layoutGraphics, false);
+    }
+
+    /**
+     * Constructor with optional metrics-only layout.
+     * <p>
+     * A metrics-only view computes the extents ({@link #getWidth()},
+     * {@link #getAscentHeight()}, {@link #getDescentHeight()}) and positions
+     * of all nodes, but does not keep any {@link GraphicsObject}s. This is
+     * all that is needed to determine the size of a formula. If such a view
+     * is drawn, it is transparently re-layouted with full graphics first.
+     * 
+     * @param node
+     *            document to layout.
+     * @param layoutGraphics
+     *            Graphics context to use for layout calculations. If it is
+     *            null, the layout is done with a default FontRenderContext
+     *            and no Graphics context.
+     * @param layoutContext
+     *            layoutContext to use.
+     * @param metrics
+     *            if true, only metrics are calculated.
+     */
+    public JEuclidView(final Node node, final LayoutContext layoutContext,
+            final Graphics2D layoutGraphics, final boolean metrics) {
+        this(node, layoutContext, layoutGraphics, null, metrics);
+    }
+
+    private JEuclidView(final Node node, final LayoutContext layoutContext,
+            final Graphics2D layoutGraphics, final FontRenderContext frc,
+            final boolean metrics) {
         assert node != null : "Node must not be null";
         assert layoutContext != null : "LayoutContext must not be null";
         if (node instanceof LayoutableDocument) {
@@ -86,15 +137,48 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
             this.document = DOMBuilder.getInstance().createJeuclidDom(node,
                     true, true);
         }
-        if (layoutGraphics == null) {
-            final Image tempimage = new BufferedImage(1, 1,
-                    BufferedImage.TYPE_INT_ARGB);
-            this.graphics = (Graphics2D) tempimage.getGraphics();
+        this.graphics = layoutGraphics;
+        if ((frc == null) && (layoutGraphics == null)) {
+            this.fontRenderContext = JEuclidView.DEFAULT_FRC;
         } else {
-            this.graphics = layoutGraphics;
+            this.fontRenderContext = frc;
         }
         this.context = layoutContext;
         this.layoutMap = new HashMap<>();
+        this.fontMetrics = new HashMap<>();
+        this.metricsOnly = metrics;
+    }
+
+    /**
+     * Creates a view which is layouted without a Graphics context.
+     * <p>
+     * All text is measured in the given FontRenderContext. Such a view is
+     * cheap to create and does not need any raster or vector graphics
+     * context for layout. It can be drawn onto any compatible Graphics
+     * context.
+     * 
+     * @param node
+     *            document to layout.
+     * @param layoutContext
+     *            layoutContext to use.
+     * @param frc
+     *            FontRenderContext to use for layout calculations. If it is
+     *            null, a default FontRenderContext is used.
+     * @param metrics
+     *            if true, only metrics are calculated, see
+     *            {@link #JEuclidView(Node, LayoutContext, Graphics2D, boolean)}
+     * @return a new view.
+     */
+    public static JEuclidView createHeadlessView(final Node node,
+            final LayoutContext layoutContext, final FontRenderContext frc,
+            final boolean metrics) {
+        final FontRenderContext realFrc;
+        if (frc == null) {
+            realFrc = JEuclidView.DEFAULT_FRC;
+        } else {
+            realFrc = frc;
+        }
+        return new JEuclidView(node, layoutContext, null, realFrc, metrics);
     }
 
     /**
@@ -175,9 +259,55 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
      *            the same.
      */
     public void draw(final Graphics2D g, final float x, final float y) {
+        this.getDisplayList().paint(g, x, y);
+    }
+
+    /**
+     * Retrieves the display list of this view. The display list is compiled
+     * once and reused until the document is modified.
+     * 
+     * @return the display list for the current layout.
+     */
+    public DisplayList getDisplayList() {
+        this.layoutForDrawing();
+        if (this.displayList == null) {
+            this.displayList = DisplayList.compile(this, (Boolean) this.context
+                    .getParameter(Parameter.ANTIALIAS), (Boolean) this.context
+                    .getParameter(Parameter.DEBUG));
+        }
+        return this.displayList;
+    }
+
+    /**
+     * Lays out this view completely, including all graphics objects.
+     */
+    void layoutForDrawing() {
+        if (this.metricsOnly) {
+            this.metricsOnly = false;
+            this.layoutMap.clear();
+        }
         this.layout();
+    }
+
+    /**
+     * @return the root node of this view.
+     */
+    LayoutableNode getRoot() {
+        return this.document;
+    }
+
+    /**
+     * Adds the rendering hints used for drawing formulas to a Graphics
+     * context.
+     * 
+     * @param g
+     *            Graphics context for painting.
+     * @param antialias
+     *            if true, antialiasing is turned on.
+     */
+    static void setRenderingHints(final Graphics2D g, final boolean antialias) {
         final RenderingHints hints = g.getRenderingHints();
-        if ((Boolean) this.context.getParameter(Parameter.ANTIALIAS)) {
+        if (antialias) {
             hints.add(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
                     RenderingHints.VALUE_ANTIALIAS_ON));
         }
@@ -186,56 +316,72 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
         hints.add(new RenderingHints(RenderingHints.KEY_RENDERING,
                 RenderingHints.VALUE_RENDER_QUALITY));
         g.setRenderingHints(hints);
-
-        final boolean debug = (Boolean) this.context
-                .getParameter(Parameter.DEBUG);
-        this.drawNode(this.document, g, x, y, debug);
-
     }
 
-    private void drawNode(final LayoutableNode node, final Graphics2D g,
-            final float x, final float y, final boolean debug) {
-
-        final LayoutInfo myInfo = this.getInfo(node);
-        if (debug) {
-            final float x1 = x;
-            final float x2 = x + myInfo.getWidth(LayoutStage.STAGE2);
-            final float y1 = y - myInfo.getAscentHeight(LayoutStage.STAGE2);
-            final float y2 = y + myInfo.getDescentHeight(LayoutStage.STAGE2);
-            g.setColor(Color.BLUE);
-            g.draw(new Line2D.Float(x1, y1, x2, y1));
-            g.draw(new Line2D.Float(x1, y1, x1, y2));
-            g.draw(new Line2D.Float(x2, y1, x2, y2));
-            g.draw(new Line2D.Float(x1, y2, x2, y2));
-            g.setColor(Color.RED);
-            g.draw(new Line2D.Float(x1, y, x2, y));
-        }
-        for (final GraphicsObject go : myInfo.getGraphicObjects()) {
-            go.paint(x, y, g);
-        }
-
-        for (final LayoutableNode child : node.getChildrenToDraw()) {
-            final LayoutInfo childInfo = this.getInfo(child);
-            this.drawNode(child, g,
-                    x + childInfo.getPosX(LayoutStage.STAGE2), y
-                            + childInfo.getPosY(LayoutStage.STAGE2), debug);
+    private LayoutInfo layout() {
+        if (!LayoutStage.STAGE2.equals(this.getInfo(this.document)
+                .getLayoutStage())
+                && Boolean.TRUE.equals(this.context
+                        .getParameter(Parameter.REUSE_SUBTREE_LAYOUT))) {
+            this.subtreeReuse = new SubtreeReuse(this, this.document);
+            try {
+                return this.layout(this.document, LayoutStage.STAGE2,
+                        this.context);
+            } finally {
+                this.reusedSubtrees += this.subtreeReuse.getReusedCount();
+                this.subtreeReuse = null;
+            }
         }
+        return this.layout(this.document, LayoutStage.STAGE2, this.context);
     }
 
-    private LayoutInfo layout() {
-        return this.layout(this.document, LayoutStage.STAGE2, this.context);
+    /**
+     * Registers this view for changes of the given node.
+     * 
+     * @param node
+     *            a node which is laid out in this view.
+     */
+    void listenTo(final LayoutableNode node) {
+        if (node instanceof EventTarget) {
+            final EventTarget evtNode = (EventTarget) node;
+            evtNode.addEventListener("DOMSubtreeModified", this, false);
+            evtNode.addEventListener(Mo.MOEVENT, this, false);
+        }
     }
 
     private LayoutInfo layout(final LayoutableNode node,
             final LayoutStage toStage, final LayoutContext parentContext) {
         final LayoutInfo info = this.getInfo(node);
+        this.listenTo(node);
 
-        if (node instanceof EventTarget) {
-            final EventTarget evtNode = (EventTarget) node;
-            evtNode.addEventListener("DOMSubtreeModified", this, false);
-            evtNode.addEventListener(Mo.MOEVENT, this, false);
+        final List<Object> reuseKey;
+        if ((this.subtreeReuse != null)
+                && LayoutStage.NONE.equals(info.getLayoutStage())) {
+            reuseKey = this.subtreeReuse.getKey(node, parentContext);
+        } else {
+            reuseKey = null;
         }
+        if ((reuseKey == null) || !this.subtreeReuse.restore(reuseKey, node)) {
+            this.layoutStage1(node, info, parentContext);
+            if (reuseKey != null) {
+                this.subtreeReuse.store(reuseKey, node);
+            }
+        }
+        if (LayoutStage.STAGE1.equals(info.getLayoutStage())
+                && LayoutStage.STAGE2.equals(toStage)) {
+            int count = 0;
+            for (final LayoutableNode l : node.getChildrenToLayout()) {
+                this.layout(l, LayoutStage.STAGE2, node
+                        .getChildLayoutContext(count, parentContext));
+                count++;
+            }
+            node.layoutStage2(this, info, parentContext);
+        }
+        return info;
+    }
 
+    private void layoutStage1(final LayoutableNode node,
+            final LayoutInfo info, final LayoutContext parentContext) {
         if (LayoutStage.NONE.equals(info.getLayoutStage())) {
             LayoutStage childMinStage = LayoutStage.STAGE2;
             int count = 0;
@@ -249,17 +395,6 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
             }
             node.layoutStage1(this, info, childMinStage, parentContext);
         }
-        if (LayoutStage.STAGE1.equals(info.getLayoutStage())
-                && LayoutStage.STAGE2.equals(toStage)) {
-            int count = 0;
-            for (final LayoutableNode l : node.getChildrenToLayout()) {
-                this.layout(l, LayoutStage.STAGE2, node
-                        .getChildLayoutContext(count, parentContext));
-                count++;
-            }
-            node.layoutStage2(this, info, parentContext);
-        }
-        return info;
     }
 
     /** {@inheritDoc} */
@@ -267,8 +402,8 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
         if (node == null) {
             return null;
         }
-        LayoutInfo info = this.layoutMap.computeIfAbsent(node, k -> new LayoutInfoImpl());
-        return info;
+        return this.layoutMap.computeIfAbsent(node,
+                k -> new LayoutInfoImpl(!this.metricsOnly));
     }
 
     /**
@@ -295,11 +430,78 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
         return info.getDescentHeight(LayoutStage.STAGE2);
     }
 
-    /** {@inheritDoc} */
+    /**
+     * @return true if this view currently only holds metrics and no
+     *         graphics objects.
+     */
+    public boolean isMetricsOnly() {
+        return this.metricsOnly;
+    }
+
+    /**
+     * @return number of subtrees whose layout was copied from an identical
+     *         subtree, see {@link Parameter#REUSE_SUBTREE_LAYOUT}.
+     */
+    public int getReusedSubtreeCount() {
+        return this.reusedSubtrees;
+    }
+
+    /**
+     * @return the LayoutContext used for this view.
+     */
+    public LayoutContext getLayoutContext() {
+        return this.context;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If this view was created without a Graphics context, a compatible
+     * image Graphics context is created on first use.
+     */
     public Graphics2D getGraphics() {
+        if (this.graphics == null) {
+            final Graphics2D g = new BufferedImage(1, 1,
+                    BufferedImage.TYPE_INT_ARGB).createGraphics();
+            g.setTransform(this.fontRenderContext.getTransform());
+            if (this.fontRenderContext.isAntiAliased()) {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                        RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            }
+            if (this.fontRenderContext.usesFractionalMetrics()) {
+                g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                        RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            }
+            this.graphics = g;
+        }
         return this.graphics;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        if (this.fontRenderContext == null) {
+            return this.graphics.getFontRenderContext();
+        }
+        return this.fontRenderContext;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public FontMetrics getFontMetrics(final Font font) {
+        FontMetrics metrics = this.fontMetrics.get(font);
+        if (metrics == null) {
+            if (this.fontRenderContext == null) {
+                metrics = this.graphics.getFontMetrics(font);
+            } else {
+                metrics = new FontRenderContextMetrics(font,
+                        this.fontRenderContext);
+            }
+            this.fontMetrics.put(font, metrics);
+        }
+        return metrics;
+    }
+
     /** {@inheritDoc} */
     public void handleEvent(final Event evt) {
         final EventTarget origin = evt.getCurrentTarget();
@@ -307,6 +509,7 @@ public class JEuclidView implements AbstractView, LayoutView, EventListener {
             final LayoutableNode lorigin = (LayoutableNode) origin;
             final LayoutInfo info = this.getInfo(lorigin);
             info.setLayoutStage(LayoutStage.NONE);
+            this.displayList = null;
         }
     }
 
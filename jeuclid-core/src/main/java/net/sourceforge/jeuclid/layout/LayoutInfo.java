@@ -245,4 +245,15 @@ public interface LayoutInfo {
      * @return Graphic objects associated with this node.
      */
     List<GraphicsObject> getGraphicObjects();
+
+    /**
+     * Tells if graphic objects are kept for this node. If not, only the
+     * extents are needed, and layout code should not create any
+     * {@link GraphicsObject}s.
+     * 
+     * @return true if graphic objects should be created.
+     */
+    default boolean isGraphicsWanted() {
+        return true;
+    }
 }
@@ -18,6 +18,7 @@
 
 package net.sourceforge.jeuclid.layout;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -64,8 +65,89 @@ public class LayoutInfoImpl implements LayoutInfo {
      * Default Constructor.
      */
     public LayoutInfoImpl() {
+        this(true);
+    }
+
+    /**
+     * Constructor for metrics-only layout.
+     * 
+     * @param keepGraphics
+     *            if false, all graphic objects set on this info are dropped
+     *            immediately, and {@link #getGraphicObjects()} is always
+     *            empty. Only the extents are kept.
+     */
+    public LayoutInfoImpl(final boolean keepGraphics) {
         this.layoutStage = LayoutStage.NONE;
+        if (keepGraphics) {
+            this.graphicObjects = new ArrayList<>();
+        } else {
+            this.graphicObjects = LayoutInfoImpl.DiscardingList.INSTANCE;
+        }
+    }
+
+    /**
+     * Copy constructor. The copy keeps its own list of graphic objects.
+     * 
+     * @param other
+     *            the info to copy.
+     */
+    LayoutInfoImpl(final LayoutInfoImpl other) {
         this.graphicObjects = new ArrayList<>();
+        this.copyFrom(other);
+    }
+
+    /**
+     * Sets all values and graphic objects of this info to those of another.
+     * 
+     * @param other
+     *            the info to copy from.
+     */
+    final void copyFrom(final LayoutInfoImpl other) {
+        this.layoutStage = other.layoutStage;
+        this.ascentHeightS1 = other.ascentHeightS1;
+        this.ascentHeightS2 = other.ascentHeightS2;
+        this.descentHeightS1 = other.descentHeightS1;
+        this.descentHeightS2 = other.descentHeightS2;
+        this.horizontalS1 = other.horizontalS1;
+        this.horizontalS2 = other.horizontalS2;
+        this.widthS1 = other.widthS1;
+        this.widthS2 = other.widthS2;
+        this.posXS1 = other.posXS1;
+        this.posXS2 = other.posXS2;
+        this.posYS1 = other.posYS1;
+        this.posYS2 = other.posYS2;
+        this.stretchAscent = other.stretchAscent;
+        this.stretchDescent = other.stretchDescent;
+        this.stretchWidth = other.stretchWidth;
+        this.graphicObjects.clear();
+        this.graphicObjects.addAll(other.graphicObjects);
+    }
+
+    /**
+     * A list which accepts, but ignores all additions.
+     */
+    private static final class DiscardingList extends
+            AbstractList<GraphicsObject> {
+        private static final DiscardingList INSTANCE = new DiscardingList();
+
+        private DiscardingList() {
+            // Empty on purpose.
+        }
+
+        @Override
+        public GraphicsObject get(final int index) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public void add(final int index, final GraphicsObject element) {
+            // Ignored on purpose.
+        }
     }
 
     /** {@inheritDoc} */
@@ -189,6 +271,12 @@ public class LayoutInfoImpl implements LayoutInfo {
         return this.graphicObjects;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean isGraphicsWanted() {
+        return this.graphicObjects != LayoutInfoImpl.DiscardingList.INSTANCE;
+    }
+
     /** {@inheritDoc} */
     public float getStretchWidth() {
         return this.stretchWidth;
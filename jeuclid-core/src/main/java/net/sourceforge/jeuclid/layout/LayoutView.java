@@ -18,7 +18,10 @@
 
 package net.sourceforge.jeuclid.layout;
 
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
 
 /**
  * @version $Revision$
@@ -35,8 +38,40 @@ public interface LayoutView {
     LayoutInfo getInfo(LayoutableNode child);
 
     /**
+     * Retrieve the Layout Graphics Context.
+     * <p>
+     * Layout code should use {@link #getFontRenderContext()} and
+     * {@link #getFontMetrics(Font)} instead, as a view may not have a
+     * Graphics context and may have to create one on demand.
+     * 
      * @return the Layout Graphics Context.
      */
     Graphics2D getGraphics();
 
+    /**
+     * Retrieve the FontRenderContext to use for all text layout.
+     * <p>
+     * The default implementation uses the context of
+     * {@link #getGraphics()}.
+     * 
+     * @return the FontRenderContext to use for all text layout.
+     */
+    default FontRenderContext getFontRenderContext() {
+        return this.getGraphics().getFontRenderContext();
+    }
+
+    /**
+     * Retrieve the metrics for the given font in this views
+     * {@link #getFontRenderContext()}.
+     * <p>
+     * The default implementation uses the metrics of {@link #getGraphics()}.
+     * 
+     * @param font
+     *            the Font
+     * @return FontMetrics for the Font.
+     */
+    default FontMetrics getFontMetrics(final Font font) {
+        return this.getGraphics().getFontMetrics(font);
+    }
+
 }
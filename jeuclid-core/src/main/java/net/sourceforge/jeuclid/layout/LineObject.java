@@ -23,11 +23,12 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Stroke;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  * @version $Revision$
  */
-public class LineObject implements GraphicsObject {
+public class LineObject implements BatchableObject {
 
     private final float x1;
 
@@ -41,7 +42,7 @@ public class LineObject implements GraphicsObject {
 
     private final Color col;
 
-    private final boolean dash;
+    private final Stroke stroke;
 
     /**
      * Default Constructor.
@@ -68,7 +69,7 @@ public class LineObject implements GraphicsObject {
         this.y2 = offsetY2;
         this.width = lineWidth;
         this.col = color;
-        this.dash = false;
+        this.stroke = new BasicStroke(lineWidth);
     }
 
     /**
@@ -98,24 +99,49 @@ public class LineObject implements GraphicsObject {
         this.y2 = offsetY2;
         this.width = lineWidth;
         this.col = color;
-        this.dash = dashed;
+        if (dashed) {
+            final float dashWidth = 3.0f * lineWidth;
+            this.stroke = new BasicStroke(lineWidth, BasicStroke.CAP_SQUARE,
+                    BasicStroke.JOIN_BEVEL, lineWidth, new float[] {
+                            dashWidth, dashWidth, }, 0);
+        } else {
+            this.stroke = new BasicStroke(lineWidth);
+        }
     }
 
     /** {@inheritDoc} */
     public void paint(final float x, final float y, final Graphics2D g) {
         g.setColor(this.col);
         final Stroke oldStroke = g.getStroke();
-        if (this.dash) {
-            final float dashWidth = 3.0f * this.width;
-            g.setStroke(new BasicStroke(this.width, BasicStroke.CAP_SQUARE,
-                    BasicStroke.JOIN_BEVEL, this.width, new float[] {
-                            dashWidth, dashWidth, }, 0));
-        } else {
-            g.setStroke(new BasicStroke(this.width));
-        }
+        g.setStroke(this.stroke);
+        this.paintContent(x, y, g);
+        g.setStroke(oldStroke);
+    }
+
+    /** {@inheritDoc} */
+    public void paintContent(final float x, final float y, final Graphics2D g) {
         g.draw(new Line2D.Float(x + this.x1, y + this.y1, x + this.x2, y
                 + this.y2));
-        g.setStroke(oldStroke);
+    }
+
+    /** {@inheritDoc} */
+    public Color getColor() {
+        return this.col;
+    }
 
+    /** {@inheritDoc} */
+    public Stroke getStroke() {
+        return this.stroke;
+    }
+
+    /** {@inheritDoc} */
+    public Rectangle2D getBounds() {
+        final Rectangle2D bounds = new Rectangle2D.Float(Math.min(this.x1,
+                this.x2), Math.min(this.y1, this.y2), Math.abs(this.x2
+                - this.x1), Math.abs(this.y2 - this.y1));
+        bounds.setRect(bounds.getX() - this.width, bounds.getY() - this.width,
+                bounds.getWidth() + 2 * this.width, bounds.getHeight() + 2
+                        * this.width);
+        return bounds;
     }
 }
@@ -3,17 +3,16 @@ package net.sourceforge.jeuclid.layout;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 
-public class Path2DShapeObject implements GraphicsObject
+public class Path2DShapeObject implements BatchableObject
 {
 
     private final Path2D path2D;
-    private final float width;
 
     private final Color col;
 
-    private final boolean dash;
-    private final EdgeStyle edgeStyle;
+    private final Stroke stroke;
 
     public enum EdgeStyle
     {
@@ -24,17 +23,7 @@ public class Path2DShapeObject implements GraphicsObject
             EdgeStyle edgeStyle)
     {
         this.path2D = path2D;
-        this.width = width;
         this.col = col;
-        this.dash = dash;
-        this.edgeStyle = edgeStyle;
-    }
-
-    @Override
-    public void paint(float x, float y, Graphics2D g)
-    {
-        g.setColor(this.col);
-        final Stroke oldStroke = g.getStroke();
         int cap = BasicStroke.CAP_SQUARE;
         int join = BasicStroke.JOIN_MITER;
         switch (edgeStyle)
@@ -47,20 +36,50 @@ public class Path2DShapeObject implements GraphicsObject
         default:
             break;
         }
-        if (this.dash)
+        if (dash)
         {
-            final float dashWidth = 3.0f * this.width;
-            g.setStroke(new BasicStroke(this.width, cap, join, this.width,
-                    new float[] { dashWidth, dashWidth, }, 0));
+            final float dashWidth = 3.0f * width;
+            this.stroke = new BasicStroke(width, cap, join, width,
+                    new float[] { dashWidth, dashWidth, }, 0);
         }
         else
         {
-            g.setStroke(new BasicStroke(this.width, cap, join));
+            this.stroke = new BasicStroke(width, cap, join);
         }
-        AffineTransform transform = g.getTransform();
-        g.translate(x, y);
-        g.draw(this.path2D);
-        g.setTransform(transform);
+    }
+
+    @Override
+    public void paint(float x, float y, Graphics2D g)
+    {
+        g.setColor(this.col);
+        final Stroke oldStroke = g.getStroke();
+        g.setStroke(this.stroke);
+        this.paintContent(x, y, g);
         g.setStroke(oldStroke);
     }
+
+    @Override
+    public void paintContent(float x, float y, Graphics2D g)
+    {
+        g.draw(AffineTransform.getTranslateInstance(x, y)
+                .createTransformedShape(this.path2D));
+    }
+
+    @Override
+    public Color getColor()
+    {
+        return this.col;
+    }
+
+    @Override
+    public Stroke getStroke()
+    {
+        return this.stroke;
+    }
+
+    @Override
+    public Rectangle2D getBounds()
+    {
+        return this.stroke.createStrokedShape(this.path2D).getBounds2D();
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xmlgraphics.java2d.AbstractGraphics2D;
+import org.apache.xmlgraphics.java2d.GraphicContext;
+
+/**
+ * Graphics context which records everything painted onto it as
+ * {@link GlyphRunObject}s and {@link ShapeObject}s.
+ * <p>
+ * Each recorded object carries the complete transformation at the time it
+ * was painted, so the recorded objects are painted at (0, 0).
+ *
+ * @version $Revision$
+ */
+final class RecordingGraphics2D extends AbstractGraphics2D {
+
+    /**
+     * Logger for this class
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(RecordingGraphics2D.class);
+
+    private final List<GraphicsObject> recorded;
+
+    private final FontRenderContext fontRenderContext;
+
+    /**
+     * Creates a new recording context.
+     *
+     * @param target
+     *            list to add the recorded objects to.
+     * @param frc
+     *            FontRenderContext used for text.
+     */
+    RecordingGraphics2D(final List<GraphicsObject> target,
+            final FontRenderContext frc) {
+        super(false);
+        this.gc = new GraphicContext();
+        this.recorded = target;
+        this.fontRenderContext = frc;
+    }
+
+    private RecordingGraphics2D(final RecordingGraphics2D parent) {
+        super(parent);
+        this.recorded = parent.recorded;
+        this.fontRenderContext = parent.fontRenderContext;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void draw(final Shape s) {
+        final Stroke stroke = this.getStroke();
+        if (stroke instanceof BasicStroke) {
+            this.recorded.add(new ShapeObject(new Path2D.Float(s), this
+                    .getColor(), stroke, this.getTransform()));
+        } else {
+            this.fill(stroke.createStrokedShape(s));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void fill(final Shape s) {
+        this.recorded.add(new ShapeObject(new Path2D.Float(s),
+                this.getColor(), null, this.getTransform()));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void drawGlyphVector(final GlyphVector g, final float x,
+            final float y) {
+        final AffineTransform transform = this.getTransform();
+        transform.translate(x, y);
+        this.recorded.add(new GlyphRunObject(g, this.getColor(), transform));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void drawString(final String str, final float x, final float y) {
+        if (str.length() > 0) {
+            new TextLayout(str, this.getFont(), this.fontRenderContext).draw(
+                    this, x, y);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return this.fontRenderContext;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public FontMetrics getFontMetrics(final Font f) {
+        return new FontRenderContextMetrics(f, this.fontRenderContext);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Graphics create() {
+        return new RecordingGraphics2D(this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void drawRenderedImage(final RenderedImage img,
+            final AffineTransform xform) {
+        this.ignoreImage();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void drawRenderableImage(final RenderableImage img,
+            final AffineTransform xform) {
+        this.ignoreImage();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean drawImage(final Image img, final int x, final int y,
+            final ImageObserver observer) {
+        this.ignoreImage();
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean drawImage(final Image img, final int x, final int y,
+            final int width, final int height, final ImageObserver observer) {
+        this.ignoreImage();
+        return true;
+    }
+
+    private void ignoreImage() {
+        // Layout objects never paint images.
+        RecordingGraphics2D.LOGGER.warn("Image not recorded");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setXORMode(final Color c1) {
+        // Not supported.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void copyArea(final int x, final int y, final int width,
+            final int height, final int dx, final int dy) {
+        // Not supported.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void dispose() {
+        // Nothing to release.
+    }
+}
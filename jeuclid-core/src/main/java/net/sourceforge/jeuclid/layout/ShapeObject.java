@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * An arbitrary shape, either stroked or filled.
+ *
+ * @version $Revision$
+ */
+final class ShapeObject implements BatchableObject {
+
+    private final Shape shape;
+
+    private final Color color;
+
+    private final Stroke stroke;
+
+    private final AffineTransform trans;
+
+    /**
+     * Default Constructor.
+     *
+     * @param theShape
+     *            the shape, must not be modified afterwards.
+     * @param shapeColor
+     *            color of the shape.
+     * @param shapeStroke
+     *            stroke to draw the outline with, or null to fill the shape.
+     * @param transform
+     *            Transformation to apply before drawing.
+     */
+    ShapeObject(final Shape theShape, final Color shapeColor,
+            final Stroke shapeStroke, final AffineTransform transform) {
+        this.shape = theShape;
+        this.color = shapeColor;
+        this.stroke = shapeStroke;
+        this.trans = transform;
+    }
+
+    /**
+     * @return the shape.
+     */
+    Shape getShape() {
+        return this.shape;
+    }
+
+    /** {@inheritDoc} */
+    public Color getColor() {
+        return this.color;
+    }
+
+    /** {@inheritDoc} */
+    public Stroke getStroke() {
+        return this.stroke;
+    }
+
+    /**
+     * @return the transformation applied before drawing.
+     */
+    AffineTransform getTransform() {
+        return this.trans;
+    }
+
+    /** {@inheritDoc} */
+    public Rectangle2D getBounds() {
+        Shape painted = this.shape;
+        if (this.stroke != null) {
+            painted = this.stroke.createStrokedShape(painted);
+        }
+        return this.trans.createTransformedShape(painted).getBounds2D();
+    }
+
+    /** {@inheritDoc} */
+    public void paint(final float x, final float y, final Graphics2D g) {
+        g.setColor(this.color);
+        final Stroke oldStroke = g.getStroke();
+        if (this.stroke != null) {
+            g.setStroke(this.stroke);
+        }
+        this.paintContent(x, y, g);
+        g.setStroke(oldStroke);
+    }
+
+    /** {@inheritDoc} */
+    public void paintContent(final float x, final float y, final Graphics2D g) {
+        if ((this.trans.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0) {
+            final Shape moved = AffineTransform.getTranslateInstance(
+                    x + this.trans.getTranslateX(),
+                    y + this.trans.getTranslateY()).createTransformedShape(
+                    this.shape);
+            if (this.stroke == null) {
+                g.fill(moved);
+            } else {
+                g.draw(moved);
+            }
+        } else {
+            final AffineTransform oldTrans = g.getTransform();
+            g.translate(x, y);
+            g.transform(this.trans);
+            if (this.stroke == null) {
+                g.fill(this.shape);
+            } else {
+                g.draw(this.shape);
+            }
+            g.setTransform(oldTrans);
+        }
+    }
+}
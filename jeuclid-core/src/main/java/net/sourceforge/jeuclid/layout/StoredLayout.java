@@ -0,0 +1,601 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.context.Parameter;
+import net.sourceforge.jeuclid.font.FontFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A completely laid out formula which can be stored and loaded again.
+ * <p>
+ * {@link #write(JEuclidView, OutputStream)} stores the extents and
+ * positions of all nodes of a view together with everything it paints:
+ * glyph runs with their fonts referenced by name and size, and shapes. A
+ * layout loaded with {@link #read(InputStream, LayoutContext)} can be drawn
+ * without parsing MathML, building a DOM or shaping any text.
+ * <p>
+ * Stored layouts are versioned and fingerprinted against the
+ * {@link LayoutContext} and the fonts they use. A stored layout which is
+ * outdated is never loaded, so it can safely be kept in a persistent cache.
+ *
+ * @version $Revision$
+ */
+public final class StoredLayout {
+
+    /**
+     * Logger for this class
+     */
+    private static final Log LOGGER = LogFactory.getLog(StoredLayout.class);
+
+    /** "JEUL". */
+    private static final int MAGIC = 0x4A45554C;
+
+    private static final int VERSION = 1;
+
+    private static final String CORRUPT = "Corrupt stored layout";
+
+    /** x, y, width, ascent and descent of every node. */
+    private static final int BOUNDS_SIZE = 5;
+
+    private static final int KIND_GLYPHS = 0;
+
+    private static final int KIND_DRAW = 1;
+
+    private static final int KIND_FILL = 2;
+
+    private final String[] nodeNames;
+
+    private final int[] parents;
+
+    private final float[] bounds;
+
+    private final DisplayList displayList;
+
+    private StoredLayout(final String[] names, final int[] parentIndices,
+            final float[] nodeBounds, final DisplayList list) {
+        this.nodeNames = names;
+        this.parents = parentIndices;
+        this.bounds = nodeBounds;
+        this.displayList = list;
+    }
+
+    /**
+     * Stores the layout of a view.
+     *
+     * @param view
+     *            the view to store. It is laid out if necessary.
+     * @param out
+     *            where to write the layout to. The stream is not closed.
+     * @throws IOException
+     *             if the layout cannot be written.
+     */
+    public static void write(final JEuclidView view, final OutputStream out)
+            throws IOException {
+        final List<String> names = new ArrayList<>();
+        final List<Integer> parentIndices = new ArrayList<>();
+        final List<float[]> nodeBounds = new ArrayList<>();
+        final List<GraphicsObject> graphics = new ArrayList<>();
+        view.getDisplayList().paint(
+                new RecordingGraphics2D(graphics, view.getFontRenderContext()),
+                0, 0);
+        StoredLayout.collect(view, view.getRoot(), -1, 0, 0, names,
+                parentIndices, nodeBounds);
+
+        final Map<Font, Integer> fonts = new LinkedHashMap<>();
+        final Map<FontRenderContext, Integer> frcs = new LinkedHashMap<>();
+        for (final GraphicsObject go : graphics) {
+            if (go instanceof GlyphRunObject) {
+                final GlyphVector gv = ((GlyphRunObject) go).getGlyphs();
+                if (!fonts.containsKey(gv.getFont())) {
+                    fonts.put(gv.getFont(), fonts.size());
+                }
+                if (!frcs.containsKey(gv.getFontRenderContext())) {
+                    frcs.put(gv.getFontRenderContext(), frcs.size());
+                }
+            }
+        }
+
+        final DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(out));
+        data.writeInt(StoredLayout.MAGIC);
+        data.writeInt(StoredLayout.VERSION);
+        data.writeLong(FrozenLayoutContext.of(view.getLayoutContext())
+                .getFingerprint());
+
+        data.writeInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            data.writeUTF(names.get(i));
+            data.writeInt(parentIndices.get(i));
+            for (final float f : nodeBounds.get(i)) {
+                data.writeFloat(f);
+            }
+        }
+
+        data.writeInt(fonts.size());
+        for (final Font font : fonts.keySet()) {
+            data.writeUTF(font.getName());
+            data.writeInt(font.getStyle());
+            data.writeFloat(font.getSize2D());
+            StoredLayout.writeTransform(data, font.getTransform());
+            data.writeUTF(font.getFontName());
+            data.writeInt(font.getNumGlyphs());
+        }
+
+        data.writeInt(frcs.size());
+        for (final FontRenderContext frc : frcs.keySet()) {
+            data.writeBoolean(frc.isAntiAliased());
+            data.writeBoolean(frc.usesFractionalMetrics());
+            StoredLayout.writeTransform(data, frc.getTransform());
+        }
+
+        data.writeInt(graphics.size());
+        for (final GraphicsObject go : graphics) {
+            if (go instanceof GlyphRunObject) {
+                final GlyphRunObject run = (GlyphRunObject) go;
+                final GlyphVector gv = run.getGlyphs();
+                final int count = gv.getNumGlyphs();
+                data.writeByte(StoredLayout.KIND_GLYPHS);
+                data.writeInt(run.getColor().getRGB());
+                StoredLayout.writeTransform(data, run.getTransform());
+                data.writeInt(fonts.get(gv.getFont()));
+                data.writeInt(frcs.get(gv.getFontRenderContext()));
+                data.writeInt(count);
+                for (final int code : gv.getGlyphCodes(0, count, null)) {
+                    data.writeInt(code);
+                }
+                for (final float f : gv.getGlyphPositions(0, count + 1, null)) {
+                    data.writeFloat(f);
+                }
+            } else {
+                final ShapeObject shape = (ShapeObject) go;
+                final BasicStroke stroke = (BasicStroke) shape.getStroke();
+                if (stroke == null) {
+                    data.writeByte(StoredLayout.KIND_FILL);
+                } else {
+                    data.writeByte(StoredLayout.KIND_DRAW);
+                }
+                data.writeInt(shape.getColor().getRGB());
+                StoredLayout.writeTransform(data, shape.getTransform());
+                if (stroke != null) {
+                    StoredLayout.writeStroke(data, stroke);
+                }
+                StoredLayout.writeShape(data, shape.getShape());
+            }
+        }
+        data.flush();
+    }
+
+    private static void collect(final JEuclidView view,
+            final LayoutableNode node, final int parent, final float x,
+            final float y, final List<String> names,
+            final List<Integer> parentIndices, final List<float[]> nodeBounds) {
+        final LayoutInfo info = view.getInfo(node);
+        final int index = names.size();
+        if (node.getLocalName() == null) {
+            names.add(node.getNodeName());
+        } else {
+            names.add(node.getLocalName());
+        }
+        parentIndices.add(parent);
+        nodeBounds.add(new float[] { x, y,
+                info.getWidth(LayoutStage.STAGE2),
+                info.getAscentHeight(LayoutStage.STAGE2),
+                info.getDescentHeight(LayoutStage.STAGE2), });
+        for (final LayoutableNode child : node.getChildrenToDraw()) {
+            final LayoutInfo childInfo = view.getInfo(child);
+            StoredLayout.collect(view, child, index, x
+                    + childInfo.getPosX(LayoutStage.STAGE2), y
+                    + childInfo.getPosY(LayoutStage.STAGE2), names,
+                    parentIndices, nodeBounds);
+        }
+    }
+
+    private static void writeTransform(final DataOutputStream data,
+            final AffineTransform transform) throws IOException {
+        final double[] matrix = new double[6];
+        transform.getMatrix(matrix);
+        for (final double d : matrix) {
+            data.writeDouble(d);
+        }
+    }
+
+    private static AffineTransform readTransform(final DataInputStream data)
+            throws IOException {
+        final double[] matrix = new double[6];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = data.readDouble();
+        }
+        return new AffineTransform(matrix);
+    }
+
+    private static void writeStroke(final DataOutputStream data,
+            final BasicStroke stroke) throws IOException {
+        data.writeFloat(stroke.getLineWidth());
+        data.writeByte(stroke.getEndCap());
+        data.writeByte(stroke.getLineJoin());
+        data.writeFloat(stroke.getMiterLimit());
+        final float[] dash = stroke.getDashArray();
+        if (dash == null) {
+            data.writeInt(0);
+        } else {
+            data.writeInt(dash.length);
+            for (final float f : dash) {
+                data.writeFloat(f);
+            }
+        }
+        data.writeFloat(stroke.getDashPhase());
+    }
+
+    private static BasicStroke readStroke(final DataInputStream data)
+            throws IOException {
+        final float width = data.readFloat();
+        final int cap = data.readByte();
+        final int join = data.readByte();
+        final float miterLimit = data.readFloat();
+        final int dashCount = StoredLayout.readCount(data);
+        final float[] dash;
+        if (dashCount == 0) {
+            dash = null;
+        } else {
+            dash = new float[dashCount];
+            for (int i = 0; i < dashCount; i++) {
+                dash[i] = data.readFloat();
+            }
+        }
+        final float dashPhase = data.readFloat();
+        try {
+            return new BasicStroke(width, cap, join, miterLimit, dash,
+                    dashPhase);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(StoredLayout.CORRUPT, e);
+        }
+    }
+
+    private static int readCount(final DataInputStream data)
+            throws IOException {
+        final int count = data.readInt();
+        if (count < 0) {
+            throw new IOException(StoredLayout.CORRUPT);
+        }
+        return count;
+    }
+
+    private static int readIndex(final DataInputStream data, final int size)
+            throws IOException {
+        final int index = data.readInt();
+        if (index < 0 || index >= size) {
+            throw new IOException(StoredLayout.CORRUPT);
+        }
+        return index;
+    }
+
+    private static int coordinateCount(final int segmentType)
+            throws IOException {
+        switch (segmentType) {
+        case PathIterator.SEG_MOVETO:
+        case PathIterator.SEG_LINETO:
+            return 2;
+        case PathIterator.SEG_QUADTO:
+            return 4;
+        case PathIterator.SEG_CUBICTO:
+            return 6;
+        case PathIterator.SEG_CLOSE:
+            return 0;
+        default:
+            throw new IOException("Invalid path segment " + segmentType);
+        }
+    }
+
+    private static void writeShape(final DataOutputStream data,
+            final Shape shape) throws IOException {
+        final List<float[]> segments = new ArrayList<>();
+        final PathIterator it = shape.getPathIterator(null);
+        data.writeByte(it.getWindingRule());
+        while (!it.isDone()) {
+            final float[] coords = new float[7];
+            coords[6] = it.currentSegment(coords);
+            segments.add(coords);
+            it.next();
+        }
+        data.writeInt(segments.size());
+        for (final float[] coords : segments) {
+            final int type = (int) coords[6];
+            data.writeByte(type);
+            for (int i = 0; i < StoredLayout.coordinateCount(type); i++) {
+                data.writeFloat(coords[i]);
+            }
+        }
+    }
+
+    private static Shape readShape(final DataInputStream data)
+            throws IOException {
+        final int windingRule = data.readByte();
+        if (windingRule != PathIterator.WIND_EVEN_ODD
+                && windingRule != PathIterator.WIND_NON_ZERO) {
+            throw new IOException(StoredLayout.CORRUPT);
+        }
+        final Path2D.Float path = new Path2D.Float(windingRule);
+        final int count = StoredLayout.readCount(data);
+        final float[] c = new float[6];
+        for (int i = 0; i < count; i++) {
+            final int type = data.readByte();
+            for (int j = 0; j < StoredLayout.coordinateCount(type); j++) {
+                c[j] = data.readFloat();
+            }
+            switch (type) {
+            case PathIterator.SEG_MOVETO:
+                path.moveTo(c[0], c[1]);
+                break;
+            case PathIterator.SEG_LINETO:
+                path.lineTo(c[0], c[1]);
+                break;
+            case PathIterator.SEG_QUADTO:
+                path.quadTo(c[0], c[1], c[2], c[3]);
+                break;
+            case PathIterator.SEG_CUBICTO:
+                path.curveTo(c[0], c[1], c[2], c[3], c[4], c[5]);
+                break;
+            default:
+                path.closePath();
+                break;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Loads a stored layout.
+     *
+     * @param in
+     *            stream to read from. The stream is not closed, and is not
+     *            read past the end of the stored layout, so other data may
+     *            follow. Reading is faster if the stream is buffered.
+     * @param context
+     *            the LayoutContext the layout is needed for.
+     * @return the layout, or null if the stored layout was made by a
+     *         different version, for a different context or with different
+     *         fonts.
+     * @throws IOException
+     *             if the stream cannot be read or does not contain a stored
+     *             layout, or if the stored layout is damaged.
+     */
+    public static StoredLayout read(final InputStream in,
+            final LayoutContext context) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != StoredLayout.MAGIC) {
+            throw new IOException("Not a stored layout");
+        }
+        final int version = data.readInt();
+        if (version != StoredLayout.VERSION) {
+            StoredLayout.LOGGER.debug("Stored layout has version " + version);
+            return null;
+        }
+        if (data.readLong() != FrozenLayoutContext.of(context)
+                .getFingerprint()) {
+            StoredLayout.LOGGER.debug("Stored layout has different context");
+            return null;
+        }
+        final int nodeCount = StoredLayout.readCount(data);
+        if (nodeCount == 0
+                || nodeCount > Integer.MAX_VALUE / StoredLayout.BOUNDS_SIZE) {
+            throw new IOException(StoredLayout.CORRUPT);
+        }
+        final String[] names = new String[nodeCount];
+        final int[] parentIndices = new int[nodeCount];
+        final float[] nodeBounds = new float[nodeCount
+                * StoredLayout.BOUNDS_SIZE];
+        for (int i = 0; i < nodeCount; i++) {
+            names[i] = data.readUTF();
+            // Parents are stored before their children, the root first.
+            parentIndices[i] = data.readInt();
+            final int lowest;
+            if (i == 0) {
+                lowest = -1;
+            } else {
+                lowest = 0;
+            }
+            if (parentIndices[i] < lowest || parentIndices[i] >= i) {
+                throw new IOException(StoredLayout.CORRUPT);
+            }
+            for (int j = 0; j < StoredLayout.BOUNDS_SIZE; j++) {
+                nodeBounds[i * StoredLayout.BOUNDS_SIZE + j] = data
+                        .readFloat();
+            }
+        }
+
+        final Font[] fonts = new Font[StoredLayout.readCount(data)];
+        for (int i = 0; i < fonts.length; i++) {
+            final String name = data.readUTF();
+            final int style = data.readInt();
+            final float size = data.readFloat();
+            final AffineTransform transform = StoredLayout.readTransform(data);
+            final String fontName = data.readUTF();
+            final int numGlyphs = data.readInt();
+            Font font = FontFactory.getInstance().getFont(name, style, size);
+            if (!transform.isIdentity()) {
+                font = font.deriveFont(transform);
+            }
+            if (!fontName.equals(font.getFontName())
+                    || (numGlyphs != font.getNumGlyphs())) {
+                StoredLayout.LOGGER.debug("Font " + fontName
+                        + " is not available");
+                return null;
+            }
+            fonts[i] = font;
+        }
+
+        final FontRenderContext[] frcs = new FontRenderContext[StoredLayout
+                .readCount(data)];
+        for (int i = 0; i < frcs.length; i++) {
+            final boolean aa = data.readBoolean();
+            final boolean fractional = data.readBoolean();
+            frcs[i] = new FontRenderContext(StoredLayout.readTransform(data),
+                    aa, fractional);
+        }
+
+        final int objectCount = StoredLayout.readCount(data);
+        final List<GraphicsObject> graphics = new ArrayList<>(
+                objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            final int kind = data.readByte();
+            final Color color = new Color(data.readInt(), true);
+            final AffineTransform transform = StoredLayout.readTransform(data);
+            if (kind == StoredLayout.KIND_GLYPHS) {
+                final Font font = fonts[StoredLayout.readIndex(data,
+                        fonts.length)];
+                final FontRenderContext frc = frcs[StoredLayout.readIndex(
+                        data, frcs.length)];
+                final int[] codes = new int[StoredLayout.readCount(data)];
+                for (int j = 0; j < codes.length; j++) {
+                    codes[j] = data.readInt();
+                }
+                final GlyphVector gv = font.createGlyphVector(frc, codes);
+                for (int j = 0; j <= codes.length; j++) {
+                    gv.setGlyphPosition(j, new Point2D.Float(
+                            data.readFloat(), data.readFloat()));
+                }
+                graphics.add(new GlyphRunObject(gv, color, transform));
+            } else if (kind == StoredLayout.KIND_DRAW
+                    || kind == StoredLayout.KIND_FILL) {
+                final BasicStroke stroke;
+                if (kind == StoredLayout.KIND_DRAW) {
+                    stroke = StoredLayout.readStroke(data);
+                } else {
+                    stroke = null;
+                }
+                graphics.add(new ShapeObject(StoredLayout.readShape(data),
+                        color, stroke, transform));
+            } else {
+                throw new IOException(StoredLayout.CORRUPT);
+            }
+        }
+        return new StoredLayout(names, parentIndices, nodeBounds,
+                new DisplayList(graphics, nodeBounds[2], nodeBounds[3],
+                        nodeBounds[4], (Boolean) context
+                                .getParameter(Parameter.ANTIALIAS)));
+    }
+
+    /**
+     * Draw this layout onto a Graphics context.
+     *
+     * @param g
+     *            Graphics context for painting.
+     * @param x
+     *            x-offset for left edge
+     * @param y
+     *            y-offset for baseline
+     */
+    public void draw(final Graphics2D g, final float x, final float y) {
+        this.displayList.paint(g, x, y);
+    }
+
+    /**
+     * @return the display list of this layout.
+     */
+    public DisplayList getDisplayList() {
+        return this.displayList;
+    }
+
+    /**
+     * @return width of this layout.
+     */
+    public float getWidth() {
+        return this.bounds[2];
+    }
+
+    /**
+     * @return ascent height.
+     */
+    public float getAscentHeight() {
+        return this.bounds[3];
+    }
+
+    /**
+     * @return descent height.
+     */
+    public float getDescentHeight() {
+        return this.bounds[4];
+    }
+
+    /**
+     * @return number of nodes, the root node has index 0.
+     */
+    public int getNodeCount() {
+        return this.nodeNames.length;
+    }
+
+    /**
+     * @param index
+     *            index of a node.
+     * @return local name of the node.
+     */
+    public String getNodeName(final int index) {
+        return this.nodeNames[index];
+    }
+
+    /**
+     * @param index
+     *            index of a node.
+     * @return index of the parent node, or -1 for the root.
+     */
+    public int getParentIndex(final int index) {
+        return this.parents[index];
+    }
+
+    /**
+     * @param index
+     *            index of a node.
+     * @return the rendering boundary of the node, relative to the left edge
+     *         and baseline of the formula.
+     */
+    public Rectangle2D getNodeBounds(final int index) {
+        final int i = index * StoredLayout.BOUNDS_SIZE;
+        return new Rectangle2D.Float(this.bounds[i], this.bounds[i + 1]
+                - this.bounds[i + 3], this.bounds[i + 2], this.bounds[i + 3]
+                + this.bounds[i + 4]);
+    }
+}
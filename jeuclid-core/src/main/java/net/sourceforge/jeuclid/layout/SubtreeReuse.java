@@ -0,0 +1,251 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+import net.sourceforge.jeuclid.elements.JEuclidElement;
+import net.sourceforge.jeuclid.elements.presentation.token.Mo;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Reuses the stage 1 layout of identical subtrees within one layout run.
+ * <p>
+ * Every node of the document is hash-consed into an id, so that two
+ * subtrees have the same id exactly if they have the same structure,
+ * attributes and text. Subtrees which occur at least twice and contain no
+ * {@link Mo} are candidates: after a candidate is laid out, the infos of its
+ * whole subtree are kept, and copied into the next identical subtree laid
+ * out in the same context. All positions in a {@link LayoutInfo} are
+ * relative to the parent, so the copies are valid at any place.
+ * <p>
+ * Operators are excluded because their form and stretching depend on their
+ * siblings and ancestors.
+ *
+ * @version $Revision$
+ */
+final class SubtreeReuse {
+
+    private final JEuclidView view;
+
+    private final Map<LayoutableNode, Integer> ids = new HashMap<>();
+
+    private final Map<List<Object>, Integer> intern = new HashMap<>();
+
+    private final List<Integer> occurrences = new ArrayList<>();
+
+    private final List<Boolean> eligible = new ArrayList<>();
+
+    private final Map<List<Object>, List<LayoutInfoImpl>> snapshots = new HashMap<>();
+
+    private int reusedCount;
+
+    /**
+     * Creates a new instance and hash-conses the given tree.
+     *
+     * @param layoutView
+     *            the view the tree is laid out in.
+     * @param root
+     *            root of the tree.
+     */
+    SubtreeReuse(final JEuclidView layoutView, final LayoutableNode root) {
+        this.view = layoutView;
+        this.hashCons(root);
+    }
+
+    private int hashCons(final LayoutableNode node) {
+        final List<Object> key = new ArrayList<>();
+        key.add(node.getClass());
+        SubtreeReuse.describe(node, key);
+        boolean noOperators = !(node instanceof Mo);
+        final Set<LayoutableNode> children = new HashSet<>();
+        for (final LayoutableNode child : node.getChildrenToLayout()) {
+            children.add(child);
+            final int childId = this.hashCons(child);
+            key.add(childId);
+            noOperators &= this.eligible.get(childId);
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child
+                .getNextSibling()) {
+            if (!children.contains(child)) {
+                SubtreeReuse.describeDeep(child, key);
+            }
+        }
+        Integer id = this.intern.get(key);
+        if (id == null) {
+            id = this.intern.size();
+            this.intern.put(key, id);
+            this.occurrences.add(0);
+            this.eligible.add(noOperators);
+        }
+        this.occurrences.set(id, this.occurrences.get(id) + 1);
+        this.ids.put(node, id);
+        return id;
+    }
+
+    private static void describe(final Node node, final List<Object> key) {
+        key.add(node.getNodeName());
+        final NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            final Map<String, String> sorted = new TreeMap<>();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attr = (Attr) attributes.item(i);
+                sorted.put(attr.getName(), attr.getValue());
+            }
+            key.add(sorted);
+        }
+    }
+
+    private static void describeDeep(final Node node, final List<Object> key) {
+        if (node instanceof Element) {
+            key.add('<');
+            SubtreeReuse.describe(node, key);
+            for (Node child = node.getFirstChild(); child != null; child = child
+                    .getNextSibling()) {
+                SubtreeReuse.describeDeep(child, key);
+            }
+            key.add('>');
+        } else if (node.getNodeType() == Node.TEXT_NODE
+                || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+            key.add(node.getNodeValue());
+        }
+    }
+
+    /**
+     * Retrieves the mathvariant a subtree inherits from outside.
+     *
+     * @param node
+     *            root of the subtree.
+     * @return the inherited value, or null.
+     */
+    private static String getInheritedMathvariant(final LayoutableNode node) {
+        if (!(node instanceof JEuclidElement)) {
+            return null;
+        }
+        JEuclidElement parent = ((JEuclidElement) node).getParent();
+        while (parent != null) {
+            String value = parent.getAttributeNS(AbstractJEuclidElement.URI,
+                    AbstractJEuclidElement.ATTR_MATHVARIANT);
+            if (value.length() == 0) {
+                value = parent
+                        .getAttribute(AbstractJEuclidElement.ATTR_MATHVARIANT);
+            }
+            if (value.length() > 0) {
+                return value.trim();
+            }
+            parent = parent.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * Creates the key under which the layout of a subtree is kept.
+     *
+     * @param node
+     *            root of the subtree.
+     * @param context
+     *            the context the subtree is laid out in.
+     * @return the key, or null if the subtree is not worth keeping.
+     */
+    List<Object> getKey(final LayoutableNode node, final LayoutContext context) {
+        final Integer id = this.ids.get(node);
+        if ((id == null) || (this.occurrences.get(id) < 2)
+                || !this.eligible.get(id)) {
+            return null;
+        }
+        return Arrays.asList(id, SubtreeReuse.getInheritedMathvariant(node),
+                FrozenLayoutContext.of(context));
+    }
+
+    /**
+     * Keeps the layout of a subtree which has just been laid out.
+     *
+     * @param key
+     *            key from {@link #getKey(LayoutableNode, LayoutContext)}.
+     * @param node
+     *            root of the subtree.
+     */
+    void store(final List<Object> key, final LayoutableNode node) {
+        if (!this.snapshots.containsKey(key)) {
+            final List<LayoutInfoImpl> infos = new ArrayList<>();
+            this.collect(node, infos);
+            this.snapshots.put(key, infos);
+        }
+    }
+
+    private void collect(final LayoutableNode node,
+            final List<LayoutInfoImpl> infos) {
+        infos.add(new LayoutInfoImpl((LayoutInfoImpl) this.view
+                .getInfo(node)));
+        for (final LayoutableNode child : node.getChildrenToLayout()) {
+            this.collect(child, infos);
+        }
+    }
+
+    /**
+     * Copies a kept layout into a subtree.
+     *
+     * @param key
+     *            key from {@link #getKey(LayoutableNode, LayoutContext)}.
+     * @param node
+     *            root of the subtree.
+     * @return true if a layout was found and copied.
+     */
+    boolean restore(final List<Object> key, final LayoutableNode node) {
+        final List<LayoutInfoImpl> infos = this.snapshots.get(key);
+        if (infos == null) {
+            return false;
+        }
+        this.copy(node, infos, 0);
+        this.reusedCount++;
+        return true;
+    }
+
+    private int copy(final LayoutableNode node,
+            final List<LayoutInfoImpl> infos, final int index) {
+        ((LayoutInfoImpl) this.view.getInfo(node)).copyFrom(infos.get(index));
+        this.view.listenTo(node);
+        int next = index + 1;
+        for (final LayoutableNode child : node.getChildrenToLayout()) {
+            next = this.copy(child, infos, next);
+        }
+        return next;
+    }
+
+    /**
+     * @return number of subtrees whose layout was copied.
+     */
+    int getReusedCount() {
+        return this.reusedCount;
+    }
+}
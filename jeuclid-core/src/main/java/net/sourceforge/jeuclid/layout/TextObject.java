@@ -20,13 +20,15 @@ package net.sourceforge.jeuclid.layout;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Stroke;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 
 /**
  * @version $Revision$
  */
-public class TextObject implements GraphicsObject {
+public class TextObject implements BatchableObject {
 
     private final TextLayout layout;
 
@@ -86,12 +88,40 @@ public class TextObject implements GraphicsObject {
     /** {@inheritDoc} */
     public void paint(final float x, final float y, final Graphics2D g) {
         g.setColor(this.color);
-        final AffineTransform oldTrans = g.getTransform();
-        g.translate(x + this.xoffset, y + this.yoffset);
-        if (this.trans != null) {
+        this.paintContent(x, y, g);
+    }
+
+    /** {@inheritDoc} */
+    public void paintContent(final float x, final float y, final Graphics2D g) {
+        if (this.trans == null) {
+            this.layout.draw(g, x + this.xoffset, y + this.yoffset);
+        } else {
+            final AffineTransform oldTrans = g.getTransform();
+            g.translate(x + this.xoffset, y + this.yoffset);
             g.transform(this.trans);
+            this.layout.draw(g, 0, 0);
+            g.setTransform(oldTrans);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Color getColor() {
+        return this.color;
+    }
+
+    /** {@inheritDoc} */
+    public Stroke getStroke() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public Rectangle2D getBounds() {
+        Rectangle2D bounds = this.layout.getBounds();
+        if (this.trans != null) {
+            bounds = this.trans.createTransformedShape(bounds).getBounds2D();
         }
-        this.layout.draw(g, 0, 0);
-        g.setTransform(oldTrans);
+        bounds.setRect(bounds.getX() + this.xoffset, bounds.getY()
+                + this.yoffset, bounds.getWidth(), bounds.getHeight());
+        return bounds;
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import net.sourceforge.jeuclid.elements.JEuclidElementFactory;
+import net.sourceforge.jeuclid.elements.generic.DocumentElement;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler which builds a JEuclid DOM directly from parser events.
+ * <p>
+ * The resulting tree is the same as parsing into a W3C DOM and copying it
+ * with {@link net.sourceforge.jeuclid.DOMBuilder} without content support,
+ * but no intermediate tree is created. Like the DOMBuilder, elements are
+ * attached to their parent only once they are complete.
+ * <p>
+ * Instances are not thread safe and may be used for one document only.
+ *
+ * @version $Revision$
+ */
+final class JEuclidDomHandler extends DefaultHandler implements
+        LexicalHandler {
+
+    private static final String XMLNS = "xmlns";
+
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    private final DocumentElement document;
+
+    private final Deque<Element> open = new ArrayDeque<>();
+
+    private final StringBuilder text = new StringBuilder();
+
+    private final List<String> prefixMappings = new ArrayList<>();
+
+    private boolean inDtd;
+
+    /**
+     * Default constructor.
+     */
+    JEuclidDomHandler() {
+        this.document = new DocumentElement();
+    }
+
+    /**
+     * @return the document built from the events received so far.
+     */
+    public DocumentElement getDocument() {
+        return this.document;
+    }
+
+    private void flushText() {
+        if (this.text.length() > 0) {
+            this.open.peek().appendChild(
+                    this.document.createTextNode(this.text.toString()));
+            this.text.setLength(0);
+        }
+    }
+
+    private static String emptyToNull(final String s) {
+        if (s == null || s.isEmpty()) {
+            return null;
+        }
+        return s;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+        this.prefixMappings.add(prefix);
+        this.prefixMappings.add(uri);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void startElement(final String uri, final String localName,
+            final String qName, final Attributes attributes) {
+        if (!this.open.isEmpty()) {
+            this.flushText();
+        }
+        final Element element = JEuclidElementFactory.elementFromName(
+                JEuclidDomHandler.emptyToNull(uri), qName, this.document);
+        for (int i = 0; i < this.prefixMappings.size(); i += 2) {
+            final String prefix = this.prefixMappings.get(i);
+            final String name;
+            if (prefix.isEmpty()) {
+                name = JEuclidDomHandler.XMLNS;
+            } else {
+                name = JEuclidDomHandler.XMLNS + ':' + prefix;
+            }
+            element.setAttributeNS(JEuclidDomHandler.XMLNS_URI, name,
+                    this.prefixMappings.get(i + 1));
+        }
+        this.prefixMappings.clear();
+        final int length = attributes.getLength();
+        for (int i = 0; i < length; i++) {
+            element.setAttributeNS(JEuclidDomHandler.emptyToNull(attributes
+                    .getURI(i)), attributes.getQName(i), attributes
+                    .getValue(i));
+        }
+        this.open.push(element);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endElement(final String uri, final String localName,
+            final String qName) {
+        this.flushText();
+        final Element element = this.open.pop();
+        final Node parent = this.open.peek();
+        if (parent == null) {
+            this.document.appendChild(element);
+        } else {
+            parent.appendChild(element);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        if (!this.open.isEmpty()) {
+            this.text.append(ch, start, length);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void ignorableWhitespace(final char[] ch, final int start,
+            final int length) {
+        this.characters(ch, start, length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void processingInstruction(final String target, final String data) {
+        if (!this.open.isEmpty()) {
+            this.flushText();
+            this.open.peek().appendChild(
+                    this.document.createProcessingInstruction(target, data));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void comment(final char[] ch, final int start, final int length) {
+        if (!this.inDtd && !this.open.isEmpty()) {
+            this.flushText();
+            this.open.peek().appendChild(
+                    this.document.createComment(new String(ch, start, length)));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void startDTD(final String name, final String publicId,
+            final String systemId) {
+        this.inDtd = true;
+    }
+
+    /** {@inheritDoc} */
+    public void endDTD() {
+        this.inDtd = false;
+    }
+
+    /** {@inheritDoc} */
+    public void startCDATA() {
+        // CDATA is merged into the surrounding text.
+    }
+
+    /** {@inheritDoc} */
+    public void endCDATA() {
+        // CDATA is merged into the surrounding text.
+    }
+
+    /** {@inheritDoc} */
+    public void startEntity(final String name) {
+        // Entities are expanded.
+    }
+
+    /** {@inheritDoc} */
+    public void endEntity(final String name) {
+        // Entities are expanded.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void endDocument() throws SAXException {
+        if (this.document.getDocumentElement() == null) {
+            throw new SAXException("Document has no root element");
+        }
+    }
+}
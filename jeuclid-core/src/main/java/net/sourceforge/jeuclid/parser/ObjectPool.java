@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.parser;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded pool of objects which are expensive to create and may not be used
+ * by more than one thread at a time.
+ * <p>
+ * Objects are borrowed for a single task and returned afterwards, so the
+ * number of pooled objects depends on the number of concurrent tasks, and
+ * not on the number of threads. Borrowing never blocks: if no idle object is
+ * available, a new one is created. At most {@link #getMaxIdle()} objects are
+ * kept when they are returned, the rest is left to the garbage collector.
+ * The pool does not lock, so it is safe to use from virtual threads.
+ *
+ * @param <T>
+ *            type of the pooled objects.
+ * @version $Revision$
+ */
+@ThreadSafe
+abstract class ObjectPool<T> {
+
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final int maxIdle;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxIdle
+     *            maximum number of idle objects to keep.
+     */
+    protected ObjectPool(final int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Creates a new object for this pool.
+     *
+     * @return a new object, or null if it could not be created.
+     */
+    protected abstract T create();
+
+    /**
+     * Prepares a returned object for its next use.
+     *
+     * @param object
+     *            the returned object.
+     * @return true if the object may be reused.
+     */
+    protected abstract boolean reset(T object);
+
+    /**
+     * Borrows an object from the pool. It must be given back with
+     * {@link #release(Object)} once it is no longer used.
+     *
+     * @return an idle or newly created object.
+     */
+    public T borrow() {
+        final T object = this.idle.poll();
+        if (object != null) {
+            this.idleCount.decrementAndGet();
+            return object;
+        }
+        this.created.incrementAndGet();
+        return this.create();
+    }
+
+    /**
+     * Returns an object to the pool.
+     *
+     * @param object
+     *            an object previously retrieved with {@link #borrow()}. May
+     *            be null.
+     */
+    public void release(final T object) {
+        if (object == null || !this.reset(object)) {
+            return;
+        }
+        if (this.idleCount.incrementAndGet() <= this.maxIdle) {
+            this.idle.offer(object);
+        } else {
+            this.idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of idle objects currently in the pool.
+     */
+    public int getIdleCount() {
+        return this.idleCount.get();
+    }
+
+    /**
+     * @return the number of objects created by this pool.
+     */
+    public long getCreatedCount() {
+        return this.created.get();
+    }
+
+    /**
+     * @return the maximum number of idle objects kept.
+     */
+    public int getMaxIdle() {
+        return this.maxIdle;
+    }
+}
@@ -19,21 +19,25 @@
 package net.sourceforge.jeuclid.parser;
 
 import java.io.BufferedInputStream;
-import java.io.FilterInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -42,7 +46,7 @@ import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 
-import net.sourceforge.jeuclid.ResourceEntityResolver;
+import net.sourceforge.jeuclid.elements.generic.DocumentElement;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,6 +57,7 @@ import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
 
 /**
  * A JAXP compatible approach to MathML Parsing.
@@ -86,27 +91,20 @@ public final class Parser {
         }
     }
 
-    private static final class UnclosableInputStream extends FilterInputStream {
-        protected UnclosableInputStream(final InputStream in) {
-            super(in);
-        }
-
-        @Override
-        public void close() throws IOException {
-            // Do Nothing.
-        }
-    }
-
     /**
-     * Detection buffer size. Rationale: After the first 128 bytes a XML file
-     * and a ZIP file should be distinguishable.
+     * Magic bytes at the start of a ZIP file, and thus of every ODF package.
      */
-    private static final int DETECTION_BUFFER_SIZE = 128;
+    private static final byte[] ZIP_MAGIC = { 'P', 'K', 3, 4 };
+
+    private static final String FILE_PROTOCOL = "file";
 
     private static final String BAD_STREAM_SOURCE = "Bad StreamSource: ";
 
     private static final String CONTENT_XML = "content.xml";
 
+    private static final String NO_ODF_CONTENT = "ODF package without "
+            + Parser.CONTENT_XML;
+
     private static final String CANNOT_HANDLE_SOURCE = "Cannot handle Source: ";
 
     private static final class SingletonHolder {
@@ -121,31 +119,91 @@ public final class Parser {
      */
     private static final Log LOGGER = LogFactory.getLog(Parser.class);
 
-    private final Map<Long, Reference<DocumentBuilder>> builders;
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    private static final String JDK_PROPERTIES = "http://www.oracle.com/xml/jaxp/properties/";
+
+    /**
+     * Limits for {@link ParserProfile#STRICT}, as JDK parser properties.
+     */
+    private static final String[][] STRICT_LIMITS = {
+            { Parser.JDK_PROPERTIES + "entityExpansionLimit", "10000" },
+            { Parser.JDK_PROPERTIES + "totalEntitySizeLimit", "1000000" },
+            { Parser.JDK_PROPERTIES + "maxGeneralEntitySizeLimit", "100000" },
+            { Parser.JDK_PROPERTIES + "maxElementDepth", "1000" },
+            { XMLConstants.ACCESS_EXTERNAL_DTD, "" },
+            { XMLConstants.ACCESS_EXTERNAL_SCHEMA, "" }, };
+
+    /**
+     * Number of idle parsers of each kind to keep per processor.
+     */
+    private static final int POOL_SIZE_PER_PROCESSOR = 2;
+
+    private final Map<ParserProfile, ObjectPool<DocumentBuilder>> builders;
+
+    private final Map<ParserProfile, ObjectPool<XMLReader>> readers;
 
     /**
      * Default constructor.
      */
     protected Parser() {
-        this.builders = new ConcurrentHashMap<>();
+        final int poolSize = Runtime.getRuntime().availableProcessors()
+                * Parser.POOL_SIZE_PER_PROCESSOR;
+        this.builders = new EnumMap<>(ParserProfile.class);
+        this.readers = new EnumMap<>(ParserProfile.class);
+        for (final ParserProfile profile : ParserProfile.values()) {
+            this.builders.put(profile, new ObjectPool<DocumentBuilder>(
+                    poolSize) {
+                @Override
+                protected DocumentBuilder create() {
+                    return Parser.createDocumentBuilder(profile);
+                }
+
+                @Override
+                protected boolean reset(final DocumentBuilder builder) {
+                    return Parser.resetDocumentBuilder(builder, profile);
+                }
+            });
+            this.readers.put(profile, new ObjectPool<XMLReader>(poolSize) {
+                @Override
+                protected XMLReader create() {
+                    return Parser.createXMLReader(profile);
+                }
+
+                @Override
+                protected boolean reset(final XMLReader reader) {
+                    return Parser.resetXMLReader(reader);
+                }
+            });
+        }
     }
 
-    private DocumentBuilder createDocumentBuilder() {
+    private static DocumentBuilder createDocumentBuilder(
+            final ParserProfile profile) {
         DocumentBuilder documentBuilder;
         try {
-            try {
-                documentBuilder = this.tryCreateDocumentBuilder(true);
-            } catch (final UnsupportedOperationException uoe) {
-                Parser.LOGGER.debug("Unsupported Operation: "
-                        + uoe.getMessage());
-                documentBuilder = this.tryCreateDocumentBuilder(false);
-            } catch (final ParserConfigurationException pce) {
-                Parser.LOGGER.debug("ParserConfigurationException: "
-                        + pce.getMessage());
-                documentBuilder = this.tryCreateDocumentBuilder(false);
+            if (profile == ParserProfile.DEFAULT) {
+                try {
+                    documentBuilder = Parser.tryCreateDocumentBuilder(profile,
+                            true);
+                } catch (final UnsupportedOperationException uoe) {
+                    Parser.LOGGER.debug("Unsupported Operation: "
+                            + uoe.getMessage());
+                    documentBuilder = Parser.tryCreateDocumentBuilder(
+                            profile, false);
+                } catch (final ParserConfigurationException pce) {
+                    Parser.LOGGER.debug("ParserConfigurationException: "
+                            + pce.getMessage());
+                    documentBuilder = Parser.tryCreateDocumentBuilder(
+                            profile, false);
+                }
+            } else {
+                documentBuilder = Parser.tryCreateDocumentBuilder(profile,
+                        false);
             }
-            documentBuilder.setEntityResolver(new ResourceEntityResolver());
-            documentBuilder.setErrorHandler(new LoggerErrorHandler());
+            Parser.configureDocumentBuilder(documentBuilder, profile);
         } catch (final ParserConfigurationException pce2) {
             Parser.LOGGER.warn("Could not create Parser: " + pce2.getMessage());
             assert false : "Could not create Parser";
@@ -154,7 +212,27 @@ public final class Parser {
         return documentBuilder;
     }
 
-    private DocumentBuilder tryCreateDocumentBuilder(final boolean xinclude)
+    private static void configureDocumentBuilder(
+            final DocumentBuilder documentBuilder, final ParserProfile profile) {
+        documentBuilder.setEntityResolver(new PreparsedDtdResolver(
+                profile != ParserProfile.DEFAULT));
+        documentBuilder.setErrorHandler(new LoggerErrorHandler());
+    }
+
+    private static boolean resetDocumentBuilder(
+            final DocumentBuilder documentBuilder, final ParserProfile profile) {
+        try {
+            documentBuilder.reset();
+        } catch (final UnsupportedOperationException uoe) {
+            return false;
+        }
+        // reset() may also reset the resolver and error handler.
+        Parser.configureDocumentBuilder(documentBuilder, profile);
+        return true;
+    }
+
+    private static DocumentBuilder tryCreateDocumentBuilder(
+            final ParserProfile profile, final boolean xinclude)
             throws ParserConfigurationException {
         final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
                 .newInstance();
@@ -162,11 +240,101 @@ public final class Parser {
         if (xinclude) {
             documentBuilderFactory.setXIncludeAware(true);
         }
+        try {
+            // The deferred DOM searches all known entities for every entity
+            // declaration, which is slow for the large MathML entity sets.
+            documentBuilderFactory.setFeature(Parser.DEFER_NODE_EXPANSION,
+                    false);
+        } catch (final ParserConfigurationException pce) {
+            Parser.LOGGER.debug("Deferred node expansion not supported: "
+                    + pce.getMessage());
+        }
+        if (profile == ParserProfile.STRICT) {
+            // Must be supported by every JAXP implementation.
+            documentBuilderFactory.setFeature(
+                    XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            for (final String[] limit : Parser.STRICT_LIMITS) {
+                try {
+                    documentBuilderFactory.setAttribute(limit[0], limit[1]);
+                } catch (final IllegalArgumentException iae) {
+                    Parser.LOGGER.debug("Limit not supported: "
+                            + iae.getMessage());
+                }
+            }
+        }
         final DocumentBuilder documentBuilder = documentBuilderFactory
                 .newDocumentBuilder();
         return documentBuilder;
     }
 
+    private static XMLReader createXMLReader(final ParserProfile profile) {
+        XMLReader reader;
+        try {
+            if (profile == ParserProfile.DEFAULT) {
+                try {
+                    reader = Parser.tryCreateXMLReader(profile, true);
+                } catch (final UnsupportedOperationException uoe) {
+                    Parser.LOGGER.debug("Unsupported Operation: "
+                            + uoe.getMessage());
+                    reader = Parser.tryCreateXMLReader(profile, false);
+                } catch (final ParserConfigurationException pce) {
+                    Parser.LOGGER.debug("ParserConfigurationException: "
+                            + pce.getMessage());
+                    reader = Parser.tryCreateXMLReader(profile, false);
+                }
+            } else {
+                reader = Parser.tryCreateXMLReader(profile, false);
+            }
+            reader.setEntityResolver(new PreparsedDtdResolver(
+                    profile != ParserProfile.DEFAULT));
+            reader.setErrorHandler(new LoggerErrorHandler());
+        } catch (final ParserConfigurationException | SAXException e) {
+            Parser.LOGGER.warn("Could not create Parser: " + e.getMessage());
+            assert false : "Could not create Parser";
+            reader = null;
+        }
+        return reader;
+    }
+
+    private static boolean resetXMLReader(final XMLReader reader) {
+        // Do not keep the last document alive through the pooled reader.
+        reader.setContentHandler(null);
+        try {
+            reader.setProperty(Parser.LEXICAL_HANDLER, null);
+        } catch (final SAXException e) {
+            Parser.LOGGER.debug(e.getMessage());
+        }
+        return true;
+    }
+
+    private static XMLReader tryCreateXMLReader(final ParserProfile profile,
+            final boolean xinclude) throws ParserConfigurationException,
+            SAXException {
+        final SAXParserFactory saxParserFactory = SAXParserFactory
+                .newInstance();
+        saxParserFactory.setNamespaceAware(true);
+        if (xinclude) {
+            saxParserFactory.setXIncludeAware(true);
+        }
+        if (profile == ParserProfile.STRICT) {
+            saxParserFactory.setFeature(
+                    XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        }
+        final XMLReader reader = saxParserFactory.newSAXParser()
+                .getXMLReader();
+        if (profile == ParserProfile.STRICT) {
+            for (final String[] limit : Parser.STRICT_LIMITS) {
+                try {
+                    reader.setProperty(limit[0], limit[1]);
+                } catch (final SAXException se) {
+                    Parser.LOGGER.debug("Limit not supported: "
+                            + se.getMessage());
+                }
+            }
+        }
+        return reader;
+    }
+
     /**
      * Retrieve the singleton Parser instance.
      * 
@@ -201,60 +369,170 @@ public final class Parser {
      * @throws SAXException
      *             if a parse error occurred.
      * @throws IOException
-     *             if an I/O error occurred.
+     *             if an I/O error occurred, or the source is an ODF package
+     *             without content.
      */
     public Document parseStreamSource(final StreamSource streamSource)
             throws SAXException, IOException {
+        return this.parseStreamSource(streamSource, ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Parse a StreamSource with the given parser configuration and return its
+     * Document.
+     * <p>
+     * This method will auto-detect ODF or XML format and load an appropriate
+     * parser.
+     * 
+     * @param streamSource
+     *            A StreamSource.
+     * @param profile
+     *            the parser configuration to use.
+     * @return A DOM Document representation for this source.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred, or the source is an ODF package
+     *             without content.
+     */
+    public Document parseStreamSource(final StreamSource streamSource,
+            final ParserProfile profile) throws SAXException, IOException {
         Document retVal = null;
         InputStream inputStream = streamSource.getInputStream();
         if (inputStream != null) {
-
-            // Alternative 1: Parse as XML, and fall back to ODF
             if (!inputStream.markSupported()) {
                 inputStream = new BufferedInputStream(inputStream);
             }
-            final InputStream filterInput = new UnclosableInputStream(
-                    inputStream);
-            filterInput.mark(Parser.DETECTION_BUFFER_SIZE);
-            try {
+            if (Parser.startsWithZipMagic(inputStream)) {
+                retVal = this.parseWithPooledBuilder(new InputSource(Parser
+                        .requireOdfContent(inputStream)), profile);
+            } else {
                 retVal = this.parseStreamSourceAsXml(new StreamSource(
-                        filterInput));
-                inputStream.close();
-            } catch (final SAXParseException se) {
-                filterInput.reset();
-                try {
-                    retVal = this.parseStreamSourceAsOdf(new StreamSource(
-                            filterInput));
-                } catch (final IOException io) {
-                    throw se;
-                }
-                inputStream.close();
+                        inputStream), profile);
             }
+            inputStream.close();
+        } else if (streamSource.getReader() == null) {
+            final File file = Parser.toFile(streamSource.getSystemId());
+            if (file != null) {
+                retVal = this.parseFile(file, profile);
+            }
+        }
+        if (retVal == null) {
+            retVal = this.parseStreamSourceAsXml(streamSource, profile);
+        }
+        return retVal;
+    }
 
-            // Alternative 2: peek for ZIP magic and call matching parser.
+    /**
+     * Parse a file and return its Document.
+     * <p>
+     * This method will auto-detect ODF or XML format. ODF packages are read
+     * through their ZIP directory, so only content.xml is decompressed.
+     * 
+     * @param file
+     *            the file to parse.
+     * @return A DOM Document representation for this file.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred, or the file is an ODF package
+     *             without content.
+     */
+    public Document parseFile(final File file) throws SAXException,
+            IOException {
+        return this.parseFile(file, ParserProfile.DEFAULT);
+    }
 
-            // final PushbackInputStream pi = new PushbackInputStream(
-            // inputStream, 4);
-            // final byte[] magic = new byte[4];
-            // pi.read(magic);
-            // pi.unread(magic);
-            // if ((magic[0] == 'P') && (magic[1] == 'K') && (magic[2] == 3)
-            // && (magic[3] == 4)) {
-            // retVal = this.parseStreamSourceAsOdf(streamSource);
-            // }
+    /**
+     * Parse a file with the given parser configuration and return its
+     * Document.
+     * 
+     * @param file
+     *            the file to parse.
+     * @param profile
+     *            the parser configuration to use.
+     * @return A DOM Document representation for this file.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred, or the file is an ODF package
+     *             without content.
+     * @see #parseFile(File)
+     */
+    public Document parseFile(final File file, final ParserProfile profile)
+            throws SAXException, IOException {
+        final boolean zip;
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            zip = Parser.startsWithZipMagic(is);
         }
-        if (retVal == null) {
-            retVal = this.parseStreamSourceAsXml(streamSource);
+        final Document retVal;
+        if (zip) {
+            try (ZipFile zipFile = new ZipFile(file)) {
+                final ZipEntry entry = zipFile.getEntry(Parser.CONTENT_XML);
+                if (entry == null) {
+                    throw new IOException(Parser.NO_ODF_CONTENT + ": " + file);
+                }
+                try (InputStream content = zipFile.getInputStream(entry)) {
+                    retVal = this.parseWithPooledBuilder(new InputSource(
+                            content), profile);
+                }
+            }
+        } else {
+            try (InputStream is = Files.newInputStream(file.toPath())) {
+                final InputSource inputSource = new InputSource(is);
+                inputSource.setSystemId(file.toURI().toString());
+                retVal = this.parseWithPooledBuilder(inputSource, profile);
+            }
         }
         return retVal;
     }
 
+    /**
+     * Checks for the ZIP magic bytes without consuming them.
+     * 
+     * @param is
+     *            the stream to check. If it supports mark, the stream is
+     *            reset to its current position.
+     * @return true if the stream starts with the ZIP magic bytes.
+     * @throws IOException
+     *             if an I/O error occurred.
+     */
+    private static boolean startsWithZipMagic(final InputStream is)
+            throws IOException {
+        final int length = Parser.ZIP_MAGIC.length;
+        is.mark(length);
+        boolean retVal = true;
+        for (int i = 0; i < length && retVal; i++) {
+            retVal = is.read() == Parser.ZIP_MAGIC[i];
+        }
+        if (is.markSupported()) {
+            is.reset();
+        }
+        return retVal;
+    }
+
+    private static File toFile(final String systemId) {
+        if (systemId == null) {
+            return null;
+        }
+        try {
+            final URI uri = new URI(systemId);
+            if (Parser.FILE_PROTOCOL.equals(uri.getScheme())) {
+                return new File(uri);
+            }
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            Parser.LOGGER.debug(e.getMessage());
+        }
+        return null;
+    }
+
     /**
      * Parse a given StreamSource which represents an ODF document.
      * 
      * @param streamSource
      *            StreamSource to parse.
-     * @return the Document contained within.
+     * @return the Document contained within, or null if the package has
+     *         no content.
      * @throws SAXException
      *             if a parse error occurred.
      * @throws IOException
@@ -262,23 +540,79 @@ public final class Parser {
      */
     public Document parseStreamSourceAsOdf(final StreamSource streamSource)
             throws IOException, SAXException {
+        return this.parseStreamSourceAsOdf(streamSource, ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Parse a given StreamSource which represents an ODF document with the
+     * given parser configuration.
+     * 
+     * @param streamSource
+     *            StreamSource to parse.
+     * @param profile
+     *            the parser configuration to use.
+     * @return the Document contained within, or null if the package has
+     *         no content.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred.
+     */
+    public Document parseStreamSourceAsOdf(final StreamSource streamSource,
+            final ParserProfile profile) throws IOException, SAXException {
         final InputStream is = streamSource.getInputStream();
         if (is == null) {
             throw new IllegalArgumentException(Parser.BAD_STREAM_SOURCE
                     + streamSource);
         }
-        final ZipInputStream zipStream = new ZipInputStream(is);
+        final InputStream content = Parser.openOdfContent(is);
         Document document = null;
+        if (content != null) {
+            document = this.parseWithPooledBuilder(new InputSource(content),
+                    profile);
+        }
+        return document;
+    }
+
+    /**
+     * Positions an ODF package stream at its content.
+     * 
+     * @param is
+     *            the stream containing the ODF package.
+     * @return a stream containing content.xml, or null if the package has
+     *         no content.
+     * @throws IOException
+     *             if an I/O error occurred.
+     */
+    private static InputStream openOdfContent(final InputStream is)
+            throws IOException {
+        final ZipInputStream zipStream = new ZipInputStream(is);
         ZipEntry entry = zipStream.getNextEntry();
         while (entry != null) {
             if (Parser.CONTENT_XML.equals(entry.getName())) {
-                document = this.getDocumentBuilder().parse(zipStream);
-                entry = null;
-            } else {
-                entry = zipStream.getNextEntry();
+                return zipStream;
             }
+            entry = zipStream.getNextEntry();
         }
-        return document;
+        return null;
+    }
+
+    /**
+     * Positions an ODF package stream at its content, which must exist.
+     * 
+     * @param is
+     *            the stream containing the ODF package.
+     * @return a stream containing content.xml.
+     * @throws IOException
+     *             if an I/O error occurred, or the package has no content.
+     */
+    private static InputStream requireOdfContent(final InputStream is)
+            throws IOException {
+        final InputStream content = Parser.openOdfContent(is);
+        if (content == null) {
+            throw new IOException(Parser.NO_ODF_CONTENT);
+        }
+        return content;
     }
 
     /**
@@ -294,6 +628,51 @@ public final class Parser {
      */
     public Document parseStreamSourceAsXml(final StreamSource streamSource)
             throws SAXException, IOException {
+        return this.parseStreamSourceAsXml(streamSource, ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Parse a given StreamSource which represents an XML document with the
+     * given parser configuration.
+     * 
+     * @param streamSource
+     *            StreamSource to parse.
+     * @param profile
+     *            the parser configuration to use.
+     * @return the Document contained within.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred.
+     */
+    public Document parseStreamSourceAsXml(final StreamSource streamSource,
+            final ParserProfile profile) throws SAXException, IOException {
+        return this.parseWithPooledBuilder(Parser
+                .createInputSource(streamSource), profile);
+    }
+
+    private Document parseWithPooledBuilder(final InputSource inputSource,
+            final ParserProfile profile) throws SAXException, IOException {
+        final ObjectPool<DocumentBuilder> pool = this.builders.get(profile);
+        final DocumentBuilder builder = pool.borrow();
+        boolean reusable = false;
+        try {
+            final Document document = builder.parse(inputSource);
+            reusable = true;
+            return document;
+        } catch (final SAXException e) {
+            // Parse errors leave the builder in a usable state.
+            reusable = true;
+            throw e;
+        } finally {
+            if (reusable) {
+                pool.release(builder);
+            }
+        }
+    }
+
+    private static InputSource createInputSource(
+            final StreamSource streamSource) {
         InputSource inp = null;
         final String systemId = streamSource.getSystemId();
         if (systemId != null) {
@@ -312,8 +691,101 @@ public final class Parser {
             throw new IllegalArgumentException(Parser.BAD_STREAM_SOURCE
                     + streamSource);
         }
+        return inp;
+    }
 
-        return this.getDocumentBuilder().parse(inp);
+    /**
+     * Parse a StreamSource directly into a JEuclid DOM.
+     * <p>
+     * This is the same as parsing the source with
+     * {@link #parseStreamSource(StreamSource)} and converting the result with
+     * {@link net.sourceforge.jeuclid.DOMBuilder#createJeuclidDom(Node, boolean)}
+     * without content support, but the parser events are fed directly into
+     * the JEuclid DOM, so no intermediate DOM tree is created. ODF and XML
+     * format are auto-detected.
+     * 
+     * @param streamSource
+     *            A StreamSource.
+     * @return A JEuclid DOM for this source.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred, or the source is an ODF package
+     *             without content.
+     */
+    public DocumentElement parseStreamSourceAsJEuclidDom(
+            final StreamSource streamSource) throws SAXException, IOException {
+        return this.parseStreamSourceAsJEuclidDom(streamSource,
+                ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Parse a StreamSource directly into a JEuclid DOM with the given parser
+     * configuration.
+     * 
+     * @param streamSource
+     *            A StreamSource.
+     * @param profile
+     *            the parser configuration to use.
+     * @return A JEuclid DOM for this source.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred, or the source is an ODF package
+     *             without content.
+     * @see #parseStreamSourceAsJEuclidDom(StreamSource)
+     */
+    public DocumentElement parseStreamSourceAsJEuclidDom(
+            final StreamSource streamSource, final ParserProfile profile)
+            throws SAXException, IOException {
+        DocumentElement retVal = null;
+        InputStream inputStream = streamSource.getInputStream();
+        if (inputStream != null) {
+            if (!inputStream.markSupported()) {
+                inputStream = new BufferedInputStream(inputStream);
+            }
+            if (Parser.startsWithZipMagic(inputStream)) {
+                retVal = this.parseAsJEuclidDom(new InputSource(Parser
+                        .requireOdfContent(inputStream)), profile);
+            } else {
+                retVal = this.parseAsJEuclidDom(new InputSource(inputStream),
+                        profile);
+            }
+            inputStream.close();
+        }
+        if (retVal == null) {
+            retVal = this.parseAsJEuclidDom(Parser
+                    .createInputSource(streamSource), profile);
+        }
+        return retVal;
+    }
+
+    private DocumentElement parseAsJEuclidDom(final InputSource inputSource,
+            final ParserProfile profile) throws SAXException, IOException {
+        final ObjectPool<XMLReader> pool = this.readers.get(profile);
+        final XMLReader reader = pool.borrow();
+        final JEuclidDomHandler handler = new JEuclidDomHandler();
+        reader.setContentHandler(handler);
+        try {
+            reader.setProperty(Parser.LEXICAL_HANDLER, handler);
+        } catch (final SAXException e) {
+            Parser.LOGGER.debug("Comments are not supported: "
+                    + e.getMessage());
+        }
+        boolean reusable = false;
+        try {
+            reader.parse(inputSource);
+            reusable = true;
+        } catch (final SAXException e) {
+            // Parse errors leave the reader in a usable state.
+            reusable = true;
+            throw e;
+        } finally {
+            if (reusable) {
+                pool.release(reader);
+            }
+        }
+        return handler.getDocument();
     }
 
     /**
@@ -321,28 +793,145 @@ public final class Parser {
      * <p>
      * Please note:
      * <ul>
-     * <li>There is one instance of the builder per thread.</li>
-     * <li>The builder instance is not thread safe, so it may not be passed
-     * among threads.</li>
+     * <li>The builder is taken from a pool, or created if the pool is empty.
+     * It is not shared with any other caller.</li>
+     * <li>The builder instance is not thread safe, so it may not be used by
+     * multiple threads at the same time.</li>
+     * <li>The builder may be given back with
+     * {@link #returnDocumentBuilder(DocumentBuilder)} once it is no longer
+     * needed. If it is not given back, it is simply garbage collected.</li>
      * <li>Multiple Threads may call getDocumentBuilder concurrently</li>
      * </ul>
+     * The parse methods of this class use the pool internally, and should be
+     * preferred.
      * 
      * @return a DocumentBuilder
      */
     public DocumentBuilder getDocumentBuilder() {
-        // Note: No synchronization needed, as id will be different for every
-        // thread!
-        final long id = Thread.currentThread().getId();
-        final Reference<DocumentBuilder> builderRef = this.builders.get(id);
-        if (builderRef != null) {
-            final DocumentBuilder builder = builderRef.get();
-            if (builder != null) {
-                return builder;
-            }
+        return this.getDocumentBuilder(ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Retrieve a DocumentBuilder with the given parser configuration.
+     * 
+     * @param profile
+     *            the parser configuration to use.
+     * @return a DocumentBuilder
+     * @see #getDocumentBuilder()
+     */
+    public DocumentBuilder getDocumentBuilder(final ParserProfile profile) {
+        return this.builders.get(profile).borrow();
+    }
+
+    /**
+     * Create a new DocumentBuilder suitable for MathML parsing. Unlike
+     * {@link #getDocumentBuilder()}, the builder is not taken from the pool,
+     * and belongs to the caller.
+     * 
+     * @return a new DocumentBuilder
+     */
+    public DocumentBuilder newDocumentBuilder() {
+        return Parser.createDocumentBuilder(ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Give back a DocumentBuilder retrieved with {@link #getDocumentBuilder()}
+     * so it can be reused. The builder must not be used by the caller
+     * afterwards.
+     * 
+     * @param builder
+     *            the builder to give back.
+     */
+    public void returnDocumentBuilder(final DocumentBuilder builder) {
+        this.returnDocumentBuilder(builder, ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Give back a DocumentBuilder retrieved with
+     * {@link #getDocumentBuilder(ParserProfile)}.
+     * 
+     * @param builder
+     *            the builder to give back.
+     * @param profile
+     *            the parser configuration the builder was retrieved for.
+     */
+    public void returnDocumentBuilder(final DocumentBuilder builder,
+            final ParserProfile profile) {
+        this.builders.get(profile).release(builder);
+    }
+
+    /**
+     * Retrieve a namespace aware SAX reader suitable for MathML parsing.
+     * <p>
+     * The same rules as for {@link #getDocumentBuilder()} apply. The reader
+     * should be given back with
+     * {@link #returnXMLReader(XMLReader, ParserProfile)}.
+     * 
+     * @param profile
+     *            the parser configuration to use.
+     * @return an XMLReader
+     */
+    public XMLReader getXMLReader(final ParserProfile profile) {
+        return this.readers.get(profile).borrow();
+    }
+
+    /**
+     * Give back a SAX reader retrieved with
+     * {@link #getXMLReader(ParserProfile)}. Its content and lexical handlers
+     * are cleared.
+     * 
+     * @param reader
+     *            the reader to give back.
+     * @param profile
+     *            the parser configuration the reader was retrieved for.
+     */
+    public void returnXMLReader(final XMLReader reader,
+            final ParserProfile profile) {
+        this.readers.get(profile).release(reader);
+    }
+
+    /**
+     * @return the number of idle DocumentBuilders currently pooled.
+     */
+    public int getPooledDocumentBuilderCount() {
+        int count = 0;
+        for (final ObjectPool<?> pool : this.builders.values()) {
+            count += pool.getIdleCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of DocumentBuilders created so far.
+     */
+    public long getCreatedDocumentBuilderCount() {
+        long count = 0;
+        for (final ObjectPool<?> pool : this.builders.values()) {
+            count += pool.getCreatedCount();
         }
-        final DocumentBuilder builder = this.createDocumentBuilder();
-        this.builders.put(id, new SoftReference<>(builder));
-        return builder;
+        return count;
+    }
+
+    /**
+     * @return the number of idle SAX readers currently pooled.
+     */
+    public int getPooledXMLReaderCount() {
+        int count = 0;
+        for (final ObjectPool<?> pool : this.readers.values()) {
+            count += pool.getIdleCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of SAX readers created so far.
+     */
+    public long getCreatedXMLReaderCount() {
+        long count = 0;
+        for (final ObjectPool<?> pool : this.readers.values()) {
+            count += pool.getCreatedCount();
+        }
+        return count;
     }
 
     /**
@@ -358,15 +947,35 @@ public final class Parser {
      *             if an I/O error occurred.
      */
     public Node parse(final Source source) throws SAXException, IOException {
+        return this.parse(source, ParserProfile.DEFAULT);
+    }
+
+    /**
+     * Extract the top Node from a given Source, using the given parser
+     * configuration for sources which need parsing.
+     * 
+     * @param source
+     *            the Source to use. Currently supported are {@link DOMSource} ,
+     *            {@link StreamSource}
+     * @param profile
+     *            the parser configuration to use.
+     * @return the top NODE.
+     * @throws SAXException
+     *             if a parse error occurred.
+     * @throws IOException
+     *             if an I/O error occurred.
+     */
+    public Node parse(final Source source, final ParserProfile profile)
+            throws SAXException, IOException {
         final Node retVal;
         if (source instanceof StreamSource) {
             final StreamSource streamSource = (StreamSource) source;
-            retVal = this.parseStreamSource(streamSource);
+            retVal = this.parseStreamSource(streamSource, profile);
         } else if (source instanceof ImageSource) {
             final ImageSource imageSource = (ImageSource) source;
             final StreamSource streamSource = new StreamSource(imageSource
                     .getInputStream());
-            retVal = this.parseStreamSource(streamSource);
+            retVal = this.parseStreamSource(streamSource, profile);
         } else if (source instanceof DOMSource) {
             final DOMSource domSource = (DOMSource) source;
             retVal = domSource.getNode();
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.parser;
+
+/**
+ * Possible configurations of the XML parsers used by {@link Parser}.
+ *
+ * @version $Revision$
+ */
+public enum ParserProfile {
+    /**
+     * XInclude processing if supported, and DTDs from the DOCTYPE are loaded.
+     * Known MathML DTDs are taken from the classpath, other DTDs are loaded
+     * from their system id.
+     */
+    DEFAULT,
+    /**
+     * No XInclude processing and no DTD loading. If the document has a
+     * DOCTYPE, the MathML entities are predefined, regardless of the DTD
+     * given. External entities are ignored.
+     */
+    FAST,
+    /**
+     * Like {@link #FAST}, but with secure processing enabled and strict
+     * limits on entity expansion and element depth. Use this for untrusted
+     * input.
+     */
+    STRICT,
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import net.sourceforge.jeuclid.ResourceEntityResolver;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.EntityResolver2;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Entity resolver which parses the known MathML DTDs only once.
+ * <p>
+ * The first time a DTD from {@link ResourceEntityResolver} is used as
+ * external subset, it is parsed completely, including all entity sets. Only
+ * the declarations which matter to a non-validating parser, which are the
+ * general entities and the attribute declarations, are kept in a flat,
+ * read-only form. This form is shared by all parsers, and is a lot faster to
+ * process than the original DTD with its parameter entities and many
+ * external files.
+ * <p>
+ * If only predefined entities are allowed, the MathML 2 declarations are
+ * used as external subset for any DOCTYPE, and no other external entity is
+ * loaded.
+ *
+ * @version $Revision$
+ */
+@ThreadSafe
+final class PreparsedDtdResolver extends ResourceEntityResolver implements
+        EntityResolver2 {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(PreparsedDtdResolver.class);
+
+    private static final String DTD = "[dtd]";
+
+    private static final String DECLARATION_HANDLER = "http://xml.org/sax/properties/declaration-handler";
+
+    private static final String CDATA = "CDATA";
+
+    private static final String IMPLIED = "#IMPLIED";
+
+    private static final String REQUIRED = "#REQUIRED";
+
+    private static final Map<String, String> PREPARSED = new ConcurrentHashMap<>();
+
+    private final boolean predefinedOnly;
+
+    /**
+     * Default constructor.
+     */
+    PreparsedDtdResolver() {
+        this(false);
+    }
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param onlyPredefined
+     *            if true, only the predefined MathML declarations are used,
+     *            and nothing else is loaded.
+     */
+    PreparsedDtdResolver(final boolean onlyPredefined) {
+        this.predefinedOnly = onlyPredefined;
+    }
+
+    /** {@inheritDoc} */
+    public InputSource getExternalSubset(final String name,
+            final String baseURI) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public InputSource resolveEntity(final String name,
+            final String publicId, final String baseURI,
+            final String systemId) {
+        if (systemId == null) {
+            return null;
+        }
+        InputSource retval = null;
+        // Some parsers do not report the name of the external subset.
+        if (name == null || PreparsedDtdResolver.DTD.equals(name)) {
+            final String declarations;
+            if (this.predefinedOnly) {
+                declarations = this.getDeclarations(
+                        ResourceEntityResolver.MML2_PUBLICID,
+                        ResourceEntityResolver.MML2_SYSTEMID);
+            } else {
+                declarations = this.getDeclarations(publicId, systemId);
+            }
+            if (declarations.length() > 0) {
+                retval = new InputSource(new StringReader(declarations));
+                retval.setPublicId(publicId);
+                retval.setSystemId(systemId);
+            }
+        }
+        if (retval == null) {
+            if (this.predefinedOnly) {
+                retval = new InputSource(new StringReader(""));
+                retval.setPublicId(publicId);
+                retval.setSystemId(systemId);
+            } else {
+                retval = this.resolveEntity(publicId, systemId);
+            }
+        }
+        return retval;
+    }
+
+    private String getDeclarations(final String publicId,
+            final String systemId) {
+        final String key = publicId + ' ' + systemId;
+        String declarations = PreparsedDtdResolver.PREPARSED.get(key);
+        if (declarations == null) {
+            declarations = PreparsedDtdResolver.PREPARSED.computeIfAbsent(key,
+                    k -> this.preparse(publicId, systemId));
+        }
+        return declarations;
+    }
+
+    /**
+     * Parses a DTD and serializes its declarations.
+     *
+     * @return the declarations, or an empty string if the DTD is not known
+     *         or could not be parsed.
+     */
+    private String preparse(final String publicId, final String systemId) {
+        final InputSource original = this.resolveEntity(publicId, systemId);
+        if (original == null) {
+            return "";
+        }
+        try {
+            original.getByteStream().close();
+        } catch (final IOException e) {
+            PreparsedDtdResolver.LOGGER.debug(e.getMessage());
+        }
+        final StringBuilder doctype = new StringBuilder("<!DOCTYPE x");
+        if (publicId != null) {
+            doctype.append(" PUBLIC \"").append(publicId).append('"');
+        } else {
+            doctype.append(" SYSTEM");
+        }
+        doctype.append(" \"").append(systemId).append("\"><x/>");
+        final DeclarationCollector collector = new DeclarationCollector();
+        try {
+            final SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            final XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setEntityResolver(new ResourceEntityResolver());
+            reader.setProperty(PreparsedDtdResolver.DECLARATION_HANDLER,
+                    collector);
+            reader.parse(new InputSource(new StringReader(doctype
+                    .toString())));
+        } catch (final ParserConfigurationException | SAXException
+                | IOException e) {
+            PreparsedDtdResolver.LOGGER.debug("Could not preparse DTD "
+                    + systemId + ": " + e.getMessage());
+            return "";
+        }
+        return collector.getDeclarations();
+    }
+
+    /**
+     * Serializes the declarations reported by a parser.
+     */
+    private static final class DeclarationCollector extends DefaultHandler
+            implements DeclHandler {
+        private final StringBuilder declarations = new StringBuilder();
+
+        DeclarationCollector() {
+            // Empty on purpose.
+        }
+
+        String getDeclarations() {
+            return this.declarations.toString();
+        }
+
+        private void appendLiteral(final String value) {
+            this.declarations.append('"');
+            final int length = value.length();
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                switch (c) {
+                case '&':
+                case '%':
+                case '"':
+                case '<':
+                case '\r':
+                    this.declarations.append("&#").append((int) c).append(';');
+                    break;
+                default:
+                    this.declarations.append(c);
+                }
+            }
+            this.declarations.append('"');
+        }
+
+        /** {@inheritDoc} */
+        public void attributeDecl(final String eName, final String aName,
+                final String type, final String mode, final String value) {
+            if (PreparsedDtdResolver.CDATA.equals(type)
+                    && (PreparsedDtdResolver.IMPLIED.equals(mode) || PreparsedDtdResolver.REQUIRED
+                            .equals(mode))) {
+                // Has no influence on the parse result.
+                return;
+            }
+            this.declarations.append("<!ATTLIST ").append(eName).append(' ')
+                    .append(aName).append(' ').append(type);
+            if (mode != null) {
+                this.declarations.append(' ').append(mode);
+            }
+            if (value != null) {
+                this.declarations.append(' ');
+                this.appendLiteral(value);
+            }
+            this.declarations.append(">\n");
+        }
+
+        /** {@inheritDoc} */
+        public void elementDecl(final String name, final String model) {
+            // Not needed without validation.
+        }
+
+        /** {@inheritDoc} */
+        public void externalEntityDecl(final String name,
+                final String publicId, final String systemId) {
+            if (name.charAt(0) == '%') {
+                return;
+            }
+            this.declarations.append("<!ENTITY ").append(name);
+            if (publicId != null) {
+                this.declarations.append(" PUBLIC \"").append(publicId)
+                        .append('"');
+            } else {
+                this.declarations.append(" SYSTEM");
+            }
+            this.declarations.append(" \"").append(systemId).append("\">\n");
+        }
+
+        /** {@inheritDoc} */
+        public void internalEntityDecl(final String name, final String value) {
+            if (name.charAt(0) == '%') {
+                return;
+            }
+            this.declarations.append("<!ENTITY ").append(name).append(' ');
+            this.appendLiteral(value);
+            this.declarations.append(">\n");
+        }
+    }
+}
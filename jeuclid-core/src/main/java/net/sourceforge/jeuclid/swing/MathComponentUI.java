@@ -19,6 +19,8 @@
 package net.sourceforge.jeuclid.swing;
 
 import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.context.Parameter;
 import net.sourceforge.jeuclid.layout.JEuclidView;
 import org.w3c.dom.Node;
 
@@ -26,6 +28,7 @@ import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.plaf.ComponentUI;
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -78,6 +81,26 @@ public class MathComponentUI extends ComponentUI implements
         return cache.getJeculidView((Graphics2D) g);
     }
 
+    /**
+     * Creates the view for a component. This is called once for every
+     * document, set of parameters and FontRenderContext, and not on every
+     * paint.
+     * 
+     * @param document
+     *            the document to display.
+     * @param layoutContext
+     *            the parameters of the component.
+     * @param frc
+     *            FontRenderContext of the Graphics context the view is drawn
+     *            onto, or null if it is not known.
+     * @return a new view.
+     */
+    protected JEuclidView createView(final Node document,
+            final LayoutContext layoutContext, final FontRenderContext frc) {
+        return JEuclidView.createHeadlessView(document, layoutContext, frc,
+                false);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void paint(final Graphics g, final JComponent c) {
@@ -197,7 +220,21 @@ public class MathComponentUI extends ComponentUI implements
 
     /** {@inheritDoc} */
     public void propertyChange(final PropertyChangeEvent evt) {
-        this.contextCache.remove(evt.getSource());
+        if (MathComponentUI.affectsLayout(evt.getPropertyName())) {
+            this.contextCache.remove(evt.getSource());
+        }
+    }
+
+    private static boolean affectsLayout(final String propertyName) {
+        if ("document".equals(propertyName)) {
+            return true;
+        }
+        for (final Parameter param : Parameter.values()) {
+            if (param.name().equals(propertyName)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** {@inheritDoc} */
@@ -270,21 +307,37 @@ public class MathComponentUI extends ComponentUI implements
                 (float) point.getY());
     }
 
-    private static class ViewContext {
-        final Node document;
-        final LayoutContext layoutContext;
-        final Map<Graphics2D, JEuclidView> jeuclidViews = new HashMap<>();
+    /**
+     * The views of one component, for the document and parameters the
+     * component had when this context was created. Swing passes a new
+     * Graphics object to almost every paint, so views are kept per
+     * FontRenderContext, which is all the layout depends on.
+     */
+    private class ViewContext {
+        private final Node document;
+
+        private final LayoutContext layoutContext;
 
-        public ViewContext(JMathComponent jMathComponent) {
+        private final Map<FontRenderContext, JEuclidView> jeuclidViews = new HashMap<>();
+
+        public ViewContext(final JMathComponent jMathComponent) {
             this.document = jMathComponent.getDocument();
-            this.layoutContext = jMathComponent.getParameters();
+            this.layoutContext = FrozenLayoutContext.of(jMathComponent
+                    .getParameters());
         }
 
-        public JEuclidView getJeculidView(Graphics2D g2d) {
-            JEuclidView jeuclidView = jeuclidViews.get(g2d);
+        public JEuclidView getJeculidView(final Graphics2D g2d) {
+            final FontRenderContext frc;
+            if (g2d == null) {
+                frc = null;
+            } else {
+                frc = g2d.getFontRenderContext();
+            }
+            JEuclidView jeuclidView = this.jeuclidViews.get(frc);
             if (jeuclidView == null) {
-                jeuclidView = new JEuclidView(document, layoutContext, g2d);
-                jeuclidViews.put(g2d, jeuclidView);
+                jeuclidView = MathComponentUI.this.createView(this.document,
+                        this.layoutContext, frc);
+                this.jeuclidViews.put(frc, jeuclidView);
             }
             return jeuclidView;
         }
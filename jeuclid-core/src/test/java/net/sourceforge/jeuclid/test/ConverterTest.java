@@ -25,16 +25,34 @@ import net.sourceforge.jeuclid.context.Parameter;
 import net.sourceforge.jeuclid.converter.Converter;
 import net.sourceforge.jeuclid.converter.ConverterPlugin.DocumentWithDimension;
 import net.sourceforge.jeuclid.converter.ConverterRegistry;
+import net.sourceforge.jeuclid.converter.OutputRequest;
+import net.sourceforge.jeuclid.converter.OutputResult;
+import net.sourceforge.jeuclid.converter.RenderCache;
 import net.sourceforge.jeuclid.elements.generic.DocumentElement;
+import net.sourceforge.jeuclid.layout.JEuclidView;
 import org.junit.Assert;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.svg.SVGDocument;
 
+import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @version $Revision$
@@ -336,4 +354,256 @@ public class ConverterTest {
                 + ltpixel, ltpixel, white);
     }
 
+    /**
+     * Tests if several outputs can be created from a single layout.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testConverterMultiOutput() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString(ConverterTest.TEST1);
+        final MutableLayoutContext params = new LayoutContextImpl(
+                LayoutContextImpl.getDefaultLayoutContext());
+        params.setParameter(Parameter.MATHSIZE, 25f);
+        final JEuclidView view = new JEuclidView(doc, params, null);
+
+        final ByteArrayOutputStream png1 = new ByteArrayOutputStream();
+        final ByteArrayOutputStream png2 = new ByteArrayOutputStream();
+        final ByteArrayOutputStream svg = new ByteArrayOutputStream();
+        final ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        final ByteArrayOutputStream metrics = new ByteArrayOutputStream();
+        final List<OutputResult> results = Converter.getInstance().convert(
+                view,
+                Arrays.asList(new OutputRequest("image/png", png1),
+                        new OutputRequest("image/png", 2.0f, png2),
+                        new OutputRequest(Converter.TYPE_SVG, svg),
+                        new OutputRequest("application/pdf", pdf),
+                        new OutputRequest(Converter.TYPE_METRICS, 2.0f,
+                                metrics)));
+
+        Assert.assertEquals(5, results.size());
+        for (final OutputResult result : results) {
+            Assert.assertTrue("Failed: " + result, result.isSuccess());
+            Assert.assertTrue(result.getElapsedNanos() >= 0);
+        }
+        final Dimension d1 = results.get(0).getDimension();
+        final Dimension d2 = results.get(1).getDimension();
+        Assert.assertEquals(d1.width * 2, d2.width, 1);
+        Assert.assertEquals(d1.height * 2, d2.height, 1);
+        Assert.assertEquals(d1, results.get(2).getDimension());
+
+        final BufferedImage bi = ImageIO.read(new ByteArrayInputStream(png2
+                .toByteArray()));
+        Assert.assertEquals(d2.width, bi.getWidth());
+        Assert.assertTrue(svg.size() > 2048);
+        Assert.assertTrue(pdf.size() > 2048);
+
+        final Properties props = new Properties();
+        props.load(new ByteArrayInputStream(metrics.toByteArray()));
+        Assert.assertEquals(view.getWidth() * 2.0f, Float.parseFloat(props
+                .getProperty("width")), 0.001f);
+        Assert.assertEquals(view.getAscentHeight() * 2.0f, Float
+                .parseFloat(props.getProperty("ascent")), 0.001f);
+        Assert.assertEquals(view.getDescentHeight() * 2.0f, Float
+                .parseFloat(props.getProperty("baseline")), 0.001f);
+        Assert.assertEquals(d2.height, Float.parseFloat(props
+                .getProperty("height")), 2.0f);
+        Assert.assertEquals(Converter.EXTENSION_METRICS, ConverterRegistry
+                .getInstance().getSuffixForMimeType(Converter.TYPE_METRICS));
+    }
+
+    /**
+     * Tests writing several documents into one multi-page PDF.
+     * 
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testConverterMultiPage() throws Exception {
+        final Document doc1 = MathMLParserSupport
+                .parseString(ConverterTest.TEST1);
+        final Document doc2 = MathMLParserSupport
+                .parseString("<math><mfrac><mi>a</mi><mi>b</mi></mfrac></math>");
+        final ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        final List<Dimension> sizes = Converter.getInstance().convert(
+                Arrays.asList(doc1, doc2), pdf, "application/pdf",
+                LayoutContextImpl.getDefaultLayoutContext());
+        Assert.assertNotNull(sizes);
+        Assert.assertEquals(2, sizes.size());
+        Assert.assertEquals(Converter.getInstance().convert(doc2,
+                new ByteArrayOutputStream(), "application/pdf",
+                LayoutContextImpl.getDefaultLayoutContext()), sizes.get(1));
+        final String content = new String(pdf.toByteArray(), "ISO-8859-1");
+        Assert.assertEquals(2, content.split("/Type /Page\\b").length - 1);
+
+        Assert.assertNull(Converter.getInstance().convert(
+                Arrays.asList(doc1, doc2), new ByteArrayOutputStream(),
+                "image/png", LayoutContextImpl.getDefaultLayoutContext()));
+    }
+
+    /**
+     * Tests the render cache in memory and on disk.
+     * 
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testRenderCache() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString(ConverterTest.TEST1);
+        final ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        final Dimension dim = Converter.getInstance().convert(doc, direct,
+                "image/png", LayoutContextImpl.getDefaultLayoutContext());
+
+        final File dir = new File(this.getOutDir(), "cache"
+                + System.nanoTime());
+        final RenderCache cache = new RenderCache(1024 * 1024, dir);
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Assert.assertEquals(dim, cache.convert(doc, out, "image/png",
+                    LayoutContextImpl.getDefaultLayoutContext()));
+            Assert.assertArrayEquals(direct.toByteArray(), out.toByteArray());
+        }
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(2, cache.getMemoryHitCount());
+        Assert.assertEquals(1, cache.getMemoryEntryCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+
+        // Same formula, different type or context.
+        cache.convert(doc, new ByteArrayOutputStream(), Converter.TYPE_SVG,
+                LayoutContextImpl.getDefaultLayoutContext());
+        final MutableLayoutContext params = new LayoutContextImpl(
+                LayoutContextImpl.getDefaultLayoutContext());
+        params.setParameter(Parameter.MATHSIZE, 25f);
+        cache.convert(doc, new ByteArrayOutputStream(), "image/png", params);
+        Assert.assertEquals(3, cache.getMissCount());
+
+        // As after a restart
+        final RenderCache restarted = new RenderCache(1024 * 1024, dir);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(dim, restarted.convert(doc, out, "image/png",
+                LayoutContextImpl.getDefaultLayoutContext()));
+        Assert.assertArrayEquals(direct.toByteArray(), out.toByteArray());
+        Assert.assertEquals(1, restarted.getDiskHitCount());
+        Assert.assertEquals(0, restarted.getMissCount());
+
+        // Room for one result only
+        final Document x = MathMLParserSupport
+                .parseString("<math><mi>x</mi></math>");
+        final RenderCache small = new RenderCache(direct.size() + 100);
+        small.convert(doc, new ByteArrayOutputStream(), "image/png",
+                LayoutContextImpl.getDefaultLayoutContext());
+        small.convert(x, new ByteArrayOutputStream(), "image/png",
+                LayoutContextImpl.getDefaultLayoutContext());
+        Assert.assertEquals(1, small.getEvictionCount());
+        Assert.assertEquals(1, small.getMemoryEntryCount());
+        Assert.assertTrue(small.getMemoryBytes() <= small.getMaxMemoryBytes());
+        small.convert(x, new ByteArrayOutputStream(), "image/png",
+                LayoutContextImpl.getDefaultLayoutContext());
+        Assert.assertEquals(1, small.getMemoryHitCount());
+    }
+
+    /**
+     * Tests that damaged files in the render cache are treated as misses and
+     * replaced.
+     * 
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testRenderCacheCorruptFile() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString(ConverterTest.TEST1);
+        final ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        Converter.getInstance().convert(doc, direct, "image/png",
+                LayoutContextImpl.getDefaultLayoutContext());
+
+        final File dir = new File(this.getOutDir(), "cache"
+                + System.nanoTime());
+        new RenderCache(0, dir).convert(doc, new ByteArrayOutputStream(),
+                "image/png", LayoutContextImpl.getDefaultLayoutContext());
+        final File[] subdirs = dir.listFiles();
+        Assert.assertEquals(1, subdirs.length);
+        final File file = subdirs[0].listFiles()[0];
+        final byte[] valid = Files.readAllBytes(file.toPath());
+
+        final byte[][] damaged = {
+                // Empty
+                {},
+                // Wrong magic number
+                ConverterTest.withInt(valid, 0, 0x12345678),
+                // Negative length
+                ConverterTest.withInt(valid, 16, -1),
+                // Length beyond the end of the file
+                ConverterTest.withInt(valid, 16, Integer.MAX_VALUE),
+                // Truncated
+                Arrays.copyOf(valid, valid.length - 1), };
+        for (final byte[] content : damaged) {
+            Files.write(file.toPath(), content);
+            final RenderCache cache = new RenderCache(0, dir);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cache.convert(doc, out, "image/png", LayoutContextImpl
+                    .getDefaultLayoutContext());
+            Assert.assertArrayEquals(direct.toByteArray(), out.toByteArray());
+            Assert.assertEquals(0, cache.getDiskHitCount());
+            Assert.assertEquals(1, cache.getMissCount());
+            Assert.assertArrayEquals(valid, Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    private static byte[] withInt(final byte[] data, final int offset,
+            final int value) {
+        final byte[] result = data.clone();
+        ByteBuffer.wrap(result).putInt(offset, value);
+        return result;
+    }
+
+    /**
+     * Tests that concurrent requests for the same result render it once.
+     * 
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testRenderCacheCoalescing() throws Exception {
+        final int threads = 16;
+        final Document[] docs = new Document[threads];
+        for (int i = 0; i < threads; i++) {
+            // Separate, but equal documents for every thread, two formulas.
+            docs[i] = MathMLParserSupport
+                    .parseString(i % 2 == 0 ? ConverterTest.TEST1
+                            : ConverterTest.TEST2);
+        }
+        final RenderCache cache = new RenderCache(1024 * 1024);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < threads; i++) {
+                final Document doc = docs[i];
+                results.add(executor.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        start.await();
+                        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        cache.convert(doc, out, "image/png", LayoutContextImpl
+                                .getDefaultLayoutContext());
+                        return out.toByteArray();
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 2; i < threads; i++) {
+                Assert.assertArrayEquals(results.get(i % 2).get(), results
+                        .get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(threads - 2, cache.getCoalescedCount()
+                + cache.getMemoryHitCount());
+    }
+
 }
@@ -19,17 +19,26 @@
 package net.sourceforge.jeuclid.test;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import net.sourceforge.jeuclid.DOMBuilder;
+import net.sourceforge.jeuclid.MathMLSerializer;
 import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+import net.sourceforge.jeuclid.elements.generic.DocumentElement;
 import net.sourceforge.jeuclid.elements.presentation.token.Mspace;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.mathml.MathMLPresentationToken;
 import org.xml.sax.InputSource;
@@ -133,4 +142,139 @@ public class DOMBuilderTest {
         Assert.assertEquals(mn.getNamespaceURI(), AbstractJEuclidElement.URI);
     }
 
+    /**
+     * Tests adding the MathML namespace while building the DOM.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testAddNamespace() throws Exception {
+        final Document doc = this.parse("<math xmlns:x='http://bla'>"
+                + "<mi x:y='z'>a</mi><x:foo/>b<![CDATA[c]]><!--d--></math>");
+        final Document jdoc = DOMBuilder.getInstance().createJeuclidDom(doc,
+                false, true);
+        final Node mathNode = jdoc.getFirstChild();
+        Assert.assertEquals("mml:math", mathNode.getNodeName());
+        Assert.assertEquals(AbstractJEuclidElement.URI, mathNode
+                .getNamespaceURI());
+        final Element mi = (Element) mathNode.getFirstChild();
+        Assert.assertEquals("mml:mi", mi.getNodeName());
+        Assert.assertEquals("z", mi.getAttributeNS("http://bla", "y"));
+        Assert.assertEquals("a", mi.getTextContent());
+        final Node foo = mi.getNextSibling();
+        Assert.assertEquals("x:foo", foo.getNodeName());
+        Assert.assertEquals("http://bla", foo.getNamespaceURI());
+        Assert.assertEquals("bc", foo.getNextSibling().getNodeValue());
+        Assert.assertEquals(Node.COMMENT_NODE, mathNode.getLastChild()
+                .getNodeType());
+    }
+
+    /**
+     * Tests that deeply nested documents can be built.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testDeepNesting() throws Exception {
+        final int depth = 200;
+        final StringBuilder b = new StringBuilder("<math>");
+        for (int i = 0; i < depth; i++) {
+            b.append("<mrow>");
+        }
+        b.append("<mi>x</mi>");
+        for (int i = 0; i < depth; i++) {
+            b.append("</mrow>");
+        }
+        b.append("</math>");
+        final Document jdoc = DOMBuilder.getInstance().createJeuclidDom(
+                this.parse(b.toString()), false);
+        Node n = jdoc.getFirstChild();
+        for (int i = 0; i <= depth; i++) {
+            n = n.getFirstChild();
+        }
+        Assert.assertEquals("mi", n.getNodeName());
+        Assert.assertEquals("x", n.getTextContent());
+    }
+
+    /**
+     * Tests that content markup which needs the stylesheet is not converted
+     * without it.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testWithoutStylesheet() throws Exception {
+        final String ns = "<math xmlns=\"http://www.w3.org/1998/Math/MathML\">";
+        final Document supported = this.parse(ns
+                + "<apply><plus/><ci>a</ci><cn>1</cn></apply></math>");
+        final DocumentElement d = DOMBuilder.getInstance()
+                .createJeuclidDomWithoutStylesheet(supported, false);
+        Assert.assertNotNull(d);
+        Assert.assertEquals("mrow", d.getFirstChild().getFirstChild()
+                .getNodeName());
+
+        final Document unsupported = this.parse(ns
+                + "<apply><int/><ci>f</ci></apply></math>");
+        Assert.assertNull(DOMBuilder.getInstance()
+                .createJeuclidDomWithoutStylesheet(unsupported, false));
+        Assert.assertNotNull(DOMBuilder.getInstance().createJeuclidDom(
+                unsupported, true, false));
+    }
+
+    /**
+     * Builds DOMs from several threads at once. All results must be equal to
+     * the result built by a single thread.
+     * <p>
+     * Integrals are only supported by the content stylesheet, so this runs
+     * the pooled transformers concurrently.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testConcurrentBuild() throws Exception {
+        final String source = "<math "
+                + "xmlns=\"http://www.w3.org/1998/Math/MathML\">"
+                + "<apply><int/><bvar><ci>x</ci></bvar>"
+                + "<lowlimit><cn>0</cn></lowlimit>"
+                + "<uplimit><cn>1</cn></uplimit>"
+                + "<apply><root/><ci>x</ci></apply></apply>"
+                + "<mrow><mi>x</mi><mo>=</mo><mn>2</mn></mrow></math>";
+        final Document doc = this.parse(source);
+        final String expected = MathMLSerializer.serializeDocument(DOMBuilder
+                .getInstance().createJeuclidDom(doc), false, false);
+        Assert.assertTrue(expected, expected.contains("\u222b"));
+        final int threads = 8;
+        final int runs = 50;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < threads; t++) {
+                // W3C DOMs are not thread safe, even for reading.
+                final Document ownDoc = this.parse(source);
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        boolean same = true;
+                        for (int i = 0; i < runs; i++) {
+                            same &= expected.equals(MathMLSerializer
+                                    .serializeDocument(DOMBuilder
+                                            .getInstance().createJeuclidDom(
+                                                    ownDoc), false, false));
+                        }
+                        return same;
+                    }
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
@@ -18,6 +18,7 @@
 
 package net.sourceforge.jeuclid.test;
 
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Set;
@@ -188,6 +189,33 @@ public class DOMModelTest {
                 reserial.isEqualNode(origDoc));
     }
 
+    /**
+     * Tests serialization to a stream with formatting.
+     *
+     * @throws Exception
+     *             if anything goes wrong.
+     */
+    @Test
+    public void testSerializationToStream() throws Exception {
+        final Document origDoc = MathMLParserSupport
+                .parseString("<math xmlns='http://www.w3.org/1998/Math/MathML'>"
+                        + "<mrow><mi mathvariant='bold'>x&amp;\u03b1</mi>"
+                        + "<mo>&lt;</mo><mn>1</mn></mrow></math>");
+        final MathMLDocument mathMLDoc = DOMBuilder.getInstance()
+                .createJeuclidDom(origDoc);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MathMLSerializer.serialize(mathMLDoc, out, true, true, false);
+        final String reserialStr = out.toString("UTF-8");
+        Assert.assertTrue(reserialStr, reserialStr
+                .contains("\n  <mrow>\n    <mi mathvariant=\"bold\">x&amp;\u03b1</mi>"));
+        Assert.assertTrue(reserialStr, reserialStr.contains("<!DOCTYPE math"));
+        final Document reserial = MathMLParserSupport.parseString(reserialStr);
+        // Formatting only adds whitespace.
+        Assert.assertEquals(origDoc.getDocumentElement().getTextContent(),
+                reserial.getDocumentElement().getTextContent().replaceAll(
+                        "\\s", ""));
+    }
+
     /**
      * Tests is all attributes on mathOperator work.
      *
@@ -19,12 +19,17 @@
 package net.sourceforge.jeuclid.test;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import net.sourceforge.jeuclid.Constants;
 import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.MutableLayoutContext;
 import net.sourceforge.jeuclid.context.Display;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.context.InlineLayoutContext;
 import net.sourceforge.jeuclid.context.LayoutContextImpl;
 import net.sourceforge.jeuclid.context.Parameter;
 import net.sourceforge.jeuclid.elements.generic.DocumentElement;
@@ -169,4 +174,55 @@ public class LayoutContextParamTest {
         Assert.assertEquals(testContext1.getParameter(Parameter.MATHSIZE),
                 13.0f);
     }
+
+    /**
+     * Tests {@link FrozenLayoutContext}.
+     */
+    @Test
+    public void testFrozen() {
+        final FrozenLayoutContext defaults = FrozenLayoutContext.getDefault();
+        final MutableLayoutContext mutable = new LayoutContextImpl(
+                LayoutContextImpl.getDefaultLayoutContext());
+        Assert.assertEquals(defaults, ((LayoutContextImpl) mutable).freeze());
+        Assert.assertSame(defaults, FrozenLayoutContext.of(defaults));
+
+        final FrozenLayoutContext larger = defaults.with(Parameter.MATHSIZE,
+                20f);
+        Assert.assertEquals(20f, larger.getParameter(Parameter.MATHSIZE));
+        Assert.assertEquals(12f, defaults.getParameter(Parameter.MATHSIZE));
+        Assert.assertFalse(defaults.equals(larger));
+        Assert.assertFalse(defaults.getFingerprint() == larger
+                .getFingerprint());
+        Assert.assertSame(larger, larger.with(Parameter.MATHSIZE, "20"));
+
+        mutable.setParameter(Parameter.MATHSIZE, 20f);
+        final FrozenLayoutContext copy = FrozenLayoutContext.of(mutable);
+        Assert.assertEquals(larger, copy);
+        Assert.assertEquals(larger.hashCode(), copy.hashCode());
+        Assert.assertEquals(larger.getFingerprint(), copy.getFingerprint());
+        Assert.assertEquals(defaults, larger.with(Parameter.MATHSIZE, 12f));
+        Assert.assertEquals(defaults.getFingerprint(), larger.with(
+                Parameter.MATHSIZE, 12f).getFingerprint());
+
+        // Colors differing in alpha only
+        Assert.assertFalse(defaults.with(Parameter.MATHCOLOR,
+                new Color(0, 0, 0, 128)).getFingerprint() == defaults
+                .getFingerprint());
+
+        // Lists are copied
+        final List<String> fonts = new ArrayList<String>();
+        fonts.add("Arial");
+        final FrozenLayoutContext withFonts = defaults.with(
+                Parameter.FONTS_SERIF, fonts);
+        fonts.add("Courier");
+        Assert.assertEquals(Collections.singletonList("Arial"), withFonts
+                .getParameter(Parameter.FONTS_SERIF));
+
+        // Other contexts
+        final LayoutContext inline = new InlineLayoutContext(defaults);
+        Assert.assertEquals(defaults.with(Parameter.DISPLAY, Display.INLINE),
+                FrozenLayoutContext.of(inline));
+        Assert.assertEquals(Display.INLINE, new LayoutContextImpl(inline)
+                .getParameter(Parameter.DISPLAY));
+    }
 }
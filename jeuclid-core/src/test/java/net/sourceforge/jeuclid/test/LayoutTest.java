@@ -19,20 +19,58 @@
 package net.sourceforge.jeuclid.test;
 
 import net.sourceforge.jeuclid.DOMBuilder;
+import net.sourceforge.jeuclid.LayoutContext;
 import net.sourceforge.jeuclid.MathMLParserSupport;
+import net.sourceforge.jeuclid.MutableLayoutContext;
+import net.sourceforge.jeuclid.context.FrozenLayoutContext;
+import net.sourceforge.jeuclid.context.LayoutContextImpl;
+import net.sourceforge.jeuclid.context.Parameter;
 import net.sourceforge.jeuclid.elements.presentation.general.Mfrac;
+import net.sourceforge.jeuclid.font.FontFactory;
 import net.sourceforge.jeuclid.elements.presentation.token.Mi;
 import net.sourceforge.jeuclid.elements.presentation.token.Mn;
+import net.sourceforge.jeuclid.layout.DisplayList;
+import net.sourceforge.jeuclid.layout.GraphicsObject;
 import net.sourceforge.jeuclid.layout.JEuclidView;
+import net.sourceforge.jeuclid.layout.LayoutInfo;
 import net.sourceforge.jeuclid.layout.LayoutStage;
 import net.sourceforge.jeuclid.layout.LayoutableNode;
+import net.sourceforge.jeuclid.layout.StoredLayout;
+import org.apache.batik.dom.GenericDOMImplementation;
+import org.apache.batik.svggen.SVGGraphics2D;
 import org.junit.Assert;
 import org.junit.Test;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.mathml.*;
 import org.w3c.dom.views.DocumentView;
 
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @version $Revision$
@@ -216,4 +254,593 @@ public class LayoutTest {
         final Node five = mrow.getFirstChild().getNextSibling();
         Assert.assertSame(rlist.get(3).getNode(), five);
     }
+
+    /**
+     * Test if a metrics-only view has the same extents as a full view and is
+     * upgraded when drawn.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testMetricsOnlyView() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString(ConverterTest.TEST1);
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        final JEuclidView full = new JEuclidView(doc, context, null);
+        final JEuclidView metrics = new JEuclidView(doc, context, null, true);
+
+        Assert.assertTrue(metrics.isMetricsOnly());
+        Assert.assertEquals(full.getWidth(), metrics.getWidth(), 0.001f);
+        Assert.assertEquals(full.getAscentHeight(), metrics
+                .getAscentHeight(), 0.001f);
+        Assert.assertEquals(full.getDescentHeight(), metrics
+                .getDescentHeight(), 0.001f);
+
+        // math / mrow / munderover / mo
+        final LayoutableNode mo = (LayoutableNode) ((Node) metrics
+                .getDocument()).getFirstChild().getFirstChild()
+                .getFirstChild().getFirstChild();
+        Assert.assertTrue(metrics.getInfo(mo).getGraphicObjects().isEmpty());
+
+        final BufferedImage image = new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_ARGB);
+        metrics.draw(image.createGraphics(), 0, 0);
+        Assert.assertFalse(metrics.isMetricsOnly());
+        Assert.assertFalse(metrics.getInfo(mo).getGraphicObjects().isEmpty());
+        Assert.assertEquals(full.getWidth(), metrics.getWidth(), 0.001f);
+    }
+
+    /**
+     * Test if a metrics-only layout does not create any graphic objects.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testMetricsOnlyCreatesNoGraphics() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString("<math><mstyle mathbackground='yellow'>"
+                        + "<mo stretchy='true'>(</mo>"
+                        + "<mfrac><mi>a</mi><mn>2</mn></mfrac>"
+                        + "<mfrac bevelled='true'><mi>a</mi><mn>2</mn></mfrac>"
+                        + "<msqrt><mi>x</mi></msqrt>"
+                        + "<mroot><mi>x</mi><mn>3</mn></mroot>"
+                        + "<menclose notation='longdiv updiagonalstrike "
+                        + "downdiagonalstrike actuarial'><mi>y</mi></menclose>"
+                        + "<mtable frame='solid' rowlines='solid' "
+                        + "columnlines='dashed'><mtr><mtd><mn>1</mn></mtd>"
+                        + "<mtd><mn>2</mn></mtd></mtr><mtr><mtd><mn>3</mn>"
+                        + "</mtd><mtd><mn>4</mn></mtd></mtr></mtable>"
+                        + "<mo stretchy='true'>)</mo></mstyle></math>");
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+
+        final LayoutTest.CountingView full = new LayoutTest.CountingView(doc,
+                context, false);
+        full.getWidth();
+        Assert.assertTrue(full.count[0] > 0);
+
+        final LayoutTest.CountingView metrics = new LayoutTest.CountingView(
+                doc, context, true);
+        Assert.assertEquals(full.getWidth(), metrics.getWidth(), 0.001f);
+        Assert.assertTrue(metrics.isMetricsOnly());
+        Assert.assertEquals(0, metrics.count[0]);
+    }
+
+    /**
+     * A view which counts all graphic objects handed to its layout infos.
+     */
+    private static final class CountingView extends JEuclidView {
+        private final int[] count = new int[1];
+
+        CountingView(final Node node, final LayoutContext context,
+                final boolean metricsOnly) {
+            super(node, context, null, metricsOnly);
+        }
+
+        @Override
+        public LayoutInfo getInfo(final LayoutableNode node) {
+            final LayoutInfo info = super.getInfo(node);
+            if (info == null) {
+                return null;
+            }
+            final int[] c = this.count;
+            return (LayoutInfo) Proxy.newProxyInstance(LayoutInfo.class
+                    .getClassLoader(), new Class<?>[] { LayoutInfo.class },
+                    new InvocationHandler() {
+                        public Object invoke(final Object proxy,
+                                final Method method, final Object[] args)
+                                throws Throwable {
+                            final String name = method.getName();
+                            if ("setGraphicsObject".equals(name)) {
+                                c[0]++;
+                            } else if ("getGraphicObjects".equals(name)) {
+                                final List<GraphicsObject> list = info
+                                        .getGraphicObjects();
+                                return new AbstractList<GraphicsObject>() {
+                                    @Override
+                                    public GraphicsObject get(final int i) {
+                                        return list.get(i);
+                                    }
+
+                                    @Override
+                                    public int size() {
+                                        return list.size();
+                                    }
+
+                                    @Override
+                                    public void add(final int i,
+                                            final GraphicsObject o) {
+                                        c[0]++;
+                                        list.add(i, o);
+                                    }
+                                };
+                            }
+                            return method.invoke(info, args);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Test if a view layouted with a FontRenderContext only gives the same
+     * result as one layouted with a Graphics context.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testHeadlessView() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString(ConverterTest.TEST1);
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        final JEuclidView withGraphics = new JEuclidView(doc, context,
+                new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+                        .createGraphics());
+        final JEuclidView headless = JEuclidView.createHeadlessView(doc,
+                context, new FontRenderContext(null, false, false), false);
+
+        Assert.assertEquals(withGraphics.getWidth(), headless.getWidth(),
+                0.001f);
+        Assert.assertEquals(withGraphics.getAscentHeight(), headless
+                .getAscentHeight(), 0.001f);
+        Assert.assertEquals(withGraphics.getDescentHeight(), headless
+                .getDescentHeight(), 0.001f);
+        final Font font = new Font(Font.SERIF, Font.PLAIN, 12);
+        Assert.assertEquals(withGraphics.getFontMetrics(font).getAscent(),
+                headless.getFontMetrics(font).getAscent());
+        Assert.assertEquals(withGraphics.getFontMetrics(font).getDescent(),
+                headless.getFontMetrics(font).getDescent());
+    }
+
+    /**
+     * Test if reusing the layout of identical subtrees gives the same result
+     * as laying out every subtree.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testReuseSubtreeLayout() throws Exception {
+        final String msup = "<msup><mi>x</mi><mn>2</mn></msup>";
+        final StringBuilder mml = new StringBuilder("<math><mtable>");
+        for (int i = 0; i < 4; i++) {
+            mml.append("<mtr><mtd>").append(msup).append("</mtd><mtd>")
+                    .append("<mstyle mathvariant='bold'>").append(msup)
+                    .append("</mstyle></mtd><mtd><msub><mi>y</mi>")
+                    .append(msup).append("</msub></mtd><mtd><mrow><mo>(")
+                    .append("</mo>").append(msup).append("<mo>)</mo></mrow>")
+                    .append("</mtd></mtr>");
+        }
+        mml.append("</mtable></math>");
+        final Document doc = MathMLParserSupport.parseString(mml.toString());
+
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        final MutableLayoutContext reuseContext = new LayoutContextImpl(
+                context);
+        reuseContext.setParameter(Parameter.REUSE_SUBTREE_LAYOUT, true);
+        final JEuclidView plain = new JEuclidView(doc, context, null);
+        final JEuclidView reused = new JEuclidView(doc, reuseContext, null);
+
+        Assert.assertEquals(plain.getWidth(), reused.getWidth(), 0.001f);
+        Assert.assertEquals(plain.getAscentHeight(), reused
+                .getAscentHeight(), 0.001f);
+        Assert.assertEquals(plain.getDescentHeight(), reused
+                .getDescentHeight(), 0.001f);
+        Assert.assertEquals(0, plain.getReusedSubtreeCount());
+        // Three reusable msup per row, identical rows and cells.
+        Assert.assertTrue(reused.getReusedSubtreeCount() >= 9);
+
+        final int width = (int) Math.ceil(plain.getWidth()) + 2;
+        final int height = (int) Math.ceil(plain.getAscentHeight()
+                + plain.getDescentHeight()) + 2;
+        final BufferedImage expected = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        final BufferedImage actual = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g1 = expected.createGraphics();
+        plain.draw(g1, 1, plain.getAscentHeight() + 1);
+        g1.dispose();
+        final Graphics2D g2 = actual.createGraphics();
+        reused.draw(g2, 1, reused.getAscentHeight() + 1);
+        g2.dispose();
+        LayoutTest.assertSameImage(expected, actual);
+    }
+
+    private static void assertSameImage(final BufferedImage expected,
+            final BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                Assert.assertEquals("Pixel " + x + "," + y, expected.getRGB(
+                        x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test if a stored layout is drawn the same as the view it was stored
+     * from, and if outdated layouts are detected.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testStoredLayout() throws Exception {
+        final Document doc = MathMLParserSupport
+                .parseString("<math><msqrt><mfrac><mi>x</mi><mn>2</mn></mfrac>"
+                        + "</msqrt><mo>+</mo><munderover><mo>&#x2211;</mo>"
+                        + "<mi>i</mi><mi>n</mi></munderover><mtext mathcolor="
+                        + "'red'>text</mtext></math>");
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        final JEuclidView view = new JEuclidView(doc, context, null, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StoredLayout.write(view, out);
+        final ByteArrayOutputStream withTrailer = new ByteArrayOutputStream();
+        out.writeTo(withTrailer);
+        withTrailer.write(42);
+        final ByteArrayInputStream in = new ByteArrayInputStream(withTrailer
+                .toByteArray());
+        final StoredLayout stored = StoredLayout.read(in, context);
+
+        Assert.assertNotNull(stored);
+        // Data following the layout must be left in the stream.
+        Assert.assertEquals(42, in.read());
+        Assert.assertEquals(view.getWidth(), stored.getWidth(), 0.001f);
+        Assert.assertEquals(view.getAscentHeight(), stored.getAscentHeight(),
+                0.001f);
+        Assert.assertEquals(view.getDescentHeight(), stored
+                .getDescentHeight(), 0.001f);
+        Assert.assertEquals("#document", stored.getNodeName(0));
+        Assert.assertEquals("math", stored.getNodeName(1));
+        Assert.assertEquals(0, stored.getParentIndex(1));
+        Assert.assertEquals(view.getWidth(), stored.getNodeBounds(1)
+                .getWidth(), 0.001f);
+
+        final int width = (int) Math.ceil(view.getWidth()) + 2;
+        final int height = (int) Math.ceil(view.getAscentHeight()
+                + view.getDescentHeight()) + 2;
+        final BufferedImage expected = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g1 = expected.createGraphics();
+        view.draw(g1, 1, view.getAscentHeight() + 1);
+        g1.dispose();
+        final BufferedImage actual = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g2 = actual.createGraphics();
+        stored.draw(g2, 1, view.getAscentHeight() + 1);
+        g2.dispose();
+        LayoutTest.assertSameImage(expected, actual);
+
+        final MutableLayoutContext larger = new LayoutContextImpl(context);
+        larger.setParameter(Parameter.MATHSIZE, 20f);
+        Assert.assertNull(StoredLayout.read(new ByteArrayInputStream(out
+                .toByteArray()), larger));
+        try {
+            StoredLayout.read(new ByteArrayInputStream(new byte[8]), context);
+            Assert.fail("Invalid layout not detected");
+        } catch (final IOException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Tests that damaged stored layouts are rejected with an IOException.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testStoredLayoutCorrupt() throws Exception {
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        Assert.assertNotNull(StoredLayout.read(new ByteArrayInputStream(
+                LayoutTest.storedLayout(context, 2, 0, 0, 0, 0, 0, 3)),
+                context));
+
+        final int[][] damaged = {
+                // Negative, empty and too large node counts
+                { -1, 0, 0, 0, 0, 0, 3 }, { 0, 0, 0, 0, 0, 0, 3 },
+                { Integer.MAX_VALUE, 0, 0, 0, 0, 0, 3 },
+                // Parent after the node
+                { 2, 1, 0, 0, 0, 0, 3 },
+                // Unknown kind of graphics object
+                { 2, 0, 7, 0, 0, 0, 3 },
+                // Font and font render context out of range
+                { 2, 0, 0, 1, 0, 0, 3 }, { 2, 0, 0, -1, 0, 0, 3 },
+                { 2, 0, 0, 0, 1, 0, 3 },
+                // Negative glyph and object counts
+                { 2, 0, 0, 0, 0, -1, 3 }, { 2, 0, 0, 0, 0, 0, -1 }, };
+        for (final int[] d : damaged) {
+            try {
+                StoredLayout.read(new ByteArrayInputStream(LayoutTest
+                        .storedLayout(context, d[0], d[1], d[2], d[3], d[4],
+                                d[5], d[6])), context);
+                Assert.fail("Corrupt layout not detected: "
+                        + Arrays.toString(d));
+            } catch (final IOException e) {
+                Assert.assertEquals("Corrupt stored layout", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a stored layout with one font, one font render context and one
+     * graphics object by hand. Nodes are written up to the first two only.
+     */
+    private static byte[] storedLayout(final LayoutContext context,
+            final int nodeCount, final int parent, final int kind,
+            final int fontIndex, final int frcIndex, final int glyphCount,
+            final int segmentCount) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(out);
+        // "JEUL", version 1
+        data.writeInt(0x4A45554C);
+        data.writeInt(1);
+        data.writeLong(FrozenLayoutContext.of(context).getFingerprint());
+
+        data.writeInt(nodeCount);
+        for (int i = 0; i < Math.min(nodeCount, 2); i++) {
+            data.writeUTF("mi");
+            if (i == 0) {
+                data.writeInt(-1);
+            } else {
+                data.writeInt(parent);
+            }
+            for (int j = 0; j < 5; j++) {
+                data.writeFloat(1f);
+            }
+        }
+
+        final Font font = FontFactory.getInstance().getFont(Font.SERIF,
+                Font.PLAIN, 12f);
+        data.writeInt(1);
+        data.writeUTF(font.getName());
+        data.writeInt(font.getStyle());
+        data.writeFloat(font.getSize2D());
+        LayoutTest.writeIdentity(data);
+        data.writeUTF(font.getFontName());
+        data.writeInt(font.getNumGlyphs());
+
+        data.writeInt(1);
+        data.writeBoolean(true);
+        data.writeBoolean(true);
+        LayoutTest.writeIdentity(data);
+
+        data.writeInt(2);
+        data.writeByte(kind);
+        data.writeInt(Color.BLACK.getRGB());
+        LayoutTest.writeIdentity(data);
+        data.writeInt(fontIndex);
+        data.writeInt(frcIndex);
+        data.writeInt(glyphCount);
+        for (int i = 0; i < glyphCount; i++) {
+            data.writeInt(i);
+        }
+        for (int i = 0; i <= glyphCount; i++) {
+            data.writeFloat(i);
+            data.writeFloat(0f);
+        }
+
+        // A filled shape: winding rule and moveto/lineto/close segments
+        data.writeByte(2);
+        data.writeInt(Color.BLACK.getRGB());
+        LayoutTest.writeIdentity(data);
+        data.writeByte(PathIterator.WIND_NON_ZERO);
+        data.writeInt(segmentCount);
+        data.writeByte(PathIterator.SEG_MOVETO);
+        data.writeFloat(0f);
+        data.writeFloat(0f);
+        data.writeByte(PathIterator.SEG_LINETO);
+        data.writeFloat(1f);
+        data.writeFloat(1f);
+        data.writeByte(PathIterator.SEG_CLOSE);
+        data.flush();
+        return out.toByteArray();
+    }
+
+    private static void writeIdentity(final DataOutputStream data)
+            throws IOException {
+        final double[] matrix = new double[6];
+        new AffineTransform().getMatrix(matrix);
+        for (final double d : matrix) {
+            data.writeDouble(d);
+        }
+    }
+
+    /**
+     * Test if a display list can be painted concurrently, and if it is
+     * replaced when the document changes.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testDisplayList() throws Exception {
+        final MathMLDocument docElement = DOMBuilder.getInstance()
+                .createJeuclidDom(
+                        MathMLParserSupport.parseString(ConverterTest.TEST1));
+        final JEuclidView view = (JEuclidView) (((DocumentView) docElement)
+                .getDefaultView());
+        final DisplayList list = view.getDisplayList();
+        Assert.assertSame(list, view.getDisplayList());
+        Assert.assertTrue(list.size() > 0);
+        Assert.assertEquals(view.getWidth(), list.getWidth(), 0.001f);
+
+        final int width = (int) Math.ceil(list.getWidth()) + 2;
+        final int height = (int) Math.ceil(list.getAscentHeight()
+                + list.getDescentHeight()) + 2;
+        final Callable<BufferedImage> paint = new Callable<BufferedImage>() {
+            public BufferedImage call() {
+                final BufferedImage image = new BufferedImage(width, height,
+                        BufferedImage.TYPE_INT_ARGB);
+                final Graphics2D g = image.createGraphics();
+                list.paint(g, 1, list.getAscentHeight() + 1);
+                g.dispose();
+                return image;
+            }
+        };
+        final BufferedImage expected = paint.call();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<BufferedImage>> images = new ArrayList<Future<BufferedImage>>();
+            for (int i = 0; i < 8; i++) {
+                images.add(executor.submit(paint));
+            }
+            for (final Future<BufferedImage> image : images) {
+                LayoutTest.assertSameImage(expected, image.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        final Node math = docElement.getFirstChild();
+        math.appendChild(docElement.createElement(Mi.ELEMENT))
+                .setTextContent("x");
+        Assert.assertNotSame(list, view.getDisplayList());
+        Assert.assertTrue(view.getDisplayList().getWidth() > list.getWidth());
+    }
+
+    /**
+     * Tests that a display list changes the Graphics state only when needed,
+     * and paints objects of the same color together.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testBatchedPainting() throws Exception {
+        final JEuclidView view = new JEuclidView(MathMLParserSupport
+                .parseString("<math><mi mathcolor='red'>a</mi>"
+                        + "<mspace width='1em'/><mi>b</mi>"
+                        + "<mspace width='1em'/><mi mathcolor='red'>c</mi>"
+                        + "<mfrac><mn>1</mn><mn>2</mn></mfrac></math>"),
+                LayoutContextImpl.getDefaultLayoutContext(), null);
+        final List<Object> changes = new ArrayList<Object>();
+        final Document svg = GenericDOMImplementation.getDOMImplementation()
+                .createDocument("http://www.w3.org/2000/svg", "svg", null);
+        final SVGGraphics2D g = new SVGGraphics2D(svg) {
+            @Override
+            public void setColor(final Color c) {
+                changes.add(c);
+                super.setColor(c);
+            }
+
+            @Override
+            public void setPaint(final Paint paint) {
+                changes.add(paint);
+                super.setPaint(paint);
+            }
+
+            @Override
+            public void setStroke(final Stroke s) {
+                changes.add(s);
+                super.setStroke(s);
+            }
+
+            @Override
+            public void setTransform(final AffineTransform tx) {
+                changes.add(tx);
+                super.setTransform(tx);
+            }
+        };
+        final Stroke originalStroke = g.getStroke();
+        view.draw(g, 0, view.getAscentHeight());
+
+        Assert.assertEquals(Arrays.asList(Color.RED, Color.BLACK), changes);
+        Assert.assertSame(originalStroke, g.getStroke());
+    }
+
+    /**
+     * Tests that only objects near the clip are painted, and that they are
+     * painted the same as without a clip.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testClippedPainting() throws Exception {
+        final StringBuilder rows = new StringBuilder("<math><mtable>");
+        for (int i = 0; i < 100; i++) {
+            rows.append("<mtr><mtd><msup><mi>x</mi><mn>").append(i).append(
+                    "</mn></msup><mo>=</mo><mfrac><mn>1</mn><mn>").append(i)
+                    .append("</mn></mfrac></mtd></mtr>");
+        }
+        rows.append("</mtable></math>");
+        final JEuclidView view = new JEuclidView(MathMLParserSupport
+                .parseString(rows.toString()), LayoutContextImpl
+                .getDefaultLayoutContext(), null);
+        final int width = (int) Math.ceil(view.getWidth()) + 2;
+        final int height = (int) Math.ceil(view.getAscentHeight()
+                + view.getDescentHeight()) + 2;
+
+        final int[] painted = new int[1];
+        final Document svg = GenericDOMImplementation.getDOMImplementation()
+                .createDocument("http://www.w3.org/2000/svg", "svg", null);
+        final SVGGraphics2D g = new SVGGraphics2D(svg) {
+            @Override
+            public void draw(final Shape s) {
+                painted[0]++;
+                super.draw(s);
+            }
+
+            @Override
+            public void fill(final Shape s) {
+                painted[0]++;
+                super.fill(s);
+            }
+
+            @Override
+            public void drawGlyphVector(final GlyphVector gv, final float x,
+                    final float y) {
+                painted[0]++;
+                super.drawGlyphVector(gv, x, y);
+            }
+        };
+        view.draw(g, 0, view.getAscentHeight());
+        final int all = painted[0];
+        painted[0] = 0;
+        g.setClip(0, height / 2, width, 20);
+        view.draw(g, 0, view.getAscentHeight());
+        Assert.assertTrue(painted[0] > 0);
+        Assert.assertTrue(painted[0] + " of " + all, painted[0] * 10 < all);
+
+        final BufferedImage full = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig = full.createGraphics();
+        view.draw(ig, 1, view.getAscentHeight() + 1);
+        ig.dispose();
+        final BufferedImage clipped = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        ig = clipped.createGraphics();
+        ig.setClip(0, height / 2, width, 20);
+        view.draw(ig, 1, view.getAscentHeight() + 1);
+        ig.dispose();
+        LayoutTest.assertSameImage(full.getSubimage(0, height / 2, width, 20),
+                clipped.getSubimage(0, height / 2, width, 20));
+    }
 }
@@ -18,19 +18,36 @@
 
 package net.sourceforge.jeuclid.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.stream.StreamSource;
 
 import net.sourceforge.jeuclid.DOMBuilder;
 import net.sourceforge.jeuclid.MathMLParserSupport;
+import net.sourceforge.jeuclid.MathMLSerializer;
+import net.sourceforge.jeuclid.ResourceEntityResolver;
+import net.sourceforge.jeuclid.elements.AbstractJEuclidElement;
+import net.sourceforge.jeuclid.parser.Parser;
+import net.sourceforge.jeuclid.parser.ParserProfile;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -93,6 +110,209 @@ public class MathBaseTest {
         Assert.assertNotNull(MathMLParserSupport
                 .parseInputStreamODF(MathBaseTest.class
                         .getResourceAsStream("/" + "example.odf")));
+        final Document viaStream = Parser.getInstance().parseStreamSource(
+                new StreamSource(MathBaseTest.class.getResourceAsStream("/"
+                        + "example.odf")));
+        final File file = new File(MathBaseTest.class.getResource(
+                "/" + "example.odf").toURI());
+        final Document viaFile = MathMLParserSupport.parseFile(file);
+        Assert.assertEquals(MathMLSerializer.serializeDocument(viaStream,
+                false, false), MathMLSerializer.serializeDocument(viaFile,
+                false, false));
+        Assert.assertNotNull(Parser.getInstance().parseStreamSource(
+                new StreamSource(file)));
+        Assert.assertNotNull(MathMLParserSupport.parseFile(new File(
+                MathBaseTest.class.getResource("/" + "example1.mml").toURI())));
+    }
+
+    /**
+     * Tests that an ODF package without content is rejected.
+     *
+     * @throws Exception
+     *             if an error occurs.
+     */
+    @Test
+    public void testOdfWithoutContent() throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ZipOutputStream zos = new ZipOutputStream(bos);
+        zos.putNextEntry(new ZipEntry("mimetype"));
+        zos.write("application/vnd.oasis.opendocument.formula"
+                .getBytes("US-ASCII"));
+        zos.closeEntry();
+        zos.close();
+        final byte[] odf = bos.toByteArray();
+
+        try {
+            Parser.getInstance().parseStreamSource(
+                    new StreamSource(new ByteArrayInputStream(odf)));
+            Assert.fail("IOException expected");
+        } catch (final IOException e) {
+            Assert.assertTrue(e.getMessage().contains("content.xml"));
+        }
+        try {
+            Parser.getInstance().parseStreamSourceAsJEuclidDom(
+                    new StreamSource(new ByteArrayInputStream(odf)));
+            Assert.fail("IOException expected");
+        } catch (final IOException e) {
+            Assert.assertTrue(e.getMessage().contains("content.xml"));
+        }
+        final File file = File.createTempFile("jeuclid", ".odf");
+        try {
+            Files.write(file.toPath(), odf);
+            MathMLParserSupport.parseFile(file);
+            Assert.fail("IOException expected");
+        } catch (final IOException e) {
+            Assert.assertTrue(e.getMessage().contains("content.xml"));
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Tests parsing directly into a JEuclid DOM.
+     *
+     * @throws Exception
+     *             if an error occurs.
+     */
+    @Test
+    public void testParseAsJEuclidDom() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        for (int example = 1; example <= 7; example++) {
+            names.add("example" + example + ".mml");
+        }
+        names.add("example.odf");
+        for (final String name : names) {
+            final Document viaDom = DOMBuilder.getInstance().createJeuclidDom(
+                    Parser.getInstance().parseStreamSource(
+                            new StreamSource(MathBaseTest.class
+                                    .getResourceAsStream("/" + name))),
+                    false);
+            final Document direct = Parser.getInstance()
+                    .parseStreamSourceAsJEuclidDom(
+                            new StreamSource(MathBaseTest.class
+                                    .getResourceAsStream("/" + name)));
+            Assert.assertEquals(name, MathMLSerializer.serializeDocument(
+                    viaDom, false, false), MathMLSerializer.serializeDocument(
+                    direct, false, false));
+        }
+    }
+
+    /**
+     * Tests documents with a MathML DOCTYPE, which are parsed with the
+     * preparsed DTD.
+     *
+     * @throws Exception
+     *             if an error occurs.
+     */
+    @Test
+    public void testDoctype() throws Exception {
+        final String mml = "<!DOCTYPE math PUBLIC \""
+                + ResourceEntityResolver.MML2_PUBLICID + "\" \""
+                + ResourceEntityResolver.MML2_SYSTEMID + "\">"
+                + "<math><mi>&alpha;</mi><mo>&InvisibleTimes;</mo>"
+                + "<mi>&amp;</mi></math>";
+        for (int i = 0; i < 2; i++) {
+            final Element math = Parser.getInstance().parseStreamSource(
+                    new StreamSource(new StringReader(mml)))
+                    .getDocumentElement();
+            Assert.assertEquals(AbstractJEuclidElement.URI, math
+                    .getNamespaceURI());
+            Assert.assertEquals("\u03b1\u2062&", math.getTextContent());
+            final Document direct = Parser.getInstance()
+                    .parseStreamSourceAsJEuclidDom(
+                            new StreamSource(new StringReader(mml)));
+            Assert.assertEquals(MathMLSerializer.serializeDocument(
+                    DOMBuilder.getInstance().createJeuclidDom(
+                            math.getOwnerDocument(), false), false, false),
+                    MathMLSerializer.serializeDocument(direct, false, false));
+        }
+    }
+
+    /**
+     * Tests that parsers are reused across threads.
+     *
+     * @throws Exception
+     *             if an error occurs.
+     */
+    @Test
+    public void testParserPool() throws Exception {
+        // A private parser, so builders created by other tests do not count.
+        final Constructor<Parser> constructor = Parser.class
+                .getDeclaredConstructor();
+        constructor.setAccessible(true);
+        final Parser parser = constructor.newInstance();
+        final String mml = "<math><mi>x</mi></math>";
+        for (int i = 0; i < 10; i++) {
+            final Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        parser.parseStreamSourceAsXml(new StreamSource(
+                                new StringReader(mml)));
+                    } catch (final Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            t.start();
+            t.join();
+        }
+        Assert.assertEquals(1, parser.getCreatedDocumentBuilderCount());
+        for (int i = 0; i < 10; i++) {
+            final DocumentBuilder builder = parser.getDocumentBuilder();
+            Assert.assertNotNull(builder.parse(new InputSource(
+                    new StringReader(mml))));
+            parser.returnDocumentBuilder(builder);
+        }
+        Assert.assertEquals(1, parser.getCreatedDocumentBuilderCount());
+        parser.newDocumentBuilder();
+        Assert.assertEquals(1, parser.getCreatedDocumentBuilderCount());
+    }
+
+    /**
+     * Tests the fast and strict parser profiles.
+     *
+     * @throws Exception
+     *             if an error occurs.
+     */
+    @Test
+    public void testParserProfiles() throws Exception {
+        // DTD is never loaded, but MathML entities are still known.
+        final String mml = "<!DOCTYPE math SYSTEM \"http://localhost:1/x.dtd\">"
+                + "<math xmlns=\"" + AbstractJEuclidElement.URI
+                + "\"><mi>&alpha;</mi></math>";
+        for (final ParserProfile profile : new ParserProfile[] {
+                ParserProfile.FAST, ParserProfile.STRICT }) {
+            Assert.assertEquals("\u03b1", Parser.getInstance()
+                    .parseStreamSource(new StreamSource(new StringReader(mml)),
+                            profile).getDocumentElement().getTextContent());
+            Assert.assertEquals("\u03b1", Parser.getInstance()
+                    .parseStreamSourceAsJEuclidDom(
+                            new StreamSource(new StringReader(mml)), profile)
+                    .getDocumentElement().getTextContent());
+        }
+
+        final StringBuilder bomb = new StringBuilder(
+                "<!DOCTYPE math [<!ENTITY a0 \"xxxxxxxxxx\">");
+        for (int i = 1; i < 5; i++) {
+            bomb.append("<!ENTITY a").append(i).append(" \"");
+            for (int j = 0; j < 10; j++) {
+                bomb.append("&a").append(i - 1).append(';');
+            }
+            bomb.append("\">");
+        }
+        bomb.append("]><math>&a4;</math>");
+        Assert.assertEquals(100000, Parser.getInstance().parseStreamSource(
+                new StreamSource(new StringReader(bomb.toString())),
+                ParserProfile.FAST).getDocumentElement().getTextContent()
+                .length());
+        try {
+            Parser.getInstance().parseStreamSource(
+                    new StreamSource(new StringReader(bomb.toString())),
+                    ParserProfile.STRICT);
+            Assert.fail("Entity expansion limit not enforced");
+        } catch (final SAXException e) {
+            // Expected.
+        }
     }
 
     /**
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import net.sourceforge.jeuclid.FormulaKey;
+import net.sourceforge.jeuclid.FormulaMemo;
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.MathMLParserSupport;
+import net.sourceforge.jeuclid.MutableLayoutContext;
+import net.sourceforge.jeuclid.context.LayoutContextImpl;
+import net.sourceforge.jeuclid.context.Parameter;
+import net.sourceforge.jeuclid.converter.Processor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Tests for {@link Processor}.
+ *
+ * @version $Revision$
+ */
+public class ProcessorTest {
+
+    private static final String FO = "<?xml version=\"1.0\"?>"
+            + "<!-- comment --><fo:root xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">"
+            + "<fo:block>Text <fo:instream-foreign-object>"
+            + "<m:math xmlns:m=\"http://www.w3.org/1998/Math/MathML\"><m:mi>x</m:mi></m:math>"
+            + "</fo:instream-foreign-object> more &amp; <![CDATA[<cdata>]]>"
+            + "<fo:instream-foreign-object><math xmlns=\"http://www.w3.org/1998/Math/MathML\">"
+            + "<mfrac><mn>1</mn><mn>2</mn></mfrac></math></fo:instream-foreign-object>"
+            + "</fo:block><fo:block><math xmlns=\"http://www.w3.org/1998/Math/MathML\">"
+            + "<mi>y</mi></math></fo:block></fo:root>";
+
+    private static final String FO_NS = "http://www.w3.org/1999/XSL/Format";
+
+    private static final String SVG_NS = "http://www.w3.org/2000/svg";
+
+    /**
+     * Tests that streaming processing gives the same result as processing in
+     * memory.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testStreaming() throws Exception {
+        final StringWriter inMemory = new StringWriter();
+        Processor.getInstance().process(
+                new StreamSource(new StringReader(ProcessorTest.FO)),
+                new StreamResult(inMemory));
+        final StringWriter streamed = new StringWriter();
+        Processor.getInstance().processStreaming(
+                new StreamSource(new StringReader(ProcessorTest.FO)),
+                new StreamResult(streamed));
+
+        final Document expected = MathMLParserSupport.parseString(inMemory
+                .toString());
+        final Document actual = MathMLParserSupport.parseString(streamed
+                .toString());
+        Assert.assertEquals(3, actual.getElementsByTagNameNS(
+                ProcessorTest.SVG_NS, "svg").getLength());
+        Assert.assertEquals(0, actual.getElementsByTagNameNS(
+                "http://www.w3.org/1998/Math/MathML", "*").getLength());
+        final NodeList expectedIfos = expected.getElementsByTagNameNS(
+                ProcessorTest.FO_NS, "instream-foreign-object");
+        final NodeList actualIfos = actual.getElementsByTagNameNS(
+                ProcessorTest.FO_NS, "instream-foreign-object");
+        Assert.assertEquals(2, actualIfos.getLength());
+        for (int i = 0; i < actualIfos.getLength(); i++) {
+            Assert.assertEquals(((Element) expectedIfos.item(i))
+                    .getAttribute("alignment-adjust"), ((Element) actualIfos
+                    .item(i)).getAttribute("alignment-adjust"));
+        }
+        expected.normalizeDocument();
+        actual.normalizeDocument();
+        Assert.assertEquals(expected.getDocumentElement().getTextContent(),
+                actual.getDocumentElement().getTextContent());
+        Assert.assertTrue(streamed.toString(), streamed.toString().contains(
+                "<!-- comment -->"));
+    }
+
+    /**
+     * Tests that parallel processing gives the same result as sequential
+     * processing.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testParallel() throws Exception {
+        final StringBuilder fo = new StringBuilder(
+                "<fo:root xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">");
+        for (int i = 0; i < 20; i++) {
+            fo.append("<fo:block>").append(i).append(
+                    "<fo:instream-foreign-object><math xmlns=\"").append(
+                    "http://www.w3.org/1998/Math/MathML\"><msup><mi>x</mi><mn>")
+                    .append(i).append("</mn></msup></math>").append(
+                            "</fo:instream-foreign-object></fo:block>");
+        }
+        // Repeats, some of them no longer in the bounded memo.
+        for (int i = 0; i < 20; i++) {
+            fo.append("<fo:block><fo:instream-foreign-object><math xmlns=\"")
+                    .append("http://www.w3.org/1998/Math/MathML\"><msup>")
+                    .append("<mi>x</mi><mn>").append(i % 7).append(
+                            "</mn></msup></math>").append(
+                            "</fo:instream-foreign-object></fo:block>");
+        }
+        fo.append("</fo:root>");
+
+        final StringWriter sequential = new StringWriter();
+        Processor.getInstance().process(
+                new StreamSource(new StringReader(fo.toString())),
+                new StreamResult(sequential));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final StringWriter parallel = new StringWriter();
+            Processor.getInstance().process(
+                    new StreamSource(new StringReader(fo.toString())),
+                    new StreamResult(parallel),
+                    LayoutContextImpl.getDefaultLayoutContext(), executor, 3);
+            Assert.assertEquals(sequential.toString(), parallel.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that formulas which render the same have the same key.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testFormulaKey() throws Exception {
+        final MutableLayoutContext context = new LayoutContextImpl(
+                LayoutContextImpl.getDefaultLayoutContext());
+        final FormulaKey key = FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi mathvariant='bold' mathcolor='red'>"
+                        + "x</mi><mo> +\n </mo><mn>1</mn></math>"), context);
+        Assert.assertEquals(key, FormulaKey.create(MathMLParserSupport
+                .parseString("<m:math xmlns:m='"
+                        + "http://www.w3.org/1998/Math/MathML'>\n<!-- c -->"
+                        + "<m:mi mathcolor='red' mathvariant='bold'>x</m:mi>"
+                        + "  <m:mo>+</m:mo><m:mn><![CDATA[1]]></m:mn></m:math>"),
+                context));
+        Assert.assertEquals(key.hashCode(), FormulaKey.create(
+                MathMLParserSupport.parseString("<math><mi mathcolor='red' "
+                        + "mathvariant='bold'>x</mi><mo>+</mo><mn>1</mn>"
+                        + "</math>"), context).hashCode());
+        Assert.assertFalse(key.equals(FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi mathvariant='bold' mathcolor='red'>"
+                        + "x</mi><mo>+</mo><mn>2</mn></math>"), context)));
+        Assert.assertFalse(key.equals(FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi mathvariant='bold' mathcolor='red'>"
+                        + "x</mi><mo>+</mo><mn>1 2</mn></math>"), context)));
+        final MutableLayoutContext larger = new LayoutContextImpl(context);
+        larger.setParameter(Parameter.MATHSIZE, 20f);
+        Assert.assertFalse(key.equals(FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi mathvariant='bold' mathcolor='red'>"
+                        + "x</mi><mo>+</mo><mn>1</mn></math>"), larger)));
+    }
+
+    /**
+     * Tests that a bounded memo forgets the least recently used result.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testBoundedMemo() throws Exception {
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        final FormulaKey a = FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi>a</mi></math>"), context);
+        final FormulaKey b = FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi>b</mi></math>"), context);
+        final FormulaKey c = FormulaKey.create(MathMLParserSupport
+                .parseString("<math><mi>c</mi></math>"), context);
+        final FormulaMemo<String> memo = new FormulaMemo<String>(2);
+        memo.put(a, "a");
+        memo.put(b, "b");
+        Assert.assertEquals("a", memo.get(a));
+        memo.put(c, "c");
+        Assert.assertEquals(2, memo.size());
+        Assert.assertNull(memo.get(b));
+        Assert.assertEquals("a", memo.get(a));
+        Assert.assertEquals("c", memo.get(c));
+        Assert.assertEquals(3, memo.getStoredCount());
+        Assert.assertEquals(4, memo.getLookupCount());
+        Assert.assertEquals(3, memo.getHitCount());
+    }
+
+    /**
+     * Tests that repeated formulas are rendered the same as distinct ones.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testDuplicates() throws Exception {
+        final StringBuilder fo = new StringBuilder(
+                "<fo:root xmlns:fo=\"http://www.w3.org/1999/XSL/Format\">");
+        for (int i = 0; i < 10; i++) {
+            fo.append("<fo:block><fo:instream-foreign-object><math xmlns=\"")
+                    .append("http://www.w3.org/1998/Math/MathML\"><mi>x</mi>")
+                    .append("</math></fo:instream-foreign-object></fo:block>");
+        }
+        fo.append("</fo:root>");
+        final StringWriter result = new StringWriter();
+        Processor.getInstance().process(
+                new StreamSource(new StringReader(fo.toString())),
+                new StreamResult(result));
+        final Document d = MathMLParserSupport.parseString(result.toString());
+        final NodeList svgs = d.getElementsByTagNameNS(ProcessorTest.SVG_NS,
+                "svg");
+        Assert.assertEquals(10, svgs.getLength());
+        for (int i = 1; i < svgs.getLength(); i++) {
+            Assert.assertTrue(svgs.item(0).isEqualNode(svgs.item(i)));
+        }
+    }
+}
@@ -168,6 +168,44 @@ public class ContentTransformationTest {
                 "<mrow><mn>5</mn><mo>&#x2062;</mo><mi>x</mi></mrow>");
     }
 
+    @Test
+    public void testNestedTransformations() throws Exception {
+        this.testByDirectComparison(
+                "<apply><minus/><ci>a</ci><apply><plus/><cn>-1</cn><ci>b</ci></apply></apply>",
+                "<mrow><mi>a</mi><mo>-</mo><mfenced separators=\"\"><mrow>"
+                        + "<mfenced separators=\"\"><mn>-1</mn></mfenced>"
+                        + "<mo>+</mo><mi>b</mi></mrow></mfenced></mrow>");
+        this.testByDirectComparison(
+                "<apply><power/><apply><sin/><ci>x</ci></apply><cn>2</cn></apply>",
+                "<msup><mfenced separators=\"\"><mrow><mi>sin</mi>"
+                        + "<mo>&#x2061;</mo><mrow><mi>x</mi></mrow></mrow>"
+                        + "</mfenced><mn>2</mn></msup>");
+        this.testByDirectComparison(
+                "<apply><eq/><apply><divide/><ci>x</ci><pi/></apply><cn>1</cn></apply>",
+                "<mrow><mrow><mfrac><mrow><mi>x</mi></mrow><mrow>"
+                        + "<mi>&#x3c0;</mi></mrow></mfrac></mrow><mo>=</mo>"
+                        + "<mn>1</mn></mrow>");
+    }
+
+    @Test
+    public void testMixedMarkup() throws Exception {
+        this.testByDirectComparison(
+                "<mrow><mi>y</mi><mo>=</mo><apply><ci>f</ci><ci>x</ci></apply></mrow>",
+                "<mrow><mi>y</mi><mo>=</mo><mrow><mi>f</mi><mo>&#x2061;</mo>"
+                        + "<mfenced><mi>x</mi></mfenced></mrow></mrow>");
+        this.testByDirectComparison(
+                "<semantics><apply><factorial/><ci>n</ci></apply>"
+                        + "<annotation>n!</annotation></semantics>",
+                "<mrow><mrow><mi>n</mi><mo>!</mo></mrow></mrow>");
+    }
+
+    @Test
+    public void testStylesheetFallback() throws Exception {
+        this.testByDirectComparison(
+                "<apply><root/><ci>x</ci></apply>",
+                "<msqrt><mi>x</mi></msqrt>");
+    }
+
     // Not yet functional.
     @Ignore
     @Test
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test.swing;
+
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+
+import javax.swing.BorderFactory;
+
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.Parameter;
+import net.sourceforge.jeuclid.layout.JEuclidView;
+import net.sourceforge.jeuclid.swing.JMathComponent;
+import net.sourceforge.jeuclid.swing.MathComponentUI;
+import net.sourceforge.jeuclid.swing.MathComponentUI16;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+/**
+ * Tests for {@link MathComponentUI}.
+ *
+ * @version $Revision$
+ */
+public class MathComponentUITest {
+
+    /**
+     * Counts the views the UI lays out.
+     */
+    private static final class CountingUI extends MathComponentUI16 {
+        private int views;
+
+        @Override
+        protected JEuclidView createView(final Node document,
+                final LayoutContext layoutContext, final FontRenderContext frc) {
+            this.views++;
+            return super.createView(document, layoutContext, frc);
+        }
+    }
+
+    private static void paint(final MathComponentUI ui,
+            final JMathComponent jmc, final double scale) {
+        final BufferedImage image = new BufferedImage(200, 200,
+                BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = image.createGraphics();
+        g.scale(scale, scale);
+        ui.update(g, jmc);
+        g.dispose();
+    }
+
+    /**
+     * Tests that repainting reuses the layout, and that it is only redone
+     * when the document, the parameters or the FontRenderContext change, but
+     * not for other property changes.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testRepaintReusesLayout() throws Exception {
+        final JMathComponent jmc = new JMathComponent();
+        final CountingUI ui = new CountingUI();
+        ui.installUI(jmc);
+        jmc.setContent("<math><mfrac><mi>x</mi><mn>2</mn></mfrac></math>");
+        jmc.setSize(ui.getPreferredSize(jmc));
+        MathComponentUITest.paint(ui, jmc, 1);
+        final int views = ui.views;
+        for (int i = 0; i < 100; i++) {
+            MathComponentUITest.paint(ui, jmc, 1);
+        }
+        Assert.assertEquals(views, ui.views);
+
+        MathComponentUITest.paint(ui, jmc, 2);
+        MathComponentUITest.paint(ui, jmc, 2);
+        Assert.assertEquals(views + 1, ui.views);
+
+        jmc.setParameter(Parameter.MATHSIZE, 20f);
+        MathComponentUITest.paint(ui, jmc, 1);
+        MathComponentUITest.paint(ui, jmc, 1);
+        Assert.assertEquals(views + 2, ui.views);
+
+        jmc.setContent("<math><mi>y</mi></math>");
+        MathComponentUITest.paint(ui, jmc, 1);
+        Assert.assertEquals(views + 3, ui.views);
+
+        jmc.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        MathComponentUITest.paint(ui, jmc, 1);
+        Assert.assertEquals(views + 3, ui.views);
+        ui.uninstallUI(jmc);
+    }
+}
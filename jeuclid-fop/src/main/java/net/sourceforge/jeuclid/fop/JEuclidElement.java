@@ -31,14 +31,20 @@ import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import net.sourceforge.jeuclid.Constants;
+import net.sourceforge.jeuclid.FormulaKey;
+import net.sourceforge.jeuclid.FormulaMemo;
 import net.sourceforge.jeuclid.MutableLayoutContext;
 import net.sourceforge.jeuclid.context.LayoutContextImpl;
 import net.sourceforge.jeuclid.context.Parameter;
 import net.sourceforge.jeuclid.layout.JEuclidView;
 import net.sourceforge.jeuclid.xmlgraphics.PreloaderMathML;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.fop.apps.FOPException;
 import org.apache.fop.apps.FOUserAgent;
 import org.apache.fop.datatypes.Length;
@@ -62,6 +68,16 @@ import org.xml.sax.Locator;
  */
 public class JEuclidElement extends JEuclidObj {
 
+    /**
+     * Logger for this class
+     */
+    private static final Log LOGGER = LogFactory.getLog(JEuclidElement.class);
+
+    /**
+     * Size and descent of each distinct formula, per rendering run.
+     */
+    private static final Map<FOUserAgent, FormulaMemo<float[]>> MEMOS = new WeakHashMap<>();
+
     private Point2D size;
 
     private Length baseline;
@@ -100,12 +116,32 @@ public class JEuclidElement extends JEuclidObj {
         }
     }
 
+    private static FormulaMemo<float[]> getMemo(final FOUserAgent userAgent) {
+        synchronized (JEuclidElement.MEMOS) {
+            FormulaMemo<float[]> memo = JEuclidElement.MEMOS.get(userAgent);
+            if (memo == null) {
+                memo = new FormulaMemo<float[]>();
+                JEuclidElement.MEMOS.put(userAgent, memo);
+            }
+            return memo;
+        }
+    }
+
     private void calculate() {
-        final JEuclidView view = new JEuclidView(this.doc, this.layoutContext,
-                null);
-        final float descent = view.getDescentHeight();
-        this.size = new Point2D.Float(view.getWidth(), view.getAscentHeight()
-                + descent);
+        final FormulaMemo<float[]> memo = JEuclidElement.getMemo(this
+                .getUserAgent());
+        final FormulaKey key = FormulaKey.create(this.doc, this.layoutContext);
+        float[] metrics = memo.get(key);
+        if (metrics == null) {
+            final JEuclidView view = new JEuclidView(this.doc,
+                    this.layoutContext, null, true);
+            metrics = memo.put(key, new float[] { view.getWidth(),
+                    view.getAscentHeight(), view.getDescentHeight(), });
+        } else if (JEuclidElement.LOGGER.isDebugEnabled()) {
+            JEuclidElement.LOGGER.debug(memo);
+        }
+        final float descent = metrics[2];
+        this.size = new Point2D.Float(metrics[0], metrics[1] + descent);
         this.baseline = FixedLength.getInstance(-descent, "pt");
     }
 
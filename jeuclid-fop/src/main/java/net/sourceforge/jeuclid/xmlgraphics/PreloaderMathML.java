@@ -85,7 +85,7 @@ public class PreloaderMathML extends AbstractImagePreloader {
         final ImageInfo info = new ImageInfo(uri, Constants.MATHML_MIMETYPE);
         final ImageSize size = new ImageSize();
         final JEuclidView view = new JEuclidView(n, LayoutContextImpl
-                .getDefaultLayoutContext(), null);
+                .getDefaultLayoutContext(), null, true);
         final int descentMpt = (int) (view.getDescentHeight() * PreloaderMathML.MPT_FACTOR);
         final int ascentMpt = (int) (view.getAscentHeight() * PreloaderMathML.MPT_FACTOR);
 
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test.testsuite;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+
+import net.sourceforge.jeuclid.DOMBuilder;
+import net.sourceforge.jeuclid.elements.generic.DocumentElement;
+import net.sourceforge.jeuclid.parser.Parser;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.SAXException;
+
+/**
+ * Compares the built-in content to presentation converter with the content
+ * stylesheet on all content tests of the testsuite.
+ * <p>
+ * Every document which is converted natively must give the same result as
+ * the stylesheet. The number of documents which fall back to the stylesheet
+ * is limited, so that losing support for a construct fails the build.
+ *
+ * @version $Revision$
+ */
+// CHECKSTYLE:OFF
+// This is a test class.
+public class TestTestSuiteContent {
+    // CHECKSTYLE:ON
+
+    /**
+     * Logger for this class.
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(TestTestSuiteContent.class);
+
+    private static final String STYLESHEET = "/net/sourceforge/jeuclid/"
+            + "content/mathmlc2p.xsl";
+
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    /**
+     * Conversions of the mml2 testsuite which need the stylesheet. Every
+     * document is converted with and without added namespace.
+     */
+    private static final int MML2_FALLBACKS = 197;
+
+    /**
+     * Conversions of the mml3 testsuite which need the stylesheet.
+     */
+    private static final int MML3_FALLBACKS = 518;
+
+    private static Templates templates;
+
+    /**
+     * Compiles the content stylesheet.
+     *
+     * @throws Exception
+     *             if the stylesheet cannot be compiled.
+     */
+    @BeforeClass
+    public static void compileStylesheet() throws Exception {
+        TestTestSuiteContent.templates = TransformerFactory.newInstance()
+                .newTemplates(new StreamSource(DOMBuilder.class
+                        .getResourceAsStream(TestTestSuiteContent.STYLESHEET)));
+    }
+
+    /**
+     * Compares all content tests of the mml2 testsuite.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testMml2Content() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(
+                ClassLoader.getSystemResourceAsStream("mml2-testsuite.list"),
+                "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.contains("/Content/")) {
+                names.add(line);
+            }
+        }
+        br.close();
+        this.compareAll("mml2", names, TestTestSuiteContent.MML2_FALLBACKS);
+    }
+
+    /**
+     * Compares all content tests of the mml3 testsuite.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testMml3Content() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        final File base = new File(ClassLoader.getSystemResource(
+                "mml3-testsuite").toURI());
+        this.findTests(new File(base, "Content"), "mml3-testsuite/Content",
+                names);
+        this.findTests(new File(base, "StrictContent"),
+                "mml3-testsuite/StrictContent", names);
+        Collections.sort(names);
+        this.compareAll("mml3", names, TestTestSuiteContent.MML3_FALLBACKS);
+    }
+
+    private void findTests(final File dir, final String path,
+            final List<String> names) {
+        final File[] files = dir.listFiles();
+        Assert.assertNotNull(dir.toString(), files);
+        for (final File file : files) {
+            final String name = path + '/' + file.getName();
+            if (file.isDirectory()) {
+                this.findTests(file, name, names);
+            } else if (name.endsWith(".mml")) {
+                names.add(name);
+            }
+        }
+    }
+
+    private void compareAll(final String suite, final List<String> names,
+            final int maxFallbacks) throws Exception {
+        int nativeCount = 0;
+        int fallbacks = 0;
+        for (final String name : names) {
+            final Document doc = this.parse(name);
+            if (doc == null) {
+                continue;
+            }
+            for (final boolean addNamespace : new boolean[] { false, true }) {
+                final DocumentElement viaJava = DOMBuilder.getInstance()
+                        .createJeuclidDomWithoutStylesheet(doc, addNamespace);
+                if (viaJava == null) {
+                    fallbacks++;
+                } else {
+                    nativeCount++;
+                    final DocumentElement viaXslt = this.viaStylesheet(doc,
+                            addNamespace);
+                    Assert.assertTrue(name + ", addNamespace=" + addNamespace,
+                            this.toW3c(viaJava).isEqualNode(
+                                    this.toW3c(viaXslt)));
+                }
+            }
+        }
+        TestTestSuiteContent.LOGGER.info(suite + ": " + nativeCount
+                + " converted natively, " + fallbacks
+                + " need the stylesheet");
+        Assert.assertTrue(suite + ": " + fallbacks
+                + " fallbacks, expected at most " + maxFallbacks,
+                fallbacks <= maxFallbacks);
+    }
+
+    private Document parse(final String name) throws Exception {
+        final InputStream i = ClassLoader.getSystemResourceAsStream(name);
+        try {
+            return Parser.getInstance().parseStreamSource(new StreamSource(i));
+        } catch (final SAXException e) {
+            // ignore, some test cases are invalid on purpose.
+            return null;
+        } finally {
+            i.close();
+        }
+    }
+
+    /**
+     * Copies a JEuclid DOM into a plain W3C DOM. The isEqualNode
+     * implementation of Batik only compares the first child of every node.
+     * <p>
+     * Prefixes and namespace declarations are removed, as the stylesheet
+     * puts its output into the default namespace. So are the processing
+     * instructions the stylesheet leaves for disabled output escaping.
+     */
+    private Node toW3c(final Node jeuclidDom) throws Exception {
+        final DOMResult result = new DOMResult();
+        TransformerFactory.newInstance().newTransformer().transform(
+                new DOMSource(jeuclidDom), result);
+        this.makeComparable(result.getNode());
+        result.getNode().normalize();
+        return result.getNode();
+    }
+
+    private void makeComparable(final Node node) {
+        if (node instanceof Element) {
+            final Element element = (Element) node;
+            element.setPrefix(null);
+            final NamedNodeMap attributes = element.getAttributes();
+            for (int i = attributes.getLength() - 1; i >= 0; i--) {
+                final Node attr = attributes.item(i);
+                if (TestTestSuiteContent.XMLNS_URI.equals(attr
+                        .getNamespaceURI())) {
+                    element.removeAttributeNode((Attr) attr);
+                }
+            }
+        }
+        Node child = node.getFirstChild();
+        while (child != null) {
+            final Node next = child.getNextSibling();
+            if (child instanceof ProcessingInstruction) {
+                final String target = ((ProcessingInstruction) child)
+                        .getTarget();
+                if (Result.PI_DISABLE_OUTPUT_ESCAPING.equals(target)
+                        || Result.PI_ENABLE_OUTPUT_ESCAPING.equals(target)) {
+                    node.removeChild(child);
+                }
+            } else {
+                this.makeComparable(child);
+            }
+            child = next;
+        }
+    }
+
+    /**
+     * Converts a document the way {@link DOMBuilder} did before content was
+     * converted natively.
+     */
+    private DocumentElement viaStylesheet(final Document doc,
+            final boolean addNamespace) throws Exception {
+        Node source = doc.getDocumentElement();
+        if (addNamespace) {
+            source = DOMBuilder.getInstance().createJeuclidDom(doc, false,
+                    true);
+        }
+        final DocumentElement d = new DocumentElement();
+        TestTestSuiteContent.templates.newTransformer().transform(
+                new DOMSource(source), new DOMResult(d));
+        return d;
+    }
+}
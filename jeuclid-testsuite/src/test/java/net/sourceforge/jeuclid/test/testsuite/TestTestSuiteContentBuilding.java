@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test.testsuite;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.stream.StreamSource;
+
+import net.sourceforge.jeuclid.DOMBuilder;
+import net.sourceforge.jeuclid.parser.Parser;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Compares building JEuclid DOMs for the content tests of the testsuite from
+ * a single thread with building them from several threads at once.
+ *
+ * @version $Revision$
+ */
+// CHECKSTYLE:OFF
+// This is a test class.
+public class TestTestSuiteContentBuilding {
+    // CHECKSTYLE:ON
+
+    /**
+     * Logger for this class.
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(TestTestSuiteContentBuilding.class);
+
+    private static final int ROUNDS = 3;
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime()
+            .availableProcessors());
+
+    /**
+     * Builds all content tests of the mml2 testsuite sequentially and from
+     * several threads, and logs the throughput of both.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testBuildMml2Content() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(
+                ClassLoader.getSystemResourceAsStream("mml2-testsuite.list"),
+                "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.contains("/Content/")) {
+                names.add(line);
+            }
+        }
+        br.close();
+
+        // W3C DOMs are not thread safe, even for reading, so every thread
+        // gets its own copy.
+        final List<List<Document>> docs = new ArrayList<List<Document>>();
+        for (int t = 0; t < TestTestSuiteContentBuilding.THREADS; t++) {
+            docs.add(this.parseAll(names));
+        }
+        final int count = docs.get(0).size();
+
+        // Warm up
+        this.buildAll(docs.get(0));
+
+        long start = System.nanoTime();
+        for (int r = 0; r < TestTestSuiteContentBuilding.ROUNDS; r++) {
+            for (int t = 0; t < TestTestSuiteContentBuilding.THREADS; t++) {
+                Assert.assertEquals(count, this.buildAll(docs.get(t)));
+            }
+        }
+        final long sequential = System.nanoTime() - start;
+
+        final ExecutorService executor = Executors
+                .newFixedThreadPool(TestTestSuiteContentBuilding.THREADS);
+        try {
+            start = System.nanoTime();
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < TestTestSuiteContentBuilding.THREADS; t++) {
+                final List<Document> ownDocs = docs.get(t);
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() {
+                        int built = 0;
+                        for (int r = 0; r < TestTestSuiteContentBuilding
+                                .ROUNDS; r++) {
+                            built += TestTestSuiteContentBuilding.this
+                                    .buildAll(ownDocs);
+                        }
+                        return built;
+                    }
+                }));
+            }
+            for (final Future<Integer> result : results) {
+                Assert.assertEquals(count
+                        * TestTestSuiteContentBuilding.ROUNDS, result.get()
+                        .intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final long parallel = System.nanoTime() - start;
+
+        final int total = count * TestTestSuiteContentBuilding.THREADS
+                * TestTestSuiteContentBuilding.ROUNDS;
+        this.log("sequential", total, sequential);
+        this.log(TestTestSuiteContentBuilding.THREADS + " threads", total,
+                parallel);
+    }
+
+    private void log(final String name, final int total, final long nanos) {
+        TestTestSuiteContentBuilding.LOGGER.info(name + ": " + total
+                + " documents in " + nanos / 1000000 + "ms, "
+                + total * 1000000000L / Math.max(nanos, 1) + " documents/s");
+    }
+
+    private List<Document> parseAll(final List<String> names)
+            throws Exception {
+        final List<Document> docs = new ArrayList<Document>(names.size());
+        for (final String name : names) {
+            final InputStream i = ClassLoader.getSystemResourceAsStream(name);
+            try {
+                docs.add(Parser.getInstance().parseStreamSource(
+                        new StreamSource(i)));
+            } catch (final SAXException e) {
+                // ignore, some test cases are invalid on purpose.
+            } finally {
+                i.close();
+            }
+        }
+        return docs;
+    }
+
+    private int buildAll(final List<Document> docs) {
+        int count = 0;
+        for (final Document doc : docs) {
+            if (DOMBuilder.getInstance().createJeuclidDom(doc) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test.testsuite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.stream.StreamSource;
+
+import net.sourceforge.jeuclid.DOMBuilder;
+import net.sourceforge.jeuclid.elements.generic.DocumentElement;
+import net.sourceforge.jeuclid.parser.Parser;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Compares parsing the testsuite into a W3C DOM and copying it into a JEuclid
+ * DOM with parsing directly into the JEuclid DOM.
+ *
+ * @version $Revision$
+ */
+// CHECKSTYLE:OFF
+// This is a test class.
+public class TestTestSuiteParsing {
+    // CHECKSTYLE:ON
+
+    /**
+     * Logger for this class.
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(TestTestSuiteParsing.class);
+
+    private static final int ROUNDS = 3;
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private interface Pipeline {
+        DocumentElement build(InputStream i) throws SAXException, IOException;
+    }
+
+    private static final class ViaDom implements Pipeline {
+        public DocumentElement build(final InputStream i)
+                throws SAXException, IOException {
+            final Document d = Parser.getInstance().parseStreamSource(
+                    new StreamSource(i));
+            return DOMBuilder.getInstance().createJeuclidDom(d, false);
+        }
+    }
+
+    private static final class Direct implements Pipeline {
+        public DocumentElement build(final InputStream i)
+                throws SAXException, IOException {
+            return Parser.getInstance().parseStreamSourceAsJEuclidDom(
+                    new StreamSource(i));
+        }
+    }
+
+    /**
+     * Parses the complete mml2 testsuite with both pipelines, and logs time
+     * and peak heap usage for each.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testParseMml2Testsuite() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(
+                ClassLoader.getSystemResourceAsStream("mml2-testsuite.list"),
+                "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            names.add(line);
+        }
+        br.close();
+
+        final int viaDom = this.run("W3C DOM + DOMBuilder", new ViaDom(),
+                names);
+        final int direct = this.run("direct JEuclid DOM", new Direct(), names);
+        Assert.assertEquals(viaDom, direct);
+    }
+
+    private int run(final String name, final Pipeline pipeline,
+            final List<String> names) throws Exception {
+        // Warm up
+        final int count = this.parseAll(pipeline, names);
+
+        System.gc();
+        final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+        for (final MemoryPoolMXBean pool : ManagementFactory
+                .getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP.equals(pool.getType())) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < TestTestSuiteParsing.ROUNDS; i++) {
+            this.parseAll(pipeline, names);
+        }
+        final long time = (System.nanoTime() - start)
+                / TestTestSuiteParsing.ROUNDS;
+        long peak = 0;
+        for (final MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        TestTestSuiteParsing.LOGGER.info(name + ": " + count + " documents in "
+                + time / 1000000 + "ms, peak heap "
+                + peak / TestTestSuiteParsing.MEGABYTE + "MB");
+        return count;
+    }
+
+    private int parseAll(final Pipeline pipeline, final List<String> names)
+            throws Exception {
+        int count = 0;
+        for (final String name : names) {
+            final InputStream i = ClassLoader.getSystemResourceAsStream(name);
+            try {
+                if (pipeline.build(i) != null) {
+                    count++;
+                }
+            } catch (final SAXException e) {
+                // ignore, some test cases are invalid on purpose.
+            } catch (final IOException e) {
+                // ignore, as TestTestSuiteRendering does.
+            } finally {
+                i.close();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test.testsuite;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.stream.StreamSource;
+
+import net.sourceforge.jeuclid.LayoutContext;
+import net.sourceforge.jeuclid.context.LayoutContextImpl;
+import net.sourceforge.jeuclid.converter.RenderCache;
+import net.sourceforge.jeuclid.parser.Parser;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Compares rendering the testsuite through a cold and a warm
+ * {@link RenderCache}.
+ *
+ * @version $Revision$
+ */
+// CHECKSTYLE:OFF
+// This is a test class.
+public class TestTestSuiteRenderCache {
+    // CHECKSTYLE:ON
+
+    /**
+     * Logger for this class.
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(TestTestSuiteRenderCache.class);
+
+    private static final String TYPE = "image/png";
+
+    private static final long MEMORY = 64L * 1024 * 1024;
+
+    /**
+     * Holds the disk cache, deleted after each test.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Renders the complete mml2 testsuite with an empty cache, a warm memory
+     * cache and a warm disk cache, and logs the time for each.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testRenderCacheMml2Testsuite() throws Exception {
+        final List<Document> documents = new ArrayList<Document>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(
+                ClassLoader.getSystemResourceAsStream("mml2-testsuite.list"),
+                "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            final InputStream i = ClassLoader.getSystemResourceAsStream(line);
+            try {
+                documents.add(Parser.getInstance().parseStreamSource(
+                        new StreamSource(i)));
+            } catch (final SAXException e) {
+                // ignore, some test cases are invalid on purpose.
+            } catch (final IOException e) {
+                // ignore, as TestTestSuiteRendering does.
+            } finally {
+                i.close();
+            }
+        }
+        br.close();
+
+        final File dir = this.folder.newFolder("rendercache");
+        final RenderCache cache = new RenderCache(
+                TestTestSuiteRenderCache.MEMORY, dir);
+        final List<byte[]> cold = this.run("cold", cache, documents);
+        final List<byte[]> warm = this.run("warm memory", cache, documents);
+        cache.clearMemory();
+        final List<byte[]> disk = this.run("warm disk", cache, documents);
+        for (int i = 0; i < cold.size(); i++) {
+            Assert.assertArrayEquals(cold.get(i), warm.get(i));
+            Assert.assertArrayEquals(cold.get(i), disk.get(i));
+        }
+        TestTestSuiteRenderCache.LOGGER.info(cache);
+    }
+
+    private List<byte[]> run(final String name, final RenderCache cache,
+            final List<Document> documents) throws Exception {
+        final LayoutContext context = LayoutContextImpl
+                .getDefaultLayoutContext();
+        final List<byte[]> results = new ArrayList<byte[]>(documents.size());
+        final long start = System.nanoTime();
+        for (final Document d : documents) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cache.convert(d, out, TestTestSuiteRenderCache.TYPE, context);
+            results.add(out.toByteArray());
+        }
+        final long time = System.nanoTime() - start;
+        TestTestSuiteRenderCache.LOGGER.info(name + ": " + documents.size()
+                + " documents in " + time / 1000000 + "ms, "
+                + documents.size() * 1000000000L / Math.max(time, 1)
+                + " documents/s");
+        return results;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2002 - 2010 JEuclid, http://jeuclid.sf.net
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package net.sourceforge.jeuclid.test.testsuite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import net.sourceforge.jeuclid.MathMLSerializer;
+import net.sourceforge.jeuclid.parser.Parser;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Compares serializing the testsuite with an identity Transformer with the
+ * direct MathMLSerializer.
+ *
+ * @version $Revision$
+ */
+// CHECKSTYLE:OFF
+// This is a test class.
+public class TestTestSuiteSerializing {
+    // CHECKSTYLE:ON
+
+    /**
+     * Logger for this class.
+     */
+    private static final Log LOGGER = LogFactory
+            .getLog(TestTestSuiteSerializing.class);
+
+    private static final int ROUNDS = 10;
+
+    private interface Serializer {
+        String serialize(Document d) throws Exception;
+    }
+
+    private static final class ViaTransformer implements Serializer {
+        public String serialize(final Document d) throws Exception {
+            final StringWriter writer = new StringWriter();
+            final Transformer transformer = TransformerFactory.newInstance()
+                    .newTransformer();
+            transformer.transform(new DOMSource(d), new StreamResult(writer));
+            return writer.toString();
+        }
+    }
+
+    private static final class Direct implements Serializer {
+        public String serialize(final Document d) {
+            return MathMLSerializer.serializeDocument(d, false, false);
+        }
+    }
+
+    /**
+     * Serializes the complete mml2 testsuite with both serializers, logs the
+     * time for each, and checks that both results parse to the same tree.
+     *
+     * @throws Exception
+     *             if the test fails.
+     */
+    @Test
+    public void testSerializeMml2Testsuite() throws Exception {
+        final List<Document> documents = new ArrayList<Document>();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(
+                ClassLoader.getSystemResourceAsStream("mml2-testsuite.list"),
+                "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            final InputStream i = ClassLoader.getSystemResourceAsStream(line);
+            try {
+                documents.add(Parser.getInstance()
+                        .parseStreamSourceAsJEuclidDom(new StreamSource(i)));
+            } catch (final SAXException e) {
+                // ignore, some test cases are invalid on purpose.
+            } catch (final IOException e) {
+                // ignore, as TestTestSuiteRendering does.
+            } finally {
+                i.close();
+            }
+        }
+        br.close();
+
+        final Serializer viaTransformer = new ViaTransformer();
+        final Serializer direct = new Direct();
+        for (final Document d : documents) {
+            final Document expected = this.reparse(viaTransformer
+                    .serialize(d));
+            final Document actual = this.reparse(direct.serialize(d));
+            Assert.assertTrue(direct.serialize(d), expected
+                    .isEqualNode(actual));
+        }
+        this.run("Transformer", viaTransformer, documents);
+        this.run("MathMLSerializer", direct, documents);
+    }
+
+    private Document reparse(final String s) throws Exception {
+        return Parser.getInstance().parseStreamSourceAsXml(
+                new StreamSource(new StringReader(s)));
+    }
+
+    private void run(final String name, final Serializer serializer,
+            final List<Document> documents) throws Exception {
+        // Warm up
+        this.serializeAll(serializer, documents);
+        final long start = System.nanoTime();
+        long chars = 0;
+        for (int i = 0; i < TestTestSuiteSerializing.ROUNDS; i++) {
+            chars += this.serializeAll(serializer, documents);
+        }
+        final long time = (System.nanoTime() - start)
+                / TestTestSuiteSerializing.ROUNDS;
+        TestTestSuiteSerializing.LOGGER.info(name + ": " + documents.size()
+                + " documents in " + time / 1000000 + "ms, "
+                + chars / TestTestSuiteSerializing.ROUNDS + " characters");
+    }
+
+    private long serializeAll(final Serializer serializer,
+            final List<Document> documents) throws Exception {
+        long chars = 0;
+        for (final Document d : documents) {
+            chars += serializer.serialize(d).length();
+        }
+        return chars;
+    }
+}